@@ -0,0 +1,174 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small benchmark harness measuring throughput and allocation per operation.
+ *
+ * Each benchmark runs warmup iterations, whose results are discarded, then measured iterations of a fixed
+ * length. The score is the mean number of operations per second with the error of a 99.9% confidence
+ * interval, as JMH reports it. Allocation is read from the HotSpot per thread allocation counters of
+ * every live thread, so work done on worker pools is counted too. Every result is consumed so the JIT
+ * compiler cannot remove the work being measured.
+ */
+public class Benchmark {
+	
+	/**
+	 * The operation being measured
+	 */
+	public interface Operation {
+		
+		/**
+		 * Runs the operation once
+		 * @return The result of the operation, consumed by the harness
+		 * @throws Exception If the operation failed, which ends the benchmark
+		 */
+		Object run() throws Exception;
+	}
+	
+	/**
+	 * The outcome of a benchmark
+	 */
+	public static class Result {
+		
+		public final String name;
+		public final double opsPerSecond, error, bytesPerOp, allocationRate;
+		
+		/**
+		 * Constructor
+		 * @param name - The benchmark name
+		 * @param opsPerSecond - The mean throughput
+		 * @param error - The half width of the confidence interval of the throughput
+		 * @param bytesPerOp - The bytes allocated per operation, negative if unknown
+		 * @param allocationRate - The bytes allocated per second, negative if unknown
+		 */
+		Result(String name, double opsPerSecond, double error, double bytesPerOp, double allocationRate) {
+			this.name = name;
+			this.opsPerSecond = opsPerSecond;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+			this.allocationRate = allocationRate;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-48s %12.3f +- %9.3f ops/s %12.3f ms/op %14s B/op %10s MB/s",
+					name, opsPerSecond, error, 1000 / opsPerSecond,
+					bytesPerOp < 0 ? "n/a" : String.format(Locale.ROOT, "%.0f", bytesPerOp),
+					allocationRate < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", allocationRate / (1024 * 1024)));
+		}
+	}
+	
+	/**
+	 * Student's t quantiles for a two sided 99.9% interval, by degrees of freedom from 1
+	 */
+	private static final double[] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+			4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+	
+	private static volatile int sink;
+	
+	private final int warmups, iterations;
+	private final long iterationTime;
+	
+	/**
+	 * Constructor
+	 * @param warmups - The number of warmup iterations
+	 * @param iterations - The number of measured iterations
+	 * @param iterationTime - The length of each iteration in milliseconds
+	 */
+	public Benchmark(int warmups, int iterations, long iterationTime) {
+		this.warmups = warmups;
+		this.iterations = Math.max(1, iterations);
+		this.iterationTime = TimeUnit.MILLISECONDS.toNanos(iterationTime);
+	}
+	
+	/**
+	 * Runs a benchmark
+	 * @param name - The benchmark name
+	 * @param operation - The operation to measure
+	 * @return The result
+	 * @throws Exception If the operation failed
+	 */
+	public Result run(String name, Operation operation) throws Exception {
+		for(int i = 0; i < warmups; i++)
+			iteration(operation);
+		
+		double[] scores = new double[iterations];
+		long operations = 0, elapsed = 0, before = allocatedBytes();
+		
+		for(int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long count = iteration(operation);
+			long time = System.nanoTime() - start;
+			
+			scores[i] = count * 1e9 / time;
+			operations += count;
+			elapsed += time;
+		}
+		
+		long allocated = before < 0 ? -1 : allocatedBytes() - before;
+		double mean = 0, variance = 0;
+		
+		for(double score: scores)
+			mean += score / iterations;
+		
+		for(double score: scores)
+			variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+		
+		double error = iterations < 2 ? Double.NaN : T_999[Math.min(iterations - 2, T_999.length - 1)] * Math.sqrt(variance / iterations);
+		
+		return new Result(name, mean, error, allocated < 0 ? -1 : allocated / (double) operations,
+				allocated < 0 ? -1 : allocated * 1e9 / elapsed);
+	}
+	
+	/**
+	 * Runs the operation repeatedly for one iteration
+	 * @param operation - The operation to run
+	 * @return The number of operations run
+	 * @throws Exception If the operation failed
+	 */
+	private long iteration(Operation operation) throws Exception {
+		long end = System.nanoTime() + iterationTime;
+		long count = 0;
+		
+		do {
+			consume(operation.run());
+			count++;
+		} while(System.nanoTime() < end);
+		
+		return count;
+	}
+	
+	/**
+	 * Consumes a result so the work producing it cannot be eliminated
+	 * @param result - The result to consume
+	 */
+	private static void consume(Object result) {
+		sink += System.identityHashCode(result);
+	}
+	
+	/**
+	 * Gets the number of bytes allocated so far by every live thread
+	 * @return The allocated bytes, -1 if the JVM does not count allocations
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		
+		if(!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		
+		if(!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		
+		long total = 0;
+		
+		for(long bytes: threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			total += Math.max(0, bytes);
+		return total;
+	}
+}
@@ -0,0 +1,277 @@
+package bench;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.swing.JPanel;
+
+import src.ImagePanel;
+import util.FrameCache;
+import util.IO;
+import util.ImageUtils;
+import util.Slide;
+import util.SlideFile;
+
+/**
+ * Benchmarks of the hot paths of the slide show: decoding, scaling, painting and saving and loading.
+ *
+ * Test images are generated into a temporary folder, so the benchmarks need no input files. Run with
+ * the compiled slide show on the class path:
+ *
+ * <pre>
+ * java -cp bin bench.Benchmarks [-wi N] [-i N] [-t MS] [filter...]
+ * </pre>
+ *
+ * Only benchmarks whose name contains one of the filters are run. The options set the number of
+ * warmup iterations, measured iterations and the iteration length in milliseconds.
+ */
+public class Benchmarks {
+	
+	private static final int[][] SOURCES = {{4000, 3000}, {1920, 1080}};
+	private static final double[] RATIOS = {0.5, 0.25, 0.1};
+	private static final int[] TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR};
+	private static final int SLIDES = 8;
+	
+	private final Benchmark benchmark;
+	private final List<String> filters;
+	private final File directory;
+	
+	/**
+	 * Constructor
+	 * @param benchmark - The harness to run the benchmarks with
+	 * @param filters - The benchmark name filters, empty to run every benchmark
+	 * @throws IOException If the temporary folder could not be created
+	 */
+	private Benchmarks(Benchmark benchmark, List<String> filters) throws IOException {
+		this.benchmark = benchmark;
+		this.filters = filters;
+		this.directory = Files.createTempDirectory("slideshow-bench").toFile();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		
+		int warmups = 3, iterations = 5;
+		long time = 1000;
+		List<String> filters = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "-wi":
+				warmups = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-t":
+				time = Long.parseLong(args[++i]);
+				break;
+			default:
+				filters.add(args[i]);
+			}
+		}
+		
+		Benchmarks benchmarks = new Benchmarks(new Benchmark(warmups, iterations, time), filters);
+		
+		try {
+			benchmarks.decode();
+			benchmarks.resize();
+			benchmarks.paint();
+			benchmarks.slideFile();
+		} finally {
+			benchmarks.cleanUp();
+		}
+	}
+	
+	/**
+	 * Benchmarks decoding JPEG files in full and subsampled to a screen
+	 * @throws Exception If a benchmark failed
+	 */
+	private void decode() throws Exception {
+		for(int[] source: SOURCES) {
+			File file = write(generate(source[0], source[1], BufferedImage.TYPE_INT_RGB, 1), "jpg");
+			String size = source[0] + "x" + source[1];
+			
+			run("decode.full." + size, () -> IO.load(file));
+			run("decode.subsampled." + size + ".to1280x720", () -> IO.load(file, 1280, 720));
+		}
+	}
+	
+	/**
+	 * Benchmarks scaling at several ratios, image types and qualities
+	 * @throws Exception If a benchmark failed
+	 */
+	private void resize() throws Exception {
+		int[] source = SOURCES[0];
+		
+		for(int type: TYPES) {
+			BufferedImage image = generate(source[0], source[1], type, 2);
+			
+			for(double ratio: RATIOS) {
+				int width = (int) (source[0] * ratio), height = (int) (source[1] * ratio);
+				
+				for(ImageUtils.Quality quality: ImageUtils.Quality.values()) {
+					String name = "resize." + typeName(type) + ".x" + ratio + "." + quality.name().toLowerCase();
+					run(name, () -> ImageUtils.resize(image, width, height, quality));
+				}
+			}
+			
+			run("force." + typeName(type) + ".stretch", () -> ImageUtils.force(image, source[0] / 3, source[1] / 2));
+		}
+	}
+	
+	/**
+	 * Benchmarks painting a slide panel into an offscreen image, with and without a cached frame
+	 * @throws Exception If a benchmark failed
+	 */
+	private void paint() throws Exception {
+		BufferedImage image = generate(SOURCES[0][0], SOURCES[0][1], BufferedImage.TYPE_INT_RGB, 3);
+		BufferedImage screen = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_RGB);
+		
+		JPanel parent = new JPanel(), container = new JPanel();
+		container.setSize(screen.getWidth(), screen.getHeight());
+		ImagePanel panel = new ImagePanel(image, parent, container);
+		panel.setSize(screen.getWidth(), screen.getHeight());
+		
+		run("paint.cached", () -> {
+			Graphics2D g2 = screen.createGraphics();
+			panel.paint(g2);
+			g2.dispose();
+			return screen;
+		});
+		
+		run("paint.uncached", () -> {
+			FrameCache.invalidate(panel.getSlide());
+			Graphics2D g2 = screen.createGraphics();
+			panel.paint(g2);
+			g2.dispose();
+			return screen;
+		});
+	}
+	
+	/**
+	 * Benchmarks the save and load round trip of a slide show file, as used by the save and load menus
+	 * @throws Exception If a benchmark failed
+	 */
+	private void slideFile() throws Exception {
+		List<Slide> slides = new ArrayList<Slide>();
+		
+		for(int i = 0; i < SLIDES; i++)
+			slides.add(new Slide(write(generate(SOURCES[1][0], SOURCES[1][1], BufferedImage.TYPE_INT_RGB, 10 + i), "jpg")));
+		
+		File show = new File(directory, "show.slider");
+		SlideFile.write(show, slides);
+		
+		File[] targets = {new File(directory, "a.slider"), new File(directory, "b.slider")};
+		int[] next = {0};
+		
+		run("slidefile.write." + SLIDES, () -> {
+			SlideFile.write(targets[next[0]++ & 1], slides);
+			return slides;
+		});
+		
+		run("slidefile.append.unchanged." + SLIDES, () -> {
+			SlideFile.write(targets[(next[0] + 1) & 1], slides);
+			return slides;
+		});
+		
+		run("slidefile.read." + SLIDES, () -> SlideFile.read(show));
+		
+		run("slidefile.roundtrip." + SLIDES, () -> {
+			File copy = new File(directory, "roundtrip.slider");
+			SlideFile.write(copy, SlideFile.read(show));
+			return SlideFile.read(copy);
+		});
+	}
+	
+	/**
+	 * Runs a benchmark if its name matches the filters and prints the result
+	 * @param name - The benchmark name
+	 * @param operation - The operation to measure
+	 * @throws Exception If the operation failed
+	 */
+	private void run(String name, Benchmark.Operation operation) throws Exception {
+		if(!filters.isEmpty() && filters.stream().noneMatch(name::contains))
+			return;
+		
+		System.out.println(benchmark.run(name, operation));
+	}
+	
+	/**
+	 * Generates a photo-like test image: a gradient with noise, so encoders cannot compress it away
+	 * @param width - The image width
+	 * @param height - The image height
+	 * @param type - The image type
+	 * @param seed - The seed of the noise
+	 * @return The generated image
+	 */
+	private static BufferedImage generate(int width, int height, int type, long seed) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		Graphics2D g2 = image.createGraphics();
+		Random random = new Random(seed);
+		
+		g2.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height, new Color(random.nextInt())));
+		g2.fillRect(0, 0, width, height);
+		
+		for(int i = 0; i < 2000; i++) {
+			g2.setColor(new Color(random.nextInt(), type == BufferedImage.TYPE_INT_ARGB));
+			g2.fillOval(random.nextInt(width), random.nextInt(height), 8 + random.nextInt(width / 20), 8 + random.nextInt(height / 20));
+		}
+		
+		g2.dispose();
+		return image;
+	}
+	
+	/**
+	 * Writes an image to a file in the temporary folder
+	 * @param image - The image to write
+	 * @param format - The image format
+	 * @return The written file
+	 * @throws IOException If the image could not be written
+	 */
+	private File write(BufferedImage image, String format) throws IOException {
+		File file = File.createTempFile("image", "." + format, directory);
+		ImageIO.write(image, format, file);
+		return file;
+	}
+	
+	/**
+	 * Gets a short name for an image type
+	 * @param type - The image type
+	 * @return The type name
+	 */
+	private static String typeName(int type) {
+		switch(type) {
+		case BufferedImage.TYPE_INT_RGB:
+			return "intRGB";
+		case BufferedImage.TYPE_INT_ARGB:
+			return "intARGB";
+		case BufferedImage.TYPE_3BYTE_BGR:
+			return "3byteBGR";
+		default:
+			return "type" + type;
+		}
+	}
+	
+	/**
+	 * Deletes the temporary folder
+	 */
+	private void cleanUp() {
+		File[] files = directory.listFiles();
+		
+		if(files != null) {
+			for(File file: files)
+				file.delete();
+		}
+		directory.delete();
+	}
+}
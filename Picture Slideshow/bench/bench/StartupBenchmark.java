@@ -0,0 +1,197 @@
+package bench;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import util.IO;
+
+/**
+ * Measures how long the slide show takes to start from a cold JVM.
+ *
+ * Every measurement launches a new JVM, so class loading, look and feel setup and image decoding are paid
+ * each time just as on a real start. Two things are measured. The icon benchmark loads and scales the
+ * toolbar and frame icons on the calling thread, as the slide show used to, and on the icon loading
+ * thread; it needs no display. The launch benchmark times starting the slide show until its frame is shown
+ * with every icon in place, with the icons loaded before the frame is built and in the background while it
+ * is shown, and in the background with a class data sharing archive if one is given; it is skipped without
+ * a display. Run with the compiled slide show and its resources on the class path:
+ *
+ * <pre>
+ * java -cp bin bench.StartupBenchmark [-n N] [-cds slideshow.jsa]
+ * </pre>
+ *
+ * The archive is made once for each JDK, version 13 or later, by starting the slide show with
+ *
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=slideshow.jsa -Dslideshow.exitWhenReady=true -cp bin src.Driver
+ * </pre>
+ *
+ * and is used by adding -XX:SharedArchiveFile=slideshow.jsa to the launch command. Java 8 only shares
+ * the JDK classes, through its default archive, as application class data sharing was a commercial
+ * feature of the Oracle JDK there.
+ */
+public class StartupBenchmark {
+	
+	private static final String[] ICONS = {"slideshow_icon.png", "add.png", "sub.png", "first.png", "previous.png",
+			"next.png", "last.png", "fullscreen.png", "grid.png"};
+	private static final int ICON_SIZE = 32;
+	private static final String RESULT = "startup.icons ";
+	
+	public static void main(String[] args) throws Exception {
+		if(args.length == 2 && args[0].equals("-icons")) {
+			loadIcons(Boolean.parseBoolean(args[1]));
+			return;
+		}
+		
+		int runs = 10;
+		String archive = null;
+		
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "-n":
+				runs = Integer.parseInt(args[++i]);
+				break;
+			case "-cds":
+				archive = args[++i];
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		
+		Map<String, List<String>> icons = new LinkedHashMap<String, List<String>>();
+		icons.put("icons.sequential", command("-Djava.awt.headless=true", StartupBenchmark.class.getName(), "-icons", "false"));
+		icons.put("icons.background", command("-Djava.awt.headless=true", StartupBenchmark.class.getName(), "-icons", "true"));
+		report(icons, runs, true);
+		
+		if(GraphicsEnvironment.isHeadless()) {
+			System.out.println("No display, skipping the launch benchmark");
+			return;
+		}
+		
+		Map<String, List<String>> launches = new LinkedHashMap<String, List<String>>();
+		launches.put("launch.sequential", command("-Dslideshow.exitWhenReady=true", "-Dslideshow.backgroundIcons=false", "src.Driver"));
+		launches.put("launch.background", command("-Dslideshow.exitWhenReady=true", "src.Driver"));
+		
+		if(archive != null)
+			launches.put("launch.background.cds", command("-XX:SharedArchiveFile=" + archive, "-Dslideshow.exitWhenReady=true", "src.Driver"));
+		
+		report(launches, runs, false);
+	}
+	
+	/**
+	 * Loads every icon the way the slide show does on startup and prints the time taken, in a child JVM
+	 * @param background - True to load the icons on the icon loading thread, false to load them on this one
+	 */
+	private static void loadIcons(boolean background) {
+		long start = System.nanoTime();
+		List<BufferedImage> images = new ArrayList<BufferedImage>();
+		
+		if(background) {
+			List<CompletableFuture<BufferedImage>> futures = new ArrayList<CompletableFuture<BufferedImage>>();
+			
+			for(String icon: ICONS)
+				futures.add(IO.loadIconLater(icon, icon.equals(ICONS[0]) ? 0 : ICON_SIZE));
+			
+			for(CompletableFuture<BufferedImage> future: futures)
+				images.add(future.join());
+		} else {
+			for(String icon: ICONS)
+				images.add(IO.loadIcon(icon, icon.equals(ICONS[0]) ? 0 : ICON_SIZE));
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		
+		if(images.contains(null))
+			throw new IllegalStateException("An icon could not be loaded, are the resources on the class path?");
+		
+		System.out.println(RESULT + elapsed);
+	}
+	
+	/**
+	 * Builds the command launching a child JVM with the class path of this one
+	 * @param arguments - The JVM options, main class and program arguments
+	 * @return The command
+	 */
+	private static List<String> command(String... arguments) {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.addAll(Arrays.asList(arguments));
+		return command;
+	}
+	
+	/**
+	 * Runs each command the given number of times, taking turns so drift affects every command alike, and
+	 * prints the times. The first round warms the file system cache and is not counted
+	 * @param commands - The commands by benchmark name
+	 * @param runs - The number of measured runs of each command
+	 * @param reported - True to time what the child reports, false to time the whole child JVM
+	 * @throws Exception If a child could not be run or failed
+	 */
+	private static void report(Map<String, List<String>> commands, int runs, boolean reported) throws Exception {
+		Map<String, List<Double>> times = new LinkedHashMap<String, List<Double>>();
+		
+		for(String name: commands.keySet())
+			times.put(name, new ArrayList<Double>());
+		
+		for(int i = 0; i <= runs; i++) {
+			for(Map.Entry<String, List<String>> e: commands.entrySet()) {
+				double millis = launch(e.getValue(), reported);
+				
+				if(i > 0)
+					times.get(e.getKey()).add(millis);
+			}
+		}
+		
+		for(Map.Entry<String, List<Double>> e: times.entrySet()) {
+			List<Double> values = e.getValue();
+			Collections.sort(values);
+			
+			System.out.println(String.format(Locale.ROOT, "%-48s median %9.1f ms   min %9.1f ms   max %9.1f ms",
+					"startup." + e.getKey(), values.get(values.size() / 2), values.get(0), values.get(values.size() - 1)));
+		}
+	}
+	
+	/**
+	 * Runs a child JVM to the end
+	 * @param command - The command to run
+	 * @param reported - True to return the time the child reports, false to time the whole child JVM
+	 * @return The time in milliseconds
+	 * @throws Exception If the child could not be run or failed
+	 */
+	private static double launch(List<String> command, boolean reported) throws Exception {
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		long result = -1;
+		
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if(line.startsWith(RESULT))
+					result = Long.parseLong(line.substring(RESULT.length()).trim());
+				else
+					System.err.println(line);
+			}
+		}
+		
+		int status = process.waitFor();
+		long elapsed = System.nanoTime() - start;
+		
+		if(status != 0 || (reported && result < 0))
+			throw new IllegalStateException("Child JVM failed: " + String.join(" ", command));
+		
+		return (reported ? result : elapsed) / 1e6;
+	}
+}
@@ -0,0 +1,318 @@
+package src;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import util.ImageUtils;
+import util.Slide;
+import util.TileCache;
+import util.TilePyramid;
+
+/**
+ * A view for exploring a single slide at any zoom, for images far larger than the screen.
+ *
+ * The slide is drawn from a tile pyramid. Only the tiles of the level matching the zoom which fall inside
+ * the view are drawn, and tiles which are not decoded yet are requested from a pool of background threads
+ * while the matching part of a coarser tile stands in for them, so the view never waits on a decode. While
+ * the slide image decoded for the slide show is loaded it is drawn beneath the tiles, and tiles are only
+ * decoded once the zoom goes past its resolution.
+ * Requests for tiles which left the view before their turn came are dropped. The mouse wheel zooms around
+ * the pointer, dragging pans and a double click fits the whole image in the view again.
+ */
+public class DeepView extends JComponent {
+	
+	private static final long serialVersionUID = -3895178020424580337L;
+	
+	private static final double ZOOM_STEP = 1.25;
+	private static final double MAX_SCALE = 8;
+	
+	private final ExecutorService executor;
+	private final Set<TilePyramid.Tile> pending;
+	private volatile Set<TilePyramid.Tile> wanted = Collections.emptySet();
+	
+	private TilePyramid pyramid;
+	private double scale, originX, originY;
+	private boolean fitted = true;
+	private Point dragStart;
+	
+	/**
+	 * Constructor
+	 */
+	public DeepView() {
+		this.pending = new HashSet<TilePyramid.Tile>();
+		
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Tile Loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		setOpaque(true);
+		setBackground(Color.BLACK);
+		
+		MouseAdapter mouse = new MouseAdapter() {
+			
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragStart = e.getPoint();
+			}
+			
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if(dragStart == null || pyramid == null)
+					return;
+				
+				fitted = false;
+				originX -= (e.getX() - dragStart.x) / scale;
+				originY -= (e.getY() - dragStart.y) / scale;
+				dragStart = e.getPoint();
+				clamp();
+				repaint();
+			}
+			
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if(e.getClickCount() == 2) {
+					fitted = true;
+					repaint();
+				}
+			}
+			
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+			}
+		};
+		
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+	}
+	
+	/**
+	 * Sets the slide to explore, fitted to the view
+	 * @param slide - The slide, null to show nothing
+	 */
+	public void setSlide(Slide slide) {
+		if(pyramid != null && pyramid.getSlide() == slide)
+			return;
+		
+		pyramid = null;
+		
+		if(slide != null) {
+			Dimension size = slide.getDisplaySize();
+			
+			if(size != null)
+				pyramid = new TilePyramid(slide, size);
+		}
+		
+		fitted = true;
+		repaint();
+	}
+	
+	/**
+	 * Zooms around a point of the view
+	 * @param factor - The factor to zoom by, above 1 to zoom in
+	 * @param x - The x coordinate of the point which stays in place
+	 * @param y - The y coordinate of the point which stays in place
+	 */
+	public void zoom(double factor, int x, int y) {
+		if(pyramid == null)
+			return;
+		
+		double imageX = originX + x / scale;
+		double imageY = originY + y / scale;
+		
+		scale = Math.max(getFitScale(), Math.min(MAX_SCALE, scale * factor));
+		fitted = scale == getFitScale();
+		originX = imageX - x / scale;
+		originY = imageY - y / scale;
+		
+		clamp();
+		repaint();
+	}
+	
+	/**
+	 * Stops the tile loading threads
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Paints the visible tiles of the level matching the zoom
+	 * @param g - The Graphics to paint with
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		
+		TilePyramid pyramid = this.pyramid;
+		
+		if(pyramid == null || getWidth() <= 0 || getHeight() <= 0)
+			return;
+		
+		if(fitted) {
+			scale = getFitScale();
+			clamp();
+		}
+		
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		
+		Dimension size = pyramid.getSize();
+		Slide slide = pyramid.getSlide();
+		BufferedImage base = slide.isLoaded() ? slide.getImage() : null;
+		
+		if(base != null) {
+			draw(g2, new Rectangle(size), base, new Rectangle(base.getWidth(), base.getHeight()));
+			
+			if(base.getWidth() >= size.width * scale) {
+				wanted = Collections.emptySet();
+				return;
+			}
+		}
+		
+		int level = pyramid.getLevel(scale);
+		Rectangle visible = new Rectangle((int) Math.floor(originX), (int) Math.floor(originY),
+				(int) Math.ceil(getWidth() / scale) + 1, (int) Math.ceil(getHeight() / scale) + 1);
+		
+		List<TilePyramid.Tile> tiles = pyramid.getTiles(level, visible);
+		TilePyramid.Tile overview = pyramid.getTile(pyramid.getLevels() - 1, 0, 0);
+		
+		Set<TilePyramid.Tile> wanted = new HashSet<TilePyramid.Tile>(tiles);
+		wanted.add(overview);
+		this.wanted = wanted;
+		
+		if(base == null && !TileCache.contains(overview))
+			request(pyramid, overview);
+		
+		for(TilePyramid.Tile tile: tiles) {
+			BufferedImage image = TileCache.get(tile);
+			
+			if(image != null) {
+				draw(g2, tile.getRegion(), image, new Rectangle(image.getWidth(), image.getHeight()));
+			} else {
+				drawCoarser(g2, pyramid, tile);
+				request(pyramid, tile);
+			}
+		}
+	}
+	
+	/**
+	 * Draws the part of the closest cached coarser tile which covers a tile
+	 * @param g - The Graphics to paint with
+	 * @param pyramid - The pyramid of the tile
+	 * @param tile - The tile which is not decoded yet
+	 */
+	private void drawCoarser(Graphics2D g, TilePyramid pyramid, TilePyramid.Tile tile) {
+		Rectangle region = tile.getRegion();
+		
+		for(int level = tile.getLevel() + 1; level < pyramid.getLevels(); level++) {
+			TilePyramid.Tile coarser = pyramid.getTile(level, region.x, region.y);
+			
+			if(!TileCache.contains(coarser))
+				continue;
+			
+			BufferedImage image = TileCache.get(coarser);
+			
+			if(image == null)
+				continue;
+			
+			Rectangle outer = coarser.getRegion();
+			Rectangle source = new Rectangle((region.x - outer.x) >> level, (region.y - outer.y) >> level,
+					Math.max(1, region.width >> level), Math.max(1, region.height >> level));
+			
+			draw(g, region, image, source.intersection(new Rectangle(image.getWidth(), image.getHeight())));
+			return;
+		}
+	}
+	
+	/**
+	 * Draws part of a decoded tile over the region of the image it covers
+	 * @param g - The Graphics to paint with
+	 * @param region - The region of the image, in full resolution pixels
+	 * @param image - The decoded tile
+	 * @param source - The part of the decoded tile to draw
+	 */
+	private void draw(Graphics2D g, Rectangle region, BufferedImage image, Rectangle source) {
+		int x1 = (int) Math.round((region.x - originX) * scale);
+		int y1 = (int) Math.round((region.y - originY) * scale);
+		int x2 = (int) Math.round((region.x + region.width - originX) * scale);
+		int y2 = (int) Math.round((region.y + region.height - originY) * scale);
+		
+		g.drawImage(image, x1, y1, x2, y2, source.x, source.y, source.x + source.width, source.y + source.height, null);
+	}
+	
+	/**
+	 * Queues a tile to be decoded in the background unless it already is
+	 * @param pyramid - The pyramid of the tile
+	 * @param tile - The tile to decode
+	 */
+	private void request(TilePyramid pyramid, TilePyramid.Tile tile) {
+		if(!pending.add(tile))
+			return;
+		
+		executor.submit(() -> {
+			BufferedImage image = null;
+			
+			if(wanted.contains(tile)) {
+				image = pyramid.decode(tile);
+				
+				if(image != null)
+					image = ImageUtils.toCompatible(image);
+			}
+			
+			BufferedImage result = image;
+			
+			SwingUtilities.invokeLater(() -> {
+				pending.remove(tile);
+				
+				if(result != null) {
+					TileCache.put(tile, result);
+					repaint();
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Gets the scale at which the whole image fits in the view
+	 * @return The number of screen pixels per full resolution pixel
+	 */
+	private double getFitScale() {
+		Dimension size = pyramid.getSize();
+		return Math.min(MAX_SCALE, Math.min(getWidth() / (double) size.width, getHeight() / (double) size.height));
+	}
+	
+	/**
+	 * Keeps the image in the view, centering it along any side on which it is smaller than the view
+	 */
+	private void clamp() {
+		Dimension size = pyramid.getSize();
+		double width = getWidth() / scale, height = getHeight() / scale;
+		
+		originX = width >= size.width ? (size.width - width) / 2 : Math.max(0, Math.min(size.width - width, originX));
+		originY = height >= size.height ? (size.height - height) / 2 : Math.max(0, Math.min(size.height - height, originY));
+	}
+}
@@ -1,35 +1,72 @@
 package src;
 import java.awt.BorderLayout;
-import java.awt.CardLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
-import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
+import javax.swing.ButtonGroup;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JScrollPane;
 import javax.swing.JToolBar;
 import javax.swing.KeyStroke;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoManager;
 
+import util.FolderWatcher;
+import util.HashIndex;
 import util.IO;
+import util.Importer;
+import util.MetadataIndex;
+import util.Metrics;
+import util.Playback;
+import util.Prefetcher;
+import util.SaveTask;
+import util.Slide;
+import util.SlideFilter;
+import util.SlideModel;
+import util.SlideOrder;
+import util.SlideWindow;
+import util.Transition;
 
 public class Displayable {
 
@@ -41,6 +78,19 @@ public class Displayable {
 	
 	private static final int ICON_SIZE = 32;
 	
+	private static final double MEGABYTE = 1024 * 1024;
+	
+	private static final int WINDOW_RADIUS = Integer.getInteger("slideshow.window", 2);
+	
+	private static final int FRAME_RATE = Integer.getInteger("slideshow.fps", 30);
+	private static final long TRANSITION_TIME = Long.getLong("slideshow.transitionTime", 400);
+	private static final Transition.Effect DEFAULT_EFFECT = getEffect(System.getProperty("slideshow.transition"), Transition.Effect.CROSSFADE);
+	
+	private static final int DUPLICATE_DISTANCE = Integer.getInteger("slideshow.duplicateDistance", 6);
+	
+	private static final boolean BACKGROUND_ICONS = Boolean.parseBoolean(System.getProperty("slideshow.backgroundIcons", "true"));
+	private static final boolean EXIT_WHEN_READY = Boolean.getBoolean("slideshow.exitWhenReady");
+	
 	private static final String[] info = {
 			"Slideshow",
 			"Author: Kyle Askine",
@@ -59,14 +109,35 @@ public class Displayable {
 	private static final String manual = "manual.html";
 		
 	private JFrame frame;
-	private JPanel cardPanel, showPanel;
-	private ArrayList<ImageIcon> icons;
-	private CardLayout layout;
+	private JPanel viewPanel, showPanel;
+	private ImagePanel view;
+	private ThumbnailGrid grid;
+	private JScrollPane gridPane;
+	private DeepView deepView;
+	private SlideModel slides;
+	private UndoManager undo = new UndoManager();
+	private HashIndex<Slide> hashes = new HashIndex<Slide>();
+	private SlideWindow window;
+	private Prefetcher prefetcher;
+	private Importer importer;
+	private FolderWatcher watcher;
+	private SaveTask saveTask;
+	private Playback playback;
+	private TransitionPane transitionPane;
+	private MetricsOverlay metricsOverlay;
+	private Transition.Effect effect = DEFAULT_EFFECT;
+	private int current;
+	private boolean reselecting;
+	private Map<String, CompletableFuture<BufferedImage>> icons = new HashMap<String, CompletableFuture<BufferedImage>>();
+	private int pendingIcons;
 	
 	/**
-	 * Constructor
+	 * Constructor, to be called on the event dispatch thread. The icons start loading in the background
+	 * first and are put in place once the frame is already showing
 	 */
 	public Displayable() {
+		loadIcons();
+		
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (Exception e) {
@@ -80,15 +151,85 @@ public class Displayable {
 	 * Sets up the slide show
 	 */
 	private void setup() {
-		icons = new ArrayList<ImageIcon>();
+		slides = new SlideModel();
+		slides.addListener(createModelListener());
+		slides.addUndoableEditListener(undo);
+		window = new SlideWindow(slides, WINDOW_RADIUS);
+		prefetcher = new Prefetcher(slides, window, WINDOW_RADIUS);
+		setupDecodeBounds();
+		setupGrid();
+		deepView = new DeepView();
+		setupPlayback();
 		
 		setupFrame();
 		setupMenu();
 		setupSlideshow();
 		setupControls();
 		
-		layout.first(cardPanel);
 		frame.setVisible(true);
+		whenLoaded(slideshowIcon, image -> frame.setIconImage(image));
+		
+		Thread registration = new Thread(Metrics::register, "Metrics Registration");
+		registration.setDaemon(true);
+		registration.start();
+	}
+	
+	/**
+	 * Limits decoded slides to the size of the largest screen in device pixels, since the slide panel
+	 * can never be larger than that
+	 */
+	private void setupDecodeBounds() {
+		if(GraphicsEnvironment.isHeadless())
+			return;
+		
+		int width = 0, height = 0;
+		
+		for(GraphicsDevice device: GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+			GraphicsConfiguration config = device.getDefaultConfiguration();
+			Rectangle bounds = config.getBounds();
+			width = Math.max(width, (int) Math.ceil(bounds.width * config.getDefaultTransform().getScaleX()));
+			height = Math.max(height, (int) Math.ceil(bounds.height * config.getDefaultTransform().getScaleY()));
+		}
+		
+		Slide.setDecodeBounds(width, height);
+	}
+	
+	/**
+	 * Sets up the thumbnail overview, which replaces the slide show view while it is shown
+	 */
+	private void setupGrid() {
+		grid = new ThumbnailGrid(slides, new ThumbnailGrid.Listener() {
+			
+			@Override
+			public void selected(int index) {
+				showGrid(false);
+				go(index, index < current ? -1 : 1);
+			}
+			
+			@Override
+			public void moved(int from, int to) {
+				slides.move(from, to);
+			}
+		});
+		
+		gridPane = new JScrollPane(grid, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+		gridPane.getViewport().setBackground(Color.BLACK);
+		gridPane.setBorder(null);
+	}
+	
+	/**
+	 * Sets up timed playback, which moves to the next slide and paints it straight away so the time taken
+	 * to show each slide is accounted for by the playback schedule
+	 */
+	private void setupPlayback() {
+		playback = new Playback(slides, () -> {
+			go(current + 1, 1);
+			
+			if(!transitionPane.isRunning())
+				showPanel.paintImmediately(0, 0, showPanel.getWidth(), showPanel.getHeight());
+			return current;
+		});
+		playback.setDefaultDuration(Long.getLong("slideshow.duration", Playback.DEFAULT_DURATION));
 	}
 	
 	/**
@@ -99,6 +240,11 @@ public class Displayable {
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.setMinimumSize(new Dimension(MINIMUM_WIDTH, MINIMUM_HEIGHT));
 		frame.setSize(WIDTH, HEIGHT);
+		
+		transitionPane = new TransitionPane(FRAME_RATE);
+		frame.setGlassPane(transitionPane);
+		
+		metricsOverlay = new MetricsOverlay(frame);
 	}
 	
 	/**
@@ -108,13 +254,16 @@ public class Displayable {
 		JPanel northPanel = new JPanel(new GridLayout());
 		JMenuBar menubar = new JMenuBar();
 		JMenu fileMenu = new JMenu("File");
+		JMenu editMenu = new JMenu("Edit");
+		JMenu playbackMenu = new JMenu("Playback");
+		JMenu viewMenu = new JMenu("View");
 		JMenu helpMenu = new JMenu("Help");
 		
 		JMenuItem newSlideshow = new JMenuItem("New");
 		newSlideshow.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, ActionEvent.ALT_MASK));
 		newSlideshow.setToolTipText("Create a new slide show.");
 		newSlideshow.addActionListener(ae -> {
-			icons.clear();
+			clearSlides();
 			setupSlideshow();
 			frame.repaint();
 		});
@@ -124,7 +273,38 @@ public class Displayable {
 		saveSlideshow.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, ActionEvent.ALT_MASK));
 		saveSlideshow.setToolTipText("Opens a dialog to save the current slide show.");
 		saveSlideshow.addActionListener(ae -> {
-			util.IO.saveSlideshow(saveSlideshow, icons);
+			if(saveTask != null)
+				saveTask.cancel();
+			
+			saveTask = util.IO.saveSlideshow(saveSlideshow, slides, new SaveTask.Listener() {
+				
+				private ProgressMonitor monitor;
+				
+				@Override
+				public void progress(int done, int total, double bytesPerSecond) {
+					if(monitor == null) {
+						monitor = new ProgressMonitor(frame, "Saving slide show", null, 0, total);
+						monitor.setMillisToDecideToPopup(200);
+					}
+					
+					if(monitor.isCanceled()) {
+						saveTask.cancel();
+						return;
+					}
+					
+					monitor.setNote(String.format("%d of %d, %.1f MB/s", done, total, bytesPerSecond / MEGABYTE));
+					monitor.setProgress(done);
+				}
+				
+				@Override
+				public void finished(IOException error, boolean cancelled, long bytes, double bytesPerSecond) {
+					if(monitor != null)
+						monitor.close();
+					
+					if(error != null)
+						error.printStackTrace();
+				}
+			});
 		});
 		fileMenu.add(saveSlideshow);
 		
@@ -132,15 +312,50 @@ public class Displayable {
 		loadSlideshow.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_L, ActionEvent.ALT_MASK));
 		loadSlideshow.setToolTipText("Opens a dialog to load a previously created slide show.");
 		loadSlideshow.addActionListener(ae -> {
-			icons = util.IO.loadSlideshow(loadSlideshow);
+			ArrayList<Slide> loaded = util.IO.loadSlideshow(loadSlideshow);
 			
-			setupSlideshow();
+			if(loaded == null)
+				return;
 			
-			for(ImageIcon icon: icons) 
-				addSlide(icon);
+			clearSlides();
+			setupSlideshow();
+			slides.setAll(loaded);
 		});
 		fileMenu.add(loadSlideshow);
 		
+		JMenuItem importURLs = new JMenuItem("Import URLs");
+		importURLs.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_U, ActionEvent.ALT_MASK));
+		importURLs.setToolTipText("Opens a dialog to add the images listed in text files of URLs to the slide show.");
+		importURLs.addActionListener(ae -> {
+			cancelImport();
+			importer = util.IO.loadURLs(importURLs, createImportListener());
+		});
+		fileMenu.add(importURLs);
+		
+		JMenuItem watchFolder = new JMenuItem("Watch Folder");
+		watchFolder.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, ActionEvent.ALT_MASK));
+		watchFolder.setToolTipText("Opens a dialog to choose a folder; the slide show then follows the images added to, changed in and removed from it.");
+		watchFolder.addActionListener(ae -> {
+			FolderWatcher started = util.IO.watchFolder(watchFolder, createWatchListener());
+			
+			if(started == null)
+				return;
+			
+			clearSlides();
+			setupSlideshow();
+			frame.revalidate();
+			frame.repaint();
+			
+			watcher = started;
+			slides.setUndoable(false);
+		});
+		fileMenu.add(watchFolder);
+		
+		JCheckBoxMenuItem skipDuplicates = new JCheckBoxMenuItem("Skip Duplicates", Importer.isHashing());
+		skipDuplicates.setToolTipText("Skips imported images which look the same as a slide already in the slide show.");
+		skipDuplicates.addActionListener(ae -> Importer.setHashing(skipDuplicates.isSelected()));
+		fileMenu.add(skipDuplicates);
+		
 		
 		JMenuItem exit = new JMenuItem("Exit");
 		exit.addActionListener(ae -> {
@@ -148,6 +363,177 @@ public class Displayable {
 		});
 		fileMenu.add(exit);
 		
+		int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+		
+		JMenuItem undoEdit = new JMenuItem("Undo");
+		undoEdit.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+		undoEdit.setToolTipText("Undoes the last change to the slides of the slide show.");
+		undoEdit.addActionListener(ae -> {
+			if(undo.canUndo() && !slides.isEditing())
+				undo.undo();
+		});
+		editMenu.add(undoEdit);
+		
+		JMenuItem redoEdit = new JMenuItem("Redo");
+		redoEdit.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+		redoEdit.setToolTipText("Makes the last undone change to the slides of the slide show again.");
+		redoEdit.addActionListener(ae -> {
+			if(undo.canRedo() && !slides.isEditing())
+				undo.redo();
+		});
+		editMenu.add(redoEdit);
+		
+		JMenuItem removeSlide = new JMenuItem("Remove Slide");
+		removeSlide.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
+		removeSlide.setToolTipText("Removes the current slide from the slide show.");
+		removeSlide.addActionListener(ae -> removeCurrent());
+		editMenu.add(removeSlide);
+		
+		JMenuItem moveEarlier = new JMenuItem("Move Slide Earlier");
+		moveEarlier.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_OPEN_BRACKET, ActionEvent.ALT_MASK));
+		moveEarlier.setToolTipText("Swaps the current slide with the slide before it.");
+		moveEarlier.addActionListener(ae -> moveCurrent(-1));
+		editMenu.add(moveEarlier);
+		
+		JMenuItem moveLater = new JMenuItem("Move Slide Later");
+		moveLater.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_CLOSE_BRACKET, ActionEvent.ALT_MASK));
+		moveLater.setToolTipText("Swaps the current slide with the slide after it.");
+		moveLater.addActionListener(ae -> moveCurrent(1));
+		editMenu.add(moveLater);
+		
+		JMenu sortMenu = new JMenu("Sort By");
+		sortMenu.setToolTipText("Puts the slides in order by what is known about their images.");
+		
+		for(SlideOrder order: SlideOrder.values()) {
+			JMenuItem item = new JMenuItem(order.getLabel());
+			item.addActionListener(ae -> withMetadata(() -> slides.sort(order)));
+			sortMenu.add(item);
+		}
+		editMenu.add(sortMenu);
+		
+		JMenuItem filterSlides = new JMenuItem("Filter Slides");
+		filterSlides.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, ActionEvent.ALT_MASK));
+		filterSlides.setToolTipText("Keeps only the slides matching a query, such as: portrait min:2000 from:2020-06-01 canon");
+		filterSlides.addActionListener(ae -> filterSlides());
+		editMenu.add(filterSlides);
+		
+		editMenu.addMenuListener(new MenuListener() {
+			
+			@Override
+			public void menuSelected(MenuEvent e) {
+				undoEdit.setText(undo.getUndoPresentationName());
+				redoEdit.setText(undo.getRedoPresentationName());
+			}
+			
+			@Override
+			public void menuDeselected(MenuEvent e) {}
+			
+			@Override
+			public void menuCanceled(MenuEvent e) {}
+		});
+		
+		JMenuItem play = new JMenuItem("Play");
+		play.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, ActionEvent.ALT_MASK));
+		play.setToolTipText("Starts or stops advancing the slide show automatically.");
+		play.addActionListener(ae -> {
+			if(playback.isPlaying()) {
+				playback.stop();
+				play.setText("Play");
+				play.setToolTipText(String.format("Last playback: %d slides shown, %d late, at most %.0f ms late.",
+						playback.getAdvances(), playback.getMissed(), Math.max(0, playback.getMaxLateness())));
+			} else if(!slides.isEmpty()) {
+				playback.resetCounters();
+				playback.start(current);
+				play.setText("Pause");
+			}
+		});
+		playbackMenu.add(play);
+		
+		JMenuItem slideDuration = new JMenuItem("Slide Duration");
+		slideDuration.setToolTipText("Sets how many seconds the current slide is shown during playback.");
+		slideDuration.addActionListener(ae -> {
+			if(slides.isEmpty())
+				return;
+			
+			Slide slide = slides.get(current);
+			long duration = slide.getDuration();
+			Long millis = askSeconds("Seconds to show this slide, empty to use the default:", duration > 0 ? duration : -1);
+			
+			if(millis != null)
+				slide.setDuration(Math.max(0, millis));
+		});
+		playbackMenu.add(slideDuration);
+		
+		JMenuItem defaultDuration = new JMenuItem("Default Duration");
+		defaultDuration.setToolTipText("Sets how many seconds slides without their own duration are shown during playback.");
+		defaultDuration.addActionListener(ae -> {
+			Long millis = askSeconds("Seconds to show each slide:", playback.getDefaultDuration());
+			
+			if(millis != null && millis > 0)
+				playback.setDefaultDuration(millis);
+		});
+		playbackMenu.add(defaultDuration);
+		
+		JMenu transitionMenu = new JMenu("Transition");
+		transitionMenu.setToolTipText("Selects how the slide show moves from one slide to the next.");
+		ButtonGroup transitionGroup = new ButtonGroup();
+		
+		for(Transition.Effect choice: Transition.Effect.values()) {
+			String name = choice.name().charAt(0) + choice.name().substring(1).toLowerCase();
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(name, choice == effect);
+			item.addActionListener(ae -> effect = choice);
+			transitionGroup.add(item);
+			transitionMenu.add(item);
+		}
+		playbackMenu.add(transitionMenu);
+		
+		playbackMenu.addMenuListener(new MenuListener() {
+			
+			@Override
+			public void menuSelected(MenuEvent e) {
+				play.setText(playback.isPlaying() ? "Pause" : "Play");
+			}
+			
+			@Override
+			public void menuDeselected(MenuEvent e) {}
+			
+			@Override
+			public void menuCanceled(MenuEvent e) {}
+		});
+		
+		JCheckBoxMenuItem deepZoom = new JCheckBoxMenuItem("Deep Zoom");
+		deepZoom.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, ActionEvent.ALT_MASK));
+		deepZoom.setToolTipText("Explores the current slide at full resolution: the mouse wheel zooms, dragging pans and a double click fits the slide again.");
+		deepZoom.addActionListener(ae -> showDeepView(deepZoom.isSelected()));
+		viewMenu.add(deepZoom);
+		
+		JMenuItem goTo = new JMenuItem("Go To Slide");
+		goTo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, ActionEvent.ALT_MASK));
+		goTo.setToolTipText("Moves straight to the slide with the given number.");
+		goTo.addActionListener(ae -> {
+			Integer index = askSlide();
+			
+			if(index != null) {
+				showGrid(false);
+				go(index, index < current ? -1 : 1);
+			}
+		});
+		viewMenu.add(goTo);
+		
+		viewMenu.addMenuListener(new MenuListener() {
+			
+			@Override
+			public void menuSelected(MenuEvent e) {
+				deepZoom.setSelected(deepView.getParent() != null);
+			}
+			
+			@Override
+			public void menuDeselected(MenuEvent e) {}
+			
+			@Override
+			public void menuCanceled(MenuEvent e) {}
+		});
+		
 		JMenuItem about = new JMenuItem("About");
 		about.addActionListener(ae -> {
 			JDialog dialog = new JDialog();
@@ -178,29 +564,45 @@ public class Displayable {
 		});
 		helpMenu.add(manMenu);
 		
+		JCheckBoxMenuItem overlay = new JCheckBoxMenuItem("Performance Overlay");
+		overlay.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_M, ActionEvent.ALT_MASK));
+		overlay.setToolTipText("Shows decode, scale and paint times, frame times, cache hit rates and memory use over the slides.");
+		overlay.addActionListener(ae -> metricsOverlay.setShown(overlay.isSelected()));
+		helpMenu.add(overlay);
+		
 		menubar.add(fileMenu);
+		menubar.add(editMenu);
+		menubar.add(playbackMenu);
+		menubar.add(viewMenu);
 		menubar.add(helpMenu);
 		
 		northPanel.add(menubar);
 		
 		frame.add(northPanel, BorderLayout.NORTH);
-		frame.setIconImage(util.IO.load(slideshowIcon));
 	}
 	
 	/**
-	 * Sets up the slide show
+	 * Sets up the slide show, letting go of the slide shown by the view it replaces so an animation
+	 * playing there is stopped
 	 */
 	private void setupSlideshow() {
+		if(view != null)
+			view.setSlide(null);
+		
+		if(showPanel != null)
+			frame.remove(showPanel);
+		
 		showPanel = new JPanel(new GridBagLayout());
 		showPanel.setBackground(Color.BLACK);
 		
-		cardPanel = new JPanel();
-		cardPanel.setBackground(Color.BLACK);
+		viewPanel = new JPanel(new BorderLayout());
+		viewPanel.setBackground(Color.BLACK);
 		
-		layout = new CardLayout();
-		cardPanel.setLayout(layout);
+		view = new ImagePanel((Slide) null, viewPanel, showPanel);
+		view.setSlide(slides.isEmpty() ? null : slides.get(current));
+		viewPanel.add(view, BorderLayout.CENTER);
 		
-		showPanel.add(cardPanel);
+		showPanel.add(viewPanel);
 		frame.add(showPanel, BorderLayout.CENTER);
 	}
 	
@@ -217,20 +619,18 @@ public class Displayable {
 		JButton btnAdd = new JButton();
 		JButton btnSub = new JButton();
 		
-		addIcon(btnAdd, util.IO.load(addIcon));
-		addIcon(btnSub, util.IO.load(subIcon));
+		addIcon(btnAdd, addIcon);
+		addIcon(btnSub, subIcon);
 		
 		btnAdd.setToolTipText("Select an image to add to the slideshow.");
 		btnSub.setToolTipText("Removes the currently displayed image from the slideshow.");
 		
 		btnAdd.addActionListener(ae -> {
-			for(BufferedImage image: util.IO.loadImage(btnAdd))
-				addSlide(image);
+			cancelImport();
+			importer = util.IO.loadImage(btnAdd, createImportListener());
 		});
 
-		btnSub.addActionListener(ae -> {
-
-		});
+		btnSub.addActionListener(ae -> removeCurrent());
 		
 		plusBar.add(btnAdd);
 		plusBar.add(btnSub);
@@ -246,10 +646,10 @@ public class Displayable {
 		JButton btnNext = new JButton();
 		JButton btnLast = new JButton();
 		
-		addIcon(btnFirst, util.IO.load(firstIcon));
-		addIcon(btnPrevious, util.IO.load(previousIcon));
-		addIcon(btnNext, util.IO.load(nextIcon));
-		addIcon(btnLast, util.IO.load(lastIcon));
+		addIcon(btnFirst, firstIcon);
+		addIcon(btnPrevious, previousIcon);
+		addIcon(btnNext, nextIcon);
+		addIcon(btnLast, lastIcon);
 		
 		btnFirst.setToolTipText("Displays the first image in the slide show.");
 		btnPrevious.setToolTipText("Displays the previous image in the slide show.");
@@ -259,23 +659,19 @@ public class Displayable {
 		btnFirst.setMnemonic(KeyEvent.VK_RIGHT);
 		
 		btnFirst.addActionListener(ae -> {			
-			layout.first(cardPanel);
-			frame.repaint();
+			go(0, -1);
 		});
 		
 		btnPrevious.addActionListener(ae -> {
-			layout.previous(cardPanel);
-			frame.repaint();
+			go(current - 1, -1);
 		});
 		
 		btnNext.addActionListener(ae -> {
-			layout.next(cardPanel);
-			frame.repaint();
+			go(current + 1, 1);
 		});
 		
 		btnLast.addActionListener(ae -> {
-			layout.last(cardPanel);
-			frame.repaint();
+			go(slides.size() - 1, 1);
 		});
 		
 		
@@ -294,8 +690,8 @@ public class Displayable {
 		JButton btnFullscreen = new JButton();
 		JButton btnThumbnail = new JButton();
 		
-		addIcon(btnFullscreen, util.IO.load(fullscreenIcon));
-		addIcon(btnThumbnail, IO.load(thumbnailIcon));
+		addIcon(btnFullscreen, fullscreenIcon);
+		addIcon(btnThumbnail, thumbnailIcon);
 		
 		btnFullscreen.setToolTipText("Toggles full screen.");
 		btnThumbnail.setToolTipText("Toggles thumbnail overview of all slides in the slide show.");
@@ -309,11 +705,7 @@ public class Displayable {
 		thumbnailBar.add(btnFullscreen);
 		
 		btnThumbnail.addActionListener(ae -> {
-			JDialog dlog = new JDialog();
-			dlog.add(new JLabel("Ignite everything."));
-			dlog.pack();
-			dlog.setVisible(true);
-			
+			showGrid(gridPane.getParent() == null);
 		});
 		thumbnailBar.add(btnThumbnail);
 		
@@ -322,39 +714,589 @@ public class Displayable {
 	}
 	
 	/**
-	 * Adds a slide to the slide show from an icon
-	 * @param icon - The ImageIcon containing the image to be added
+	 * Removes the current slide from the slide show; the slide after it is displayed instead
 	 */
-	private void addSlide(ImageIcon icon) {
-		Image image = icon.getImage();
-		ImageObserver observer = icon.getImageObserver();
+	private void removeCurrent() {
+		if(!slides.isEmpty())
+			slides.remove(current);
+	}
+	
+	/**
+	 * Moves the current slide past its neighbour, keeping it displayed
+	 * @param offset - -1 to move the slide one place earlier, 1 to move it one place later
+	 */
+	private void moveCurrent(int offset) {
+		int index = current + offset;
+		
+		if(index >= 0 && index < slides.size())
+			slides.move(current, index);
+	}
+	
+	/**
+	 * Asks the user for a query and removes the slides not matching it, as a single edit. Nothing is
+	 * removed if no slide matches
+	 */
+	private void filterSlides() {
+		if(slides.isEmpty())
+			return;
+		
+		String query = JOptionPane.showInputDialog(frame, "Keep the slides matching:");
+		
+		if(query == null || query.trim().isEmpty())
+			return;
 		
-		BufferedImage bi = new BufferedImage(image.getWidth(observer), image.getHeight(observer), BufferedImage.OPAQUE);
-		bi.getGraphics().drawImage(image, 0, 0, observer);
+		SlideFilter filter;
 		
-		cardPanel.add(new ImagePanel(bi, cardPanel, showPanel));
+		try {
+			filter = SlideFilter.parse(query);
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(frame, e.getMessage(), "Filter Slides", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		
+		withMetadata(() -> {
+			if(!slides.stream().anyMatch(filter)) {
+				JOptionPane.showMessageDialog(frame, "No slide matches " + query.trim(), "Filter Slides", JOptionPane.INFORMATION_MESSAGE);
+				return;
+			}
+			
+			CompoundEdit edit = slides.beginEdit("Filter");
+			slides.removeIf(filter.negate());
+			slides.endEdit(edit);
+		});
 	}
 	
 	/**
-	 * Adds a slide to the slide show from a BufferedImage
-	 * @param image - The image to add
+	 * Brings the metadata index up to date for the image files of the slides on a background thread, then
+	 * runs an action which reads the metadata of every slide on the event dispatch thread. Nothing is run
+	 * while an import is collecting its slides into an edit
+	 * @param action - The action to run
 	 */
-	private void addSlide(BufferedImage image) {
-		cardPanel.add(new ImagePanel(image, cardPanel, showPanel));
-		icons.add(new ImageIcon(image));
+	private void withMetadata(Runnable action) {
+		if(slides.isEditing())
+			return;
+		
+		List<File> files = new ArrayList<File>();
+		
+		for(Slide slide: slides) {
+			if(slide.getFile() != null)
+				files.add(slide.getFile());
+		}
 		
-		layout.last(cardPanel);
+		Thread scanner = new Thread(() -> {
+			MetadataIndex.scan(files);
+			MetadataIndex.save();
+			
+			SwingUtilities.invokeLater(() -> {
+				if(!slides.isEditing())
+					action.run();
+			});
+		}, "Metadata Scan");
+		scanner.setDaemon(true);
+		scanner.start();
+	}
+	
+	/**
+	 * Creates a listener keeping the view, the current slide, the duplicate index and the thumbnail overview
+	 * in step with the slides, however they were changed
+	 * @return The model listener
+	 */
+	private SlideModel.Listener createModelListener() {
+		return new SlideModel.Listener() {
+			
+			@Override
+			public void inserted(int index, Slide slide) {
+				if(slide.hasHash())
+					hashes.add(slide.getHash(), slide);
+				
+				grid.slidesChanged();
+				
+				if(slides.size() == 1) {
+					show(0);
+				} else if(index <= current) {
+					current++;
+					grid.setCurrent(current);
+				}
+			}
+			
+			@Override
+			public void removed(int index, Slide slide) {
+				if(slide.hasHash())
+					hashes.remove(slide.getHash(), slide);
+				
+				util.FrameCache.invalidate(slide);
+				slide.release();
+				grid.slidesChanged();
+				
+				if(slides.isEmpty()) {
+					transitionPane.finish();
+					prefetcher.reset();
+					window.clear();
+					current = 0;
+					view.setSlide(null);
+					frame.repaint();
+					return;
+				}
+				
+				if(index < current) {
+					current--;
+				} else if(index == current) {
+					show(Math.min(current, slides.size() - 1));
+					return;
+				}
+				
+				reselect();
+			}
+			
+			@Override
+			public void replaced(int index, Slide previous, Slide slide) {
+				if(previous.hasHash())
+					hashes.remove(previous.getHash(), previous);
+				if(slide.hasHash())
+					hashes.add(slide.getHash(), slide);
+				
+				util.FrameCache.invalidate(previous);
+				previous.release();
+				grid.slidesChanged();
+				
+				if(index == current)
+					view.setSlide(slide);
+				
+				select(current);
+				
+				if(!window.contains(slide))
+					slide.release();
+			}
+			
+			@Override
+			public void moved(int from, int to) {
+				if(from == current)
+					current = to;
+				else if(from < current && to >= current)
+					current--;
+				else if(from > current && to <= current)
+					current++;
+				
+				grid.slidesChanged();
+				reselect();
+			}
+			
+			@Override
+			public void reordered() {
+				current = Math.max(0, slides.indexOf(view.getSlide()));
+				grid.slidesChanged();
+				select(current);
+			}
+			
+			@Override
+			public void reset() {
+				undo.discardAllEdits();
+				hashes.clear();
+				
+				for(Slide slide: slides) {
+					if(slide.hasHash())
+						hashes.add(slide.getHash(), slide);
+				}
+				
+				grid.slidesChanged();
+				current = 0;
+				
+				if(slides.isEmpty())
+					view.setSlide(null);
+				else
+					show(0);
+			}
+		};
+	}
+	
+	/**
+	 * Removes every slide from the slide show and releases their decoded images
+	 */
+	private void clearSlides() {
+		cancelImport();
+		stopWatching();
+		playback.stop();
+		transitionPane.finish();
+		showGrid(false);
+		showDeepView(false);
+		deepView.setSlide(null);
+		prefetcher.reset();
+		window.clear();
+		grid.clear();
+		slides.clear();
+	}
+	
+	/**
+	 * Asks the user for a number of seconds
+	 * @param message - The question to ask
+	 * @param millis - The current value in milliseconds, negative for none
+	 * @return The answer in milliseconds, 0 if the answer was left empty, null if cancelled or not a number
+	 */
+	private Long askSeconds(String message, long millis) {
+		String value = millis < 0 ? "" : Double.toString(millis / 1000.0);
+		String answer = JOptionPane.showInputDialog(frame, message, value);
+		
+		if(answer == null)
+			return null;
+		
+		if(answer.trim().isEmpty())
+			return 0L;
+		
+		try {
+			return Math.round(Double.parseDouble(answer.trim()) * 1000);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Asks the user for the number of a slide
+	 * @return The index of the slide, null if cancelled, not a number or not a slide
+	 */
+	private Integer askSlide() {
+		if(slides.isEmpty())
+			return null;
+		
+		String answer = JOptionPane.showInputDialog(frame, "Slide number, from 1 to " + slides.size() + ":", current + 1);
+		
+		if(answer == null)
+			return null;
+		
+		try {
+			int index = Integer.parseInt(answer.trim()) - 1;
+			return index >= 0 && index < slides.size() ? index : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Switches between the thumbnail overview and the slide show view
+	 * @param visible - True to show the thumbnail overview
+	 */
+	private void showGrid(boolean visible) {
+		if(visible == (gridPane.getParent() != null))
+			return;
+		
+		if(visible) {
+			showView(gridPane);
+			grid.setCurrent(current);
+			SwingUtilities.invokeLater(() -> grid.scrollRectToVisible(grid.getCellBounds(current)));
+		} else {
+			showView(showPanel);
+		}
+	}
+	
+	/**
+	 * Switches between the deep zoom view of the current slide and the slide show view
+	 * @param visible - True to show the deep zoom view
+	 */
+	private void showDeepView(boolean visible) {
+		if(visible == (deepView.getParent() != null))
+			return;
+		
+		if(visible) {
+			transitionPane.finish();
+			deepView.setSlide(slides.isEmpty() ? null : slides.get(current));
+			showView(deepView);
+		} else {
+			showView(showPanel);
+		}
+	}
+	
+	/**
+	 * Replaces whichever view fills the center of the frame
+	 * @param view - The view to show
+	 */
+	private void showView(JComponent view) {
+		Component center = ((BorderLayout) frame.getContentPane().getLayout()).getLayoutComponent(BorderLayout.CENTER);
+		
+		if(center == view)
+			return;
+		
+		if(center != null)
+			frame.remove(center);
+		
+		frame.add(view, BorderLayout.CENTER);
+		frame.revalidate();
+		frame.repaint();
+	}
+	
+	/**
+	 * Moves to a slide, playing the selected transition from the slide shown before
+	 * @param index - The index of the slide to move to, wrapped around the ends of the slide show
+	 * @param direction - 1 if moving forward through the slide show, -1 if moving backward
+	 */
+	private void go(int index, int direction) {
+		if(slides.isEmpty())
+			return;
+		
+		index = Math.floorMod(index, slides.size());
+		
+		int width = showPanel.getWidth(), height = showPanel.getHeight();
+		boolean animate = effect != Transition.Effect.NONE && index != current && showPanel.isShowing();
+		BufferedImage from = animate ? getFrame(current, width, height) : null;
+		
+		show(index);
+		
+		if(from == null) {
+			transitionPane.finish();
+			return;
+		}
+		
+		BufferedImage to = getFrame(index, width, height);
+		
+		if(to != null)
+			transitionPane.start(new Transition(effect, from, to, direction), showPanel, TRANSITION_TIME);
+	}
+	
+	/**
+	 * Gets the frame of a slide scaled to the slide area
+	 * @param index - The index of the slide
+	 * @param width - The width of the slide area
+	 * @param height - The height of the slide area
+	 * @return The scaled frame, null if the slide could not be decoded
+	 */
+	private BufferedImage getFrame(int index, int width, int height) {
+		if(index < 0 || index >= slides.size())
+			return null;
+		
+		return view.getFrame(slides.get(index), width, height);
+	}
+	
+	/**
+	 * Shows the slide at the given index
+	 * @param index - The index of the slide to show
+	 */
+	private void show(int index) {
+		if(index < 0 || index >= slides.size())
+			return;
+		
+		view.setSlide(slides.get(index));
+		select(index);
+	}
+	
+	/**
+	 * Creates a listener adding imported slides to the end of the slide show while showing the import progress.
+	 * Slides which look the same as a slide already in the slide show are skipped while hashing is on. The
+	 * whole import is undone as one edit, and the last imported slide is shown if any slide was added
+	 * @return The import listener
+	 */
+	private Importer.Listener createImportListener() {
+		return new Importer.Listener() {
+			
+			private ProgressMonitor monitor;
+			private CompoundEdit edit;
+			private boolean started;
+			private int duplicates;
+			
+			@Override
+			public void imported(Slide slide) {
+				if(Importer.isHashing() && slide.hasHash() && hashes.find(slide.getHash(), DUPLICATE_DISTANCE) != null) {
+					duplicates++;
+					return;
+				}
+				
+				if(!started) {
+					started = true;
+					edit = slides.beginEdit("Import");
+				}
+				
+				slides.add(slide);
+			}
+			
+			@Override
+			public void progress(int done, int total) {
+				if(monitor == null) {
+					monitor = new ProgressMonitor(frame, "Importing images", null, 0, total);
+					monitor.setMillisToDecideToPopup(200);
+				}
+				
+				if(monitor.isCanceled()) {
+					cancelImport();
+					return;
+				}
+				
+				monitor.setNote(duplicates == 0 ? done + " of " + total : done + " of " + total + ", " + duplicates + " duplicates skipped");
+				monitor.setProgress(done);
+			}
+			
+			@Override
+			public void finished(boolean cancelled) {
+				if(monitor != null)
+					monitor.close();
+				
+				slides.endEdit(edit);
+				
+				if(started)
+					show(slides.size() - 1);
+			}
+		};
+	}
+	
+	/**
+	 * Creates a listener applying the changes to a watched folder to the slide show. Images from the folder
+	 * are kept in file name order, and only the slides of changed files are touched. The slides of the folder
+	 * are kept by file name too, so a new image is placed before the slide of the next file name in
+	 * logarithmic time however many images the folder holds
+	 * @return The folder listener
+	 */
+	private FolderWatcher.Listener createWatchListener() {
+		return new FolderWatcher.Listener() {
+			
+			private final TreeMap<String, Slide> watched = new TreeMap<String, Slide>();
+			
+			@Override
+			public void added(Slide slide) {
+				String name = slide.getFile().getName();
+				slides.add(getPosition(name), slide);
+				watched.put(name, slide);
+				reselect();
+			}
+			
+			@Override
+			public void replaced(Slide previous, Slide slide) {
+				int index = slides.indexOf(previous);
+				
+				if(index < 0) {
+					added(slide);
+				} else {
+					slides.set(index, slide);
+					watched.put(slide.getFile().getName(), slide);
+				}
+			}
+			
+			@Override
+			public void removed(Slide previous) {
+				watched.remove(previous.getFile().getName(), previous);
+				int index = slides.indexOf(previous);
+				
+				if(index >= 0)
+					slides.remove(index);
+			}
+			
+			/**
+			 * Gets where a file from the watched folder belongs in the slide show, before the slide of the next
+			 * file name from the folder. Slides the user removed from the slide show are forgotten on the way
+			 * @param name - The file name
+			 * @return The index to insert the slide of the file at
+			 */
+			private int getPosition(String name) {
+				for(Map.Entry<String, Slide> next = watched.higherEntry(name); next != null; next = watched.higherEntry(name)) {
+					int index = slides.indexOf(next.getValue());
+					
+					if(index >= 0)
+						return index;
+					
+					watched.remove(next.getKey());
+				}
+				return slides.size();
+			}
+		};
+	}
+	
+	/**
+	 * Stops following the watched folder, if any, keeping its slides in the slide show
+	 */
+	private void stopWatching() {
+		if(watcher != null)
+			watcher.stop();
+		watcher = null;
+		slides.setUndoable(true);
+	}
+	
+	/**
+	 * Cancels the running image import, if any
+	 */
+	private void cancelImport() {
+		if(importer != null && !importer.isCancelled())
+			importer.cancel();
+		importer = null;
+	}
+	
+	/**
+	 * Records the slide the view is now showing, moves the slide window to it and starts prefetching
+	 * the slides likely to be shown next
+	 * @param index - The index of the displayed slide, wrapped around the ends of the slide show
+	 */
+	private void select(int index) {
+		if(!slides.isEmpty()) {
+			current = Math.floorMod(index, slides.size());
+			window.moveTo(current);
+			prefetcher.navigated(current, showPanel.getWidth(), showPanel.getHeight());
+			grid.setCurrent(current);
+			
+			if(deepView.getParent() != null)
+				deepView.setSlide(slides.get(current));
+		}
+		frame.repaint();
+	}
+	
+	/**
+	 * Selects the current slide again once the pending events are handled, so a batch of changes which
+	 * keeps the same slide displayed moves the slide window and prefetcher once rather than per change
+	 */
+	private void reselect() {
+		if(reselecting)
+			return;
+		
+		reselecting = true;
+		SwingUtilities.invokeLater(() -> {
+			reselecting = false;
+			select(current);
+		});
+	}
+	
+	/**
+	 * Gets the transition effect with a name, ignoring case
+	 * @param name - The name of the effect, may be null
+	 * @param effect - The effect if the name is missing or not an effect
+	 * @return The effect
+	 */
+	private static Transition.Effect getEffect(String name, Transition.Effect effect) {
+		for(Transition.Effect choice: Transition.Effect.values()) {
+			if(choice.name().equalsIgnoreCase(name))
+				return choice;
+		}
+		return effect;
+	}
+	
+	/**
+	 * Starts loading the frame icon and the button icons. They load one after another on the icon loading
+	 * thread, unless slideshow.backgroundIcons is false, in which case they load now
+	 */
+	private void loadIcons() {
+		for(String name: new String[] {slideshowIcon, addIcon, subIcon, firstIcon, previousIcon, nextIcon, lastIcon, fullscreenIcon, thumbnailIcon}) {
+			int size = name.equals(slideshowIcon) ? 0 : ICON_SIZE;
+			icons.put(name, BACKGROUND_ICONS ? IO.loadIconLater(name, size) : CompletableFuture.completedFuture(IO.loadIcon(name, size)));
+		}
+		pendingIcons = icons.size();
+	}
+	
+	/**
+	 * Runs an action with a loaded icon on the event dispatch thread. Once every icon has been handed out
+	 * the slide show is ready, and exits if slideshow.exitWhenReady is set, for timing startup
+	 * @param name - The name of the icon
+	 * @param action - The action, not run if the icon could not be loaded
+	 */
+	private void whenLoaded(String name, Consumer<BufferedImage> action) {
+		icons.get(name).thenAccept(image -> SwingUtilities.invokeLater(() -> {
+			if(image != null)
+				action.accept(image);
+			
+			if(--pendingIcons == 0 && EXIT_WHEN_READY)
+				System.exit(0);
+		}));
 	}
 	
 	/**
-	 * Adds an image to a button as an icon
+	 * Gives a button an empty icon of the right size, replaced by its image once loaded
 	 * @param button - The button to update
-	 * @param image - The image to add
+	 * @param name - The name of the icon
 	 */
-	private void addIcon(JButton button, BufferedImage image) {
-		image = util.ImageUtils.resize(image, ICON_SIZE, ICON_SIZE);
-		ImageIcon icon = new ImageIcon(image);
-		button.setIcon(icon);
+	private void addIcon(JButton button, String name) {
+		button.setIcon(new ImageIcon(new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB)));
+		whenLoaded(name, image -> button.setIcon(new ImageIcon(image)));
 	}
 	
 }
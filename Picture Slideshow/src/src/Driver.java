@@ -1,9 +1,11 @@
 package src;
 
+import javax.swing.SwingUtilities;
+
 public class Driver {
 
 	public static void main(String[] args) {
-		new Displayable();
+		SwingUtilities.invokeLater(Displayable::new);
 	}
 
 }
@@ -0,0 +1,130 @@
+package src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import util.Exporter;
+import util.Slide;
+
+/**
+ * Command line entry point rendering a slide show to images or video without a display.
+ *
+ * <pre>
+ * java -cp slideshow.jar src.Export [options] &lt;input.slider | folder&gt; &lt;output&gt;
+ *   --size WxH       frame size, default 1920x1080
+ *   --format F       png, jpg or avi, default from the output name, else png
+ *   --fps N          video frame rate, default 1
+ *   --duration S     seconds per slide without its own duration, default 5
+ *   --quality Q      JPEG quality from 0 to 1, default 0.9
+ *   --threads N      render threads, default the number of processors
+ *   --in-flight N    frames rendered ahead of the writer, default twice the threads
+ * </pre>
+ */
+public class Export {
+	
+	private static final String USAGE = "Usage: src.Export [--size WxH] [--format png|jpg|avi] [--fps N] [--duration S]"
+			+ " [--quality Q] [--threads N] [--in-flight N] <input.slider | folder> <output>";
+	
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		
+		int width = 1920, height = 1080;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int inFlight = -1, fps = 1;
+		double duration = -1;
+		float quality = 0.9f;
+		Exporter.Format format = null;
+		String input = null, output = null;
+		
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				
+				if(!arg.startsWith("--")) {
+					if(input == null)
+						input = arg;
+					else if(output == null)
+						output = arg;
+					else
+						throw new IllegalArgumentException("Unexpected argument " + arg);
+					continue;
+				}
+				
+				if(i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				
+				String value = args[++i];
+				
+				switch(arg) {
+				case "--size":
+					String[] size = value.toLowerCase(Locale.ROOT).split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+					break;
+				case "--format":
+					format = Exporter.Format.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				case "--fps":
+					fps = Integer.parseInt(value);
+					break;
+				case "--duration":
+					duration = Double.parseDouble(value);
+					break;
+				case "--quality":
+					quality = Float.parseFloat(value);
+					break;
+				case "--threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "--in-flight":
+					inFlight = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			
+			if(input == null || output == null)
+				throw new IllegalArgumentException("Missing input or output");
+			
+			if(width <= 0 || height <= 0)
+				throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+		
+		if(format == null)
+			format = output.toLowerCase(Locale.ROOT).endsWith(".avi") ? Exporter.Format.AVI : Exporter.Format.PNG;
+		
+		Exporter exporter = new Exporter(width, height, format);
+		exporter.setThreads(threads);
+		exporter.setInFlight(inFlight > 0 ? inFlight : 2 * threads);
+		exporter.setFrameRate(fps);
+		exporter.setQuality(quality);
+		
+		if(duration > 0)
+			exporter.setDefaultDuration(Math.round(duration * 1000));
+		
+		try {
+			List<Slide> slides = Exporter.load(new File(input));
+			long start = System.nanoTime();
+			
+			int frames = exporter.export(slides, new File(output), (done, total) -> {
+				System.err.print("\rExported " + done + " of " + total);
+			});
+			
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.println();
+			System.err.println(String.format(Locale.ROOT, "%d slides, %d frames in %.1f s (%.1f slides/s)",
+					slides.size(), frames, seconds, slides.size() / seconds));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -1,17 +1,27 @@
 package src;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.HierarchyEvent;
 import java.awt.image.BufferedImage;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 
+import util.Animation;
+import util.Metrics;
+import util.Slide;
+import util.Surface;
+
 public class ImagePanel extends JPanel {
 
 	private static final long serialVersionUID = -5137710974747714004L;
 	
-	private BufferedImage image;
+	private Slide slide;
 	private JComponent parent, container;
+	private final Surface surface = new Surface();
+	private Animation animation;
 	
 	/**
 	 * Constructor
@@ -27,10 +37,31 @@ public class ImagePanel extends JPanel {
 	 * @param container - The JComponent which contains this panel
 	 */
 	public ImagePanel(BufferedImage image, JComponent parent, JComponent container) {
-		this.image = image;
+		this(new Slide(image), parent, container);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * The slide image is only decoded when the panel is painted. The accelerated copy of the frame is
+	 * released whenever the panel is hidden, and an animated slide is paused while the panel is hidden
+	 * 
+	 * @param slide - The slide to display
+	 * @param parent - The JComponent which is the parent of this panel
+	 * @param container - The JComponent which contains this panel
+	 */
+	public ImagePanel(Slide slide, JComponent parent, JComponent container) {
+		this.slide = slide;
 		this.parent = parent;
 		this.container = container;
 		
+		addHierarchyListener(e -> {
+			if((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+				if(!isShowing())
+					surface.flush();
+				updateAnimation();
+			}
+		});
 	}
 	
 	/**
@@ -38,27 +69,155 @@ public class ImagePanel extends JPanel {
 	 * @param image - The new image
 	 */
 	public void setImage(BufferedImage image) {
-		this.image = image;
+		util.FrameCache.invalidate(slide);
+		surface.setFrame(null);
+		stopAnimation();
+		this.slide = new Slide(image);
 	}
 	
 	/**
-	 * Gets the image dimensions
-	 * @return The image dimensions
+	 * Sets the slide displayed by the panel. The frames of the previous slide stay in the frame cache, so
+	 * a single panel can show every slide of a slide show in turn
+	 * @param slide - The new slide, null to show nothing
+	 */
+	public void setSlide(Slide slide) {
+		surface.setFrame(null);
+		
+		if(slide != this.slide)
+			stopAnimation();
+		
+		this.slide = slide;
+		updateAnimation();
+		
+		if(slide == null) {
+			parent.setPreferredSize(new Dimension());
+			container.revalidate();
+		}
+		repaint();
+	}
+	
+	/**
+	 * Gets the slide displayed by the panel
+	 * @return The slide
+	 */
+	public Slide getSlide() {
+		return slide;
+	}
+	
+	/**
+	 * Gets the full resolution upright image dimensions
+	 * @return The image dimensions, null if the panel shows no slide
 	 */
 	public Dimension getImageSize() {
-		return util.ImageUtils.getDimension(image);
+		if(slide == null)
+			return null;
+		
+		Dimension size = slide.getDisplaySize();
+		return size != null ? size : util.ImageUtils.getDimension(slide.getImage());
 	}
 	
 	/**
 	 * Paints the image to the screen
+	 * 
+	 * The scaled image is cached per container size, so it is only rescaled when the container is resized
+	 * or the image is changed. It is drawn through an accelerated surface where the screen supports one
 	 * @param g - The Graphics which will draw the image
 	 */
 	@Override
 	public void paint(Graphics g) {
-		BufferedImage newimage = util.ImageUtils.resize(image, container.getWidth(), container.getHeight());
-		parent.setPreferredSize(new Dimension(newimage.getWidth(), newimage.getHeight()));
-		g.drawImage(newimage, 0, 0, null);
-		container.revalidate();
+		long start = Metrics.start();
+		BufferedImage frame = getFrame(container.getWidth(), container.getHeight());
+		
+		if(frame == null)
+			return;
+		
+		Dimension size = new Dimension(frame.getWidth(), frame.getHeight());
+		
+		if(!size.equals(parent.getPreferredSize())) {
+			parent.setPreferredSize(size);
+			container.revalidate();
+		}
+		
+		BufferedImage animated = animation == null ? null : animation.getFrame();
+		
+		if(animated != null) {
+			double scale = Math.min(size.getWidth() / animated.getWidth(), size.getHeight() / animated.getHeight());
+			int width = (int) Math.round(animated.getWidth() * scale), height = (int) Math.round(animated.getHeight() * scale);
+			
+			Graphics2D g2 = (Graphics2D) g;
+			g2.setColor(parent.getBackground());
+			g2.fillRect(0, 0, size.width, size.height);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(animated, (size.width - width) / 2, (size.height - height) / 2, width, height, null);
+		} else {
+			surface.setFrame(frame);
+			surface.draw(g, 0, 0);
+		}
+		Metrics.stop(Metrics.Stage.PAINT, start);
+	}
+	
+	/**
+	 * Plays the slide if it is an animated GIF and the panel is showing, and pauses it otherwise. The
+	 * first frame is painted like any slide until the animation has its frames ready
+	 */
+	private void updateAnimation() {
+		if(animation == null && Animation.isGif(slide))
+			animation = new Animation(slide, this::repaint);
+		
+		if(animation == null)
+			return;
+		
+		if(isShowing())
+			animation.play();
+		else
+			animation.pause();
+	}
+	
+	/**
+	 * Stops the animation of the slide being replaced
+	 */
+	private void stopAnimation() {
+		if(animation != null) {
+			animation.dispose();
+			animation = null;
+		}
+	}
+	
+	/**
+	 * Gets the image scaled to fit within the given bounds, from the frame cache when possible
+	 * @param width - The maximum width of the frame
+	 * @param height - The maximum height of the frame
+	 * @return The scaled image, null if the bounds are empty
+	 */
+	public BufferedImage getFrame(int width, int height) {
+		return getFrame(slide, width, height);
+	}
+	
+	/**
+	 * Gets the image of any slide scaled to fit within the given bounds for this panel's screen, from the
+	 * frame cache when possible
+	 * @param slide - The slide
+	 * @param width - The maximum width of the frame
+	 * @param height - The maximum height of the frame
+	 * @return The scaled image, null if the bounds are empty or the slide could not be decoded
+	 */
+	public BufferedImage getFrame(Slide slide, int width, int height) {
+		if(slide == null || width <= 0 || height <= 0)
+			return null;
+		
+		BufferedImage frame = util.FrameCache.get(slide, width, height);
+		
+		if(frame == null) {
+			BufferedImage image = slide.getImage();
+			
+			if(image == null)
+				return null;
+			
+			frame = util.ImageUtils.toCompatible(util.ImageUtils.resize(image, width, height), getGraphicsConfiguration());
+			util.FrameCache.put(slide, width, height, frame);
+		}
+		
+		return frame;
 	}
 	
 }
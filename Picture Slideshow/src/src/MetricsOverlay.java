@@ -0,0 +1,156 @@
+package src;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLayeredPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import util.FrameCache;
+import util.Metrics;
+
+/**
+ * An overlay showing live performance metrics in the top right corner of the slide area.
+ *
+ * The overlay sits in the layered pane of the frame above the slides and is refreshed twice a second while
+ * it is shown. Showing it turns metrics recording on; hiding it restores whatever recording state there
+ * was before.
+ */
+public class MetricsOverlay extends JComponent {
+	
+	private static final long serialVersionUID = 6081937305617045520L;
+	
+	private static final int REFRESH_RATE = 500;
+	private static final int MARGIN = 10;
+	private static final int PADDING = 8;
+	private static final double MEGABYTE = 1024 * 1024;
+	private static final Color BACKGROUND = new Color(0, 0, 0, 180);
+	
+	private final JFrame frame;
+	private final Timer timer;
+	private List<String> lines = new ArrayList<String>();
+	private boolean wasEnabled;
+	
+	/**
+	 * Constructor
+	 * @param frame - The frame whose slide area the overlay is shown over
+	 */
+	public MetricsOverlay(JFrame frame) {
+		this.frame = frame;
+		this.timer = new Timer(REFRESH_RATE, ae -> refresh());
+		
+		setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		setForeground(Color.WHITE);
+		setVisible(false);
+		
+		frame.getLayeredPane().add(this, JLayeredPane.PALETTE_LAYER);
+	}
+	
+	/**
+	 * Shows or hides the overlay
+	 * @param shown - True to show the overlay and record metrics
+	 */
+	public void setShown(boolean shown) {
+		if(shown == isVisible())
+			return;
+		
+		if(shown) {
+			wasEnabled = Metrics.isEnabled();
+			Metrics.setEnabled(true);
+			refresh();
+			setVisible(true);
+			timer.start();
+		} else {
+			timer.stop();
+			setVisible(false);
+			Metrics.setEnabled(wasEnabled);
+		}
+	}
+	
+	/**
+	 * Paints the metrics over a translucent background
+	 * @param g - The Graphics which will draw the overlay
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		
+		FontMetrics metrics = g.getFontMetrics(getFont());
+		int y = PADDING + metrics.getAscent();
+		
+		g.setColor(getForeground());
+		g.setFont(getFont());
+		
+		for(String line: lines) {
+			g.drawString(line, PADDING, y);
+			y += metrics.getHeight();
+		}
+	}
+	
+	/**
+	 * Reads the current metrics and moves the overlay to the corner of the slide area
+	 */
+	private void refresh() {
+		List<String> lines = new ArrayList<String>();
+		lines.add(String.format("%-16s %6s %8s %8s %8s", "Stage (ms)", "count", "median", "p99", "max"));
+		
+		for(Metrics.Stage stage: Metrics.Stage.values()) {
+			Metrics.Summary summary = Metrics.getSummary(stage);
+			lines.add(String.format("%-16s %6d %8.1f %8.1f %8.1f", stage.getLabel(), summary.getCount(),
+					summary.getMedian(), summary.getP99(), summary.getMax()));
+		}
+		
+		Runtime runtime = Runtime.getRuntime();
+		
+		lines.add(String.format("Decoded slides   %.1f MB", Metrics.getSlideBytes() / MEGABYTE));
+		lines.add(String.format("Frame cache      %.1f of %.0f MB, %.1f MB on heap, %.0f%% hits", FrameCache.getSize() / MEGABYTE,
+				FrameCache.getBudget() / MEGABYTE, FrameCache.getHeapSize() / MEGABYTE, Metrics.getFrameHitRate() * 100));
+		lines.add(String.format("Thumbnails       %.0f%% hits", Metrics.getHitRate(Metrics.Cache.THUMBNAIL) * 100));
+		lines.add(String.format("Downloads        %.0f%% hits", Metrics.getHitRate(Metrics.Cache.DOWNLOAD) * 100));
+		lines.add(String.format("Heap             %.0f of %.0f MB", (runtime.totalMemory() - runtime.freeMemory()) / MEGABYTE,
+				runtime.maxMemory() / MEGABYTE));
+		
+		this.lines = lines;
+		
+		FontMetrics metrics = getFontMetrics(getFont());
+		int width = 0;
+		
+		for(String line: lines)
+			width = Math.max(width, metrics.stringWidth(line));
+		
+		width += 2 * PADDING;
+		int height = lines.size() * metrics.getHeight() + 2 * PADDING;
+		
+		Rectangle area = getSlideArea();
+		setBounds(area.x + area.width - width - MARGIN, area.y + MARGIN, width, height);
+		repaint();
+	}
+	
+	/**
+	 * Gets the bounds of the slide area in the coordinates of the layered pane
+	 * @return The slide area bounds, the whole layered pane if there is no slide area
+	 */
+	private Rectangle getSlideArea() {
+		Container content = frame.getContentPane();
+		Component center = null;
+		
+		if(content.getLayout() instanceof BorderLayout)
+			center = ((BorderLayout) content.getLayout()).getLayoutComponent(BorderLayout.CENTER);
+		
+		if(center == null)
+			return new Rectangle(frame.getLayeredPane().getSize());
+		
+		return SwingUtilities.convertRectangle(center.getParent(), center.getBounds(), frame.getLayeredPane());
+	}
+}
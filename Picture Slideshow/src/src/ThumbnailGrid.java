@@ -0,0 +1,360 @@
+package src;
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import util.Slide;
+import util.SlideFile;
+import util.ThumbnailCache;
+
+/**
+ * A scrollable grid showing a thumbnail of every slide in the slide show.
+ *
+ * Only the cells inside the visible part of the grid are painted, and only their thumbnails are loaded,
+ * so the grid stays responsive for slide shows with thousands of slides. Thumbnails are loaded on a pool of
+ * background threads through the thumbnail cache; requests for cells scrolled out of view before their turn
+ * comes are dropped. A bounded number of decoded thumbnails is kept in memory.
+ *
+ * Dragging a thumbnail onto another cell moves its slide there; the target cell is outlined while dragging.
+ */
+public class ThumbnailGrid extends JComponent implements Scrollable {
+	
+	private static final long serialVersionUID = 3361253728396458714L;
+	
+	private static final int GAP = 8;
+	private static final int CELL = SlideFile.THUMBNAIL_SIZE + 2 * GAP;
+	private static final int MAX_LOADED = 512;
+	
+	private static final Color BACKGROUND = Color.BLACK;
+	private static final Color PLACEHOLDER = Color.DARK_GRAY;
+	private static final Color SELECTION = new Color(0x3D8EE6);
+	
+	/**
+	 * Receives the slides picked in the grid
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called on the event dispatch thread when a slide is clicked
+		 * @param index - The index of the clicked slide
+		 */
+		void selected(int index);
+		
+		/**
+		 * Called on the event dispatch thread when a slide is dragged onto another cell
+		 * @param from - The index of the dragged slide
+		 * @param to - The index of the cell it was dropped on
+		 */
+		void moved(int from, int to);
+	}
+	
+	private final List<Slide> slides;
+	private final Map<Slide, BufferedImage> loaded;
+	private final Set<Slide> pending;
+	private final ExecutorService executor;
+	
+	private int current;
+	private int dragged = -1, target = -1;
+	private volatile int firstVisible, lastVisible = -1;
+	
+	/**
+	 * Constructor
+	 * @param slides - The slides in the slide show
+	 * @param listener - The listener told which slide was clicked
+	 */
+	public ThumbnailGrid(List<Slide> slides, Listener listener) {
+		this.slides = slides;
+		this.pending = new HashSet<Slide>();
+		this.loaded = new LinkedHashMap<Slide, BufferedImage>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Slide, BufferedImage> eldest) {
+				return size() > MAX_LOADED;
+			}
+		};
+		
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Thumbnail Loader");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+		
+		setOpaque(true);
+		setBackground(BACKGROUND);
+		
+		MouseAdapter mouse = new MouseAdapter() {
+			
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int index = getIndexAt(e.getX(), e.getY());
+				
+				if(index >= 0)
+					listener.selected(index);
+			}
+			
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragged = SwingUtilities.isLeftMouseButton(e) ? getIndexAt(e.getX(), e.getY()) : -1;
+			}
+			
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if(dragged < 0)
+					return;
+				
+				int index = getIndexAt(e.getX(), e.getY());
+				
+				if(index != target) {
+					repaintCell(target);
+					target = index;
+					repaintCell(target);
+				}
+				
+				setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+				scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+			}
+			
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				int from = dragged, to = target;
+				
+				dragged = -1;
+				target = -1;
+				setCursor(null);
+				repaintCell(to);
+				
+				if(from >= 0 && to >= 0 && from != to)
+					listener.moved(from, to);
+			}
+		};
+		
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+	}
+	
+	/**
+	 * Marks the slide currently shown in the slide show
+	 * @param current - The index of the current slide
+	 */
+	public void setCurrent(int current) {
+		this.current = current;
+		repaint();
+	}
+	
+	/**
+	 * Updates the grid after slides were added or removed
+	 */
+	public void slidesChanged() {
+		revalidate();
+		repaint();
+	}
+	
+	/**
+	 * Forgets every loaded thumbnail, for when the slide show is replaced
+	 */
+	public void clear() {
+		loaded.clear();
+		pending.clear();
+		current = 0;
+		slidesChanged();
+	}
+	
+	/**
+	 * Gets the bounds of the cell of a slide within the grid
+	 * @param index - The index of the slide
+	 * @return The cell bounds
+	 */
+	public Rectangle getCellBounds(int index) {
+		int columns = getColumns();
+		return new Rectangle((index % columns) * CELL, (index / columns) * CELL, CELL, CELL);
+	}
+	
+	/**
+	 * Gets the slide under a point of the grid
+	 * @param x - The x coordinate of the point
+	 * @param y - The y coordinate of the point
+	 * @return The index of the slide, -1 if the point is not over a slide
+	 */
+	public int getIndexAt(int x, int y) {
+		int columns = getColumns();
+		int column = x / CELL;
+		
+		if(x < 0 || y < 0 || column >= columns)
+			return -1;
+		
+		int index = (y / CELL) * columns + column;
+		return index < slides.size() ? index : -1;
+	}
+	
+	@Override
+	public Dimension getPreferredSize() {
+		int rows = (slides.size() + getColumns() - 1) / getColumns();
+		return new Dimension(CELL, rows * CELL);
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		
+		if(clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		
+		int columns = getColumns();
+		int first = (clip.y / CELL) * columns;
+		int last = Math.min(slides.size() - 1, ((clip.y + clip.height - 1) / CELL + 1) * columns - 1);
+		
+		Rectangle visible = getVisibleRect();
+		firstVisible = (visible.y / CELL - 1) * columns;
+		lastVisible = ((visible.y + visible.height - 1) / CELL + 2) * columns - 1;
+		
+		for(int i = first; i <= last; i++)
+			paintCell(g, i);
+	}
+	
+	/**
+	 * Paints the cell of a slide, requesting its thumbnail if it is not loaded
+	 * @param g - The Graphics to paint with
+	 * @param index - The index of the slide
+	 */
+	private void paintCell(Graphics g, int index) {
+		Slide slide = slides.get(index);
+		Rectangle cell = getCellBounds(index);
+		BufferedImage thumbnail = loaded.get(slide);
+		
+		if(index == current) {
+			g.setColor(SELECTION);
+			g.fillRect(cell.x + GAP / 2, cell.y + GAP / 2, cell.width - GAP, cell.height - GAP);
+		}
+		
+		if(thumbnail == null) {
+			g.setColor(PLACEHOLDER);
+			g.fillRect(cell.x + GAP, cell.y + GAP, cell.width - 2 * GAP, cell.height - 2 * GAP);
+			request(slide, index);
+			paintTarget(g, index, cell);
+			return;
+		}
+		
+		int x = cell.x + (cell.width - thumbnail.getWidth()) / 2;
+		int y = cell.y + (cell.height - thumbnail.getHeight()) / 2;
+		g.drawImage(thumbnail, x, y, null);
+		paintTarget(g, index, cell);
+	}
+	
+	/**
+	 * Outlines the cell a slide is being dragged onto
+	 * @param g - The Graphics to paint with
+	 * @param index - The index of the cell
+	 * @param cell - The bounds of the cell
+	 */
+	private void paintTarget(Graphics g, int index, Rectangle cell) {
+		if(index != target || index == dragged)
+			return;
+		
+		g.setColor(SELECTION);
+		
+		for(int i = 0; i < GAP / 2; i++)
+			g.drawRect(cell.x + i, cell.y + i, cell.width - 2 * i - 1, cell.height - 2 * i - 1);
+	}
+	
+	/**
+	 * Repaints the cell of a slide
+	 * @param index - The index of the slide, ignored if negative
+	 */
+	private void repaintCell(int index) {
+		if(index >= 0)
+			repaint(getCellBounds(index));
+	}
+	
+	/**
+	 * Queues a thumbnail to be loaded in the background unless it already is
+	 * @param slide - The slide to load the thumbnail of
+	 * @param index - The index of the slide
+	 */
+	private void request(Slide slide, int index) {
+		if(!pending.add(slide))
+			return;
+		
+		executor.submit(() -> {
+			BufferedImage thumbnail = null;
+			
+			if(index >= firstVisible && index <= lastVisible)
+				thumbnail = ThumbnailCache.get(slide);
+			
+			BufferedImage result = thumbnail;
+			
+			SwingUtilities.invokeLater(() -> {
+				if(!pending.remove(slide))
+					return;
+				
+				if(result != null) {
+					loaded.put(slide, result);
+					
+					if(index < slides.size() && slides.get(index) == slide)
+						repaint(getCellBounds(index));
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Gets the number of columns which fit across the grid, which is as wide as its viewport
+	 * @return The number of columns, at least 1
+	 */
+	private int getColumns() {
+		int width = getParent() instanceof JViewport ? getParent().getWidth() : getWidth();
+		return Math.max(1, width / CELL);
+	}
+	
+	@Override
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+	
+	@Override
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return orientation == SwingConstants.VERTICAL ? CELL / 4 : GAP;
+	}
+	
+	@Override
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		if(orientation == SwingConstants.VERTICAL)
+			return Math.max(CELL, (visibleRect.height / CELL) * CELL);
+		return visibleRect.width;
+	}
+	
+	@Override
+	public boolean getScrollableTracksViewportWidth() {
+		return true;
+	}
+	
+	@Override
+	public boolean getScrollableTracksViewportHeight() {
+		return false;
+	}
+}
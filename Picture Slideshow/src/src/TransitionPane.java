@@ -0,0 +1,237 @@
+package src;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import util.ImageUtils;
+import util.Metrics;
+import util.Transition;
+
+/**
+ * A glass pane which plays slide transitions over the slide show.
+ *
+ * Frames are rendered into a back buffer the size of the slide area, which is kept and reused by later
+ * transitions of the same size, and are presented straight away so the time of each frame is known. A
+ * clock thread asks for frames at a fixed rate; if the event dispatch thread is still busy with the last
+ * frame the request is skipped rather than queued, and the transition progress always follows the wall
+ * clock, so a slow frame never slows the transition down. Frame times are recorded for every transition.
+ */
+public class TransitionPane extends JComponent {
+	
+	private static final long serialVersionUID = -2305815726461733480L;
+	
+	private static final double DROPPED = 1.5;
+	
+	private final ScheduledExecutorService clock;
+	
+	private BufferedImage buffer;
+	private Graphics2D bufferGraphics;
+	private Transition transition;
+	private Rectangle area;
+	private ScheduledFuture<?> ticks;
+	private volatile boolean tickQueued;
+	
+	private int frameRate;
+	private long start, duration, lastFrame;
+	private int frames, dropped;
+	private long frameTime, worstFrameTime;
+	
+	/**
+	 * Constructor
+	 * @param frameRate - The number of frames per second to render
+	 */
+	public TransitionPane(int frameRate) {
+		this.frameRate = Math.max(1, frameRate);
+		this.clock = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Transition Clock");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		setVisible(false);
+	}
+	
+	/**
+	 * Plays a transition over a component, finishing any transition still playing first.
+	 * Must be called on the event dispatch thread
+	 * @param transition - The transition to play
+	 * @param target - The component the transition covers
+	 * @param duration - The length of the transition in milliseconds
+	 */
+	public void start(Transition transition, JComponent target, long duration) {
+		finish();
+		
+		Rectangle bounds = SwingUtilities.convertRectangle(target.getParent(), target.getBounds(), this);
+		
+		if(duration <= 0 || bounds.isEmpty())
+			return;
+		
+		if(buffer == null || buffer.getWidth() != bounds.width || buffer.getHeight() != bounds.height) {
+			if(bufferGraphics != null)
+				bufferGraphics.dispose();
+			
+			buffer = ImageUtils.toCompatible(new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB), target.getGraphicsConfiguration());
+			bufferGraphics = buffer.createGraphics();
+		}
+		
+		this.transition = transition;
+		this.area = bounds;
+		this.duration = TimeUnit.MILLISECONDS.toNanos(duration);
+		this.start = System.nanoTime();
+		this.lastFrame = 0;
+		
+		setVisible(true);
+		tick();
+		
+		long period = TimeUnit.SECONDS.toNanos(1) / frameRate;
+		
+		ticks = clock.scheduleAtFixedRate(() -> {
+			if(tickQueued)
+				return;
+			
+			tickQueued = true;
+			SwingUtilities.invokeLater(this::tick);
+		}, period, period, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Ends the transition playing, if any, leaving the slide show showing the new slide.
+	 * Must be called on the event dispatch thread
+	 */
+	public void finish() {
+		if(ticks != null) {
+			ticks.cancel(false);
+			ticks = null;
+		}
+		
+		transition = null;
+		setVisible(false);
+	}
+	
+	/**
+	 * Checks whether a transition is playing
+	 * @return True if a transition is playing
+	 */
+	public boolean isRunning() {
+		return transition != null;
+	}
+	
+	/**
+	 * Sets the number of frames per second to render, from the next transition
+	 * @param frameRate - The target frame rate
+	 */
+	public void setFrameRate(int frameRate) {
+		this.frameRate = Math.max(1, frameRate);
+	}
+	
+	/**
+	 * Gets the number of frames per second rendered
+	 * @return The target frame rate
+	 */
+	public int getFrameRate() {
+		return frameRate;
+	}
+	
+	/**
+	 * Gets the number of frames presented since the statistics were reset
+	 * @return The number of frames
+	 */
+	public int getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * Gets the number of frames which came more than half a frame late
+	 * @return The number of dropped frames
+	 */
+	public int getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * Gets the mean time between presented frames
+	 * @return The mean frame time in milliseconds, 0 if no frames were timed
+	 */
+	public double getMeanFrameTime() {
+		return frames == 0 ? 0 : frameTime / 1e6 / frames;
+	}
+	
+	/**
+	 * Gets the longest time between presented frames
+	 * @return The worst frame time in milliseconds
+	 */
+	public double getWorstFrameTime() {
+		return worstFrameTime / 1e6;
+	}
+	
+	/**
+	 * Resets the frame statistics
+	 */
+	public void resetStats() {
+		frames = 0;
+		dropped = 0;
+		frameTime = 0;
+		worstFrameTime = 0;
+	}
+	
+	/**
+	 * Stops the transition clock
+	 */
+	public void shutdown() {
+		finish();
+		clock.shutdownNow();
+	}
+	
+	@Override
+	public boolean isOpaque() {
+		return transition != null;
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		if(transition != null)
+			g.drawImage(buffer, area.x, area.y, null);
+	}
+	
+	/**
+	 * Renders and presents the next frame on the event dispatch thread, finishing the transition once it
+	 * has run its length
+	 */
+	private void tick() {
+		tickQueued = false;
+		
+		if(transition == null)
+			return;
+		
+		long now = System.nanoTime();
+		double progress = (now - start) / (double) duration;
+		
+		transition.render(bufferGraphics, area.width, area.height, progress);
+		paintImmediately(area);
+		
+		long presented = System.nanoTime();
+		
+		if(lastFrame != 0) {
+			long elapsed = presented - lastFrame;
+			frames++;
+			frameTime += elapsed;
+			worstFrameTime = Math.max(worstFrameTime, elapsed);
+			Metrics.record(Metrics.Stage.FRAME, elapsed);
+			
+			if(elapsed > DROPPED * TimeUnit.SECONDS.toNanos(1) / frameRate)
+				dropped++;
+		}
+		lastFrame = presented;
+		
+		if(progress >= 1)
+			finish();
+	}
+}
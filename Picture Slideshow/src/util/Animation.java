@@ -0,0 +1,379 @@
+package util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.Timer;
+
+import org.w3c.dom.Node;
+
+/**
+ * Plays an animated GIF slide.
+ *
+ * Frames are decoded one at a time through an ImageReader on a background thread and composited onto a
+ * canvas the size of the GIF's logical screen, following each frame's offset and disposal method. Each
+ * composited frame is copied into one of a few images which are reused in turn, so memory use does not
+ * grow with the length of the animation. A Swing timer shows the next frame after the delay recorded
+ * for the current one. While the animation is paused the decoder fills the free images and then waits,
+ * so a hidden animation uses no CPU.
+ */
+public class Animation {
+	
+	private static final String STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+	private static final String IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+	
+	private static final int FRAMES = Math.max(2, Integer.getInteger("slideshow.animationFrames", 4));
+	private static final int MINIMUM_DELAY = 20;
+	private static final int DEFAULT_DELAY = 100;
+	private static final int LATE_DELAY = 10;
+	
+	private final Slide slide;
+	private final Runnable repaint;
+	private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<BufferedImage>(FRAMES);
+	private final BlockingQueue<Frame> ready = new ArrayBlockingQueue<Frame>(FRAMES);
+	private final Timer timer;
+	
+	private Thread decoder;
+	private Frame shown;
+	private volatile boolean animated, finished, disposed;
+	
+	/**
+	 * Constructor, the animation starts paused
+	 * @param slide - The slide, which should be a GIF
+	 * @param repaint - Called on the event dispatch thread whenever another frame is shown
+	 */
+	public Animation(Slide slide, Runnable repaint) {
+		this.slide = slide;
+		this.repaint = repaint;
+		
+		timer = new Timer(0, ae -> next());
+		timer.setRepeats(false);
+	}
+	
+	/**
+	 * Checks whether a slide is a GIF, and so may be animated, without reading its file
+	 * @param slide - The slide
+	 * @return True if the slide file has the GIF extension or the slide data starts with the GIF signature
+	 */
+	public static boolean isGif(Slide slide) {
+		if(slide == null)
+			return false;
+		
+		File file = slide.getFile();
+		
+		if(file != null)
+			return file.getName().toLowerCase().endsWith(".gif");
+		
+		ByteBuffer data = slide.getData();
+		
+		return data != null && data.remaining() >= 4 && data.get(data.position()) == 'G' && data.get(data.position() + 1) == 'I'
+				&& data.get(data.position() + 2) == 'F' && data.get(data.position() + 3) == '8';
+	}
+	
+	/**
+	 * Starts or resumes showing frames, starting the decoder the first time
+	 */
+	public void play() {
+		if(disposed)
+			return;
+		
+		if(decoder == null) {
+			decoder = new Thread(this::decode, "Animation Decoder");
+			decoder.setDaemon(true);
+			decoder.start();
+		}
+		
+		if(!timer.isRunning())
+			timer.restart();
+	}
+	
+	/**
+	 * Stops showing frames. The decoder stops once every free image holds a frame
+	 */
+	public void pause() {
+		timer.stop();
+	}
+	
+	/**
+	 * Stops the animation for good and lets go of the decoder
+	 */
+	public void dispose() {
+		disposed = true;
+		timer.stop();
+		
+		if(decoder != null)
+			decoder.interrupt();
+		
+		free.clear();
+		ready.clear();
+		shown = null;
+	}
+	
+	/**
+	 * Gets the frame being shown. Used on the event dispatch thread
+	 * @return The composited frame, null if the slide has a single frame or no frame has been shown yet
+	 */
+	public BufferedImage getFrame() {
+		return animated && shown != null ? shown.image : null;
+	}
+	
+	/**
+	 * Shows the next decoded frame and waits for its delay, or checks again shortly if the decoder is behind
+	 */
+	private void next() {
+		Frame frame = ready.poll();
+		
+		if(frame == null) {
+			if(!finished) {
+				timer.setInitialDelay(LATE_DELAY);
+				timer.restart();
+			}
+			return;
+		}
+		
+		if(shown != null)
+			free.offer(shown.image);
+		
+		shown = frame;
+		
+		if(animated)
+			repaint.run();
+		
+		timer.setInitialDelay(frame.delay);
+		timer.restart();
+	}
+	
+	/**
+	 * Decodes and composites the frames in a loop on the decoder thread until the loop count runs out or
+	 * the animation is disposed
+	 */
+	private void decode() {
+		ImageReader reader = null;
+		
+		try (ImageInputStream iis = open()) {
+			Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+			
+			if(readers == null || !readers.hasNext())
+				return;
+			
+			reader = readers.next();
+			reader.setInput(iis, false, false);
+			
+			BufferedImage canvas = createCanvas(reader);
+			Graphics2D g2 = canvas.createGraphics();
+			int created = 0, passes = -1;
+			
+			for(int pass = 0; !disposed && (passes <= 0 || pass < passes); pass++) {
+				g2.setComposite(AlphaComposite.Clear);
+				g2.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+				
+				for(int i = 0; !disposed; i++) {
+					BufferedImage image;
+					IIOMetadataNode metadata;
+					
+					try {
+						image = reader.read(i);
+						metadata = getTree(reader.getImageMetadata(i), IMAGE_METADATA);
+					} catch (IndexOutOfBoundsException e) {
+						break;
+					}
+					
+					if(i == 0 && passes < 0)
+						passes = getPasses(metadata);
+					if(i == 1)
+						animated = true;
+					
+					IIOMetadataNode descriptor = getChild(metadata, "ImageDescriptor");
+					IIOMetadataNode control = getChild(metadata, "GraphicControlExtension");
+					int x = getInt(descriptor, "imageLeftPosition", 0), y = getInt(descriptor, "imageTopPosition", 0);
+					String disposal = control == null ? "none" : control.getAttribute("disposalMethod");
+					int delay = getInt(control, "delayTime", 0) * 10;
+					
+					BufferedImage previous = null;
+					
+					if(disposal.equals("restoreToPrevious"))
+						previous = copy(canvas, x, y, image.getWidth(), image.getHeight());
+					
+					g2.setComposite(AlphaComposite.SrcOver);
+					g2.drawImage(image, x, y, null);
+					
+					BufferedImage target = free.poll();
+					
+					if(target == null && created < FRAMES) {
+						target = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+						created++;
+					} else if(target == null) {
+						target = free.take();
+					}
+					
+					canvas.copyData(target.getRaster());
+					ready.put(new Frame(target, delay < MINIMUM_DELAY ? DEFAULT_DELAY : delay));
+					
+					if(disposal.equals("restoreToBackgroundColor")) {
+						g2.setComposite(AlphaComposite.Clear);
+						g2.fillRect(x, y, image.getWidth(), image.getHeight());
+					} else if(previous != null) {
+						g2.setComposite(AlphaComposite.Src);
+						g2.drawImage(previous, x, y, null);
+					}
+				}
+				
+				if(!animated)
+					break;
+			}
+			g2.dispose();
+		} catch (InterruptedException e) {
+			// Disposed
+		} catch (IOException | RuntimeException e) {
+			if(!disposed)
+				e.printStackTrace();
+		} finally {
+			finished = true;
+			
+			if(reader != null)
+				reader.dispose();
+		}
+	}
+	
+	/**
+	 * Opens the encoded image of the slide
+	 * @return The stream, null if the slide has no encoded image
+	 * @throws IOException If the slide file could not be opened
+	 */
+	private ImageInputStream open() throws IOException {
+		if(slide.getFile() != null)
+			return ImageIO.createImageInputStream(slide.getFile());
+		
+		ByteBuffer data = slide.getData();
+		return data == null ? null : new ByteBufferImageInputStream(data);
+	}
+	
+	/**
+	 * Creates the canvas frames are composited on, the size of the logical screen of the GIF
+	 * @param reader - The reader of the GIF
+	 * @return The transparent canvas
+	 * @throws IOException If the GIF header could not be read
+	 */
+	private static BufferedImage createCanvas(ImageReader reader) throws IOException {
+		IIOMetadataNode screen = getChild(getTree(reader.getStreamMetadata(), STREAM_METADATA), "LogicalScreenDescriptor");
+		int width = getInt(screen, "logicalScreenWidth", 0), height = getInt(screen, "logicalScreenHeight", 0);
+		
+		if(width <= 0 || height <= 0) {
+			width = reader.getWidth(0);
+			height = reader.getHeight(0);
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	/**
+	 * Reads how many times the animation plays from the Netscape looping extension of its first frame
+	 * @param metadata - The metadata of the first frame
+	 * @return The number of passes, 0 to play forever
+	 */
+	private static int getPasses(IIOMetadataNode metadata) {
+		IIOMetadataNode extensions = getChild(metadata, "ApplicationExtensions");
+		
+		for(Node node = extensions == null ? null : extensions.getFirstChild(); node != null; node = node.getNextSibling()) {
+			IIOMetadataNode extension = (IIOMetadataNode) node;
+			Object data = extension.getUserObject();
+			
+			if("NETSCAPE".equals(extension.getAttribute("applicationID")) && data instanceof byte[] && ((byte[]) data).length >= 3) {
+				byte[] bytes = (byte[]) data;
+				int repeats = (bytes[1] & 0xFF) | (bytes[2] & 0xFF) << 8;
+				return repeats == 0 ? 0 : repeats + 1;
+			}
+		}
+		return 1;
+	}
+	
+	/**
+	 * Copies a region of an image, clipped to the image
+	 * @param image - The image
+	 * @param x - The left edge of the region
+	 * @param y - The top edge of the region
+	 * @param width - The width of the region
+	 * @param height - The height of the region
+	 * @return The copy, positioned at the region's origin when drawn back at x and y
+	 */
+	private static BufferedImage copy(BufferedImage image, int x, int y, int width, int height) {
+		BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = copy.createGraphics();
+		g2.setComposite(AlphaComposite.Src);
+		g2.drawImage(image, -x, -y, null);
+		g2.dispose();
+		return copy;
+	}
+	
+	/**
+	 * Gets a metadata tree in a native format
+	 * @param metadata - The metadata, may be null
+	 * @param format - The native format name
+	 * @return The root of the tree, null if there is no metadata
+	 */
+	private static IIOMetadataNode getTree(IIOMetadata metadata, String format) {
+		return metadata == null ? null : (IIOMetadataNode) metadata.getAsTree(format);
+	}
+	
+	/**
+	 * Gets the first child of a metadata node with a name
+	 * @param node - The node, may be null
+	 * @param name - The name of the child
+	 * @return The child, null if there is none
+	 */
+	private static IIOMetadataNode getChild(IIOMetadataNode node, String name) {
+		for(Node child = node == null ? null : node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if(child.getNodeName().equals(name))
+				return (IIOMetadataNode) child;
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets a numeric attribute of a metadata node
+	 * @param node - The node, may be null
+	 * @param name - The name of the attribute
+	 * @param value - The value if the node or attribute is missing or not a number
+	 * @return The value of the attribute
+	 */
+	private static int getInt(IIOMetadataNode node, String name, int value) {
+		if(node == null)
+			return value;
+		
+		try {
+			return Integer.parseInt(node.getAttribute(name));
+		} catch (NumberFormatException e) {
+			return value;
+		}
+	}
+	
+	/**
+	 * A composited frame and how long to show it
+	 */
+	private static class Frame {
+		
+		private final BufferedImage image;
+		private final int delay;
+		
+		/**
+		 * Constructor
+		 * @param image - The composited frame
+		 * @param delay - How long to show the frame in milliseconds
+		 */
+		private Frame(BufferedImage image, int delay) {
+			this.image = image;
+			this.delay = delay;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An ImageInputStream reading directly from a ByteBuffer.
+ *
+ * ImageIO would otherwise copy stream input into a cache before decoding it. Reading the buffer in place
+ * lets images be decoded straight out of heap arrays or memory mapped file regions.
+ */
+class ByteBufferImageInputStream extends ImageInputStreamImpl {
+	
+	private final ByteBuffer buffer;
+	
+	/**
+	 * Constructor
+	 * @param buffer - The buffer to read, from its position to its limit
+	 */
+	ByteBufferImageInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+	}
+	
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		
+		if(streamPos >= buffer.limit())
+			return -1;
+		
+		return buffer.get((int) streamPos++) & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		
+		if(len == 0)
+			return 0;
+		
+		int remaining = buffer.limit() - (int) Math.min(streamPos, buffer.limit());
+		
+		if(remaining <= 0)
+			return -1;
+		
+		len = Math.min(len, remaining);
+		
+		ByteBuffer view = buffer.duplicate();
+		view.position((int) streamPos);
+		view.get(b, off, len);
+		
+		streamPos += len;
+		return len;
+	}
+	
+	@Override
+	public long length() {
+		return buffer.limit();
+	}
+}
@@ -0,0 +1,325 @@
+package util;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Renders a slide show to a sequence of image files or to a Motion-JPEG video without a display.
+ *
+ * Each slide is decoded subsampled to the target resolution, scaled with the high quality filter,
+ * centered on a black frame of exactly the target size and encoded, on a pool of worker threads. Frames
+ * are written in slide order by the calling thread. At most a fixed number of frames is in flight between
+ * decoding and writing, so memory use does not grow with the length of the slide show.
+ *
+ * In a video every slide is repeated for as many frames as its playback duration lasts.
+ */
+public class Exporter {
+	
+	/**
+	 * The output formats
+	 */
+	public enum Format {
+		
+		/**
+		 * A folder of numbered PNG files
+		 */
+		PNG,
+		
+		/**
+		 * A folder of numbered JPEG files
+		 */
+		JPG,
+		
+		/**
+		 * A Motion-JPEG AVI video
+		 */
+		AVI
+	}
+	
+	/**
+	 * Receives progress while a slide show is exported
+	 */
+	public interface Progress {
+		
+		/**
+		 * Called after each slide has been written
+		 * @param done - The number of slides written so far
+		 * @param total - The number of slides being exported
+		 */
+		void exported(int done, int total);
+	}
+	
+	private final int width, height;
+	private final Format format;
+	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int inFlight = 2 * threads;
+	private int frameRate = 1;
+	private float quality = 0.9f;
+	private long defaultDuration = Playback.DEFAULT_DURATION;
+	
+	/**
+	 * Constructor
+	 * @param width - The width of the exported frames
+	 * @param height - The height of the exported frames
+	 * @param format - The output format
+	 */
+	public Exporter(int width, int height, Format format) {
+		this.width = width;
+		this.height = height;
+		this.format = format;
+	}
+	
+	/**
+	 * Loads the slides to export from a slide show file or from the images in a folder, in name order
+	 * @param input - The slide show file or folder
+	 * @return The slides
+	 * @throws IOException If the slide show could not be read
+	 */
+	public static List<Slide> load(File input) throws IOException {
+		if(!input.isDirectory())
+			return SlideFile.read(input);
+		
+		File[] files = input.listFiles(IO::isImage);
+		
+		if(files == null)
+			throw new IOException("Could not list " + input);
+		
+		Arrays.sort(files);
+		
+		List<Slide> slides = new ArrayList<Slide>(files.length);
+		
+		for(File file: files)
+			slides.add(new Slide(file));
+		return slides;
+	}
+	
+	/**
+	 * Exports the slides
+	 * @param slides - The slides to export
+	 * @param output - The folder for an image sequence, or the video file
+	 * @param progress - Receives progress after each slide, may be null
+	 * @return The number of frames written
+	 * @throws IOException If a slide could not be rendered or the output could not be written
+	 */
+	public int export(List<Slide> slides, File output, Progress progress) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Slide Exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+		MjpegAviWriter video = null;
+		int written = 0, frames = 0;
+		
+		try {
+			if(format == Format.AVI)
+				video = new MjpegAviWriter(output, width, height, frameRate);
+			else
+				Files.createDirectories(output.toPath());
+			
+			Iterator<Slide> it = slides.iterator();
+			
+			while(it.hasNext() || !pending.isEmpty()) {
+				while(it.hasNext() && pending.size() < inFlight) {
+					Slide slide = it.next();
+					pending.add(executor.submit(() -> render(slide)));
+				}
+				
+				ByteBuffer frame = await(pending.poll());
+				Slide slide = slides.get(written);
+				
+				if(video != null) {
+					int count = getFrameCount(slide);
+					video.write(frame, count);
+					frames += count;
+				} else {
+					String name = String.format(Locale.ROOT, "slide_%05d.%s", written + 1, format.name().toLowerCase(Locale.ROOT));
+					Files.write(new File(output, name).toPath(), toArray(frame));
+					frames++;
+				}
+				
+				written++;
+				
+				if(progress != null)
+					progress.exported(written, slides.size());
+			}
+		} finally {
+			for(Future<ByteBuffer> future: pending)
+				future.cancel(true);
+			
+			executor.shutdownNow();
+			
+			if(video != null)
+				video.close();
+		}
+		
+		return frames;
+	}
+	
+	/**
+	 * Sets the number of worker threads rendering frames
+	 * @param threads - The number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	/**
+	 * Sets the maximum number of frames rendered ahead of the writer
+	 * @param inFlight - The maximum number of frames in flight
+	 */
+	public void setInFlight(int inFlight) {
+		this.inFlight = Math.max(1, inFlight);
+	}
+	
+	/**
+	 * Sets the frame rate of exported videos
+	 * @param frameRate - The number of frames per second
+	 */
+	public void setFrameRate(int frameRate) {
+		this.frameRate = Math.max(1, frameRate);
+	}
+	
+	/**
+	 * Sets the JPEG compression quality
+	 * @param quality - The quality, from 0 to 1
+	 */
+	public void setQuality(float quality) {
+		this.quality = Math.max(0, Math.min(1, quality));
+	}
+	
+	/**
+	 * Sets how long slides without their own duration are shown in exported videos
+	 * @param duration - The default duration in milliseconds
+	 */
+	public void setDefaultDuration(long duration) {
+		this.defaultDuration = Math.max(1, duration);
+	}
+	
+	/**
+	 * Decodes, scales, frames and encodes a slide on a worker thread
+	 * @param slide - The slide to render
+	 * @return A buffer holding the encoded frame
+	 * @throws IOException If the slide could not be decoded or the frame could not be encoded
+	 */
+	private ByteBuffer render(Slide slide) throws IOException {
+		BufferedImage image;
+		int orientation = slide.getOrientation();
+		boolean transposed = ImageUtils.isTransposed(orientation);
+		int maxWidth = transposed ? height : width, maxHeight = transposed ? width : height;
+		
+		if(slide.getFile() != null)
+			image = ImageUtils.orient(IO.load(slide.getFile(), maxWidth, maxHeight), orientation);
+		else if(slide.getData() != null)
+			image = ImageUtils.orient(IO.load(slide.getData(), maxWidth, maxHeight), orientation);
+		else
+			image = slide.getImage();
+		
+		if(image == null)
+			throw new IOException("Could not decode slide image");
+		
+		BufferedImage scaled = ImageUtils.resize(image, width, height, ImageUtils.Quality.HIGH);
+		BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = frame.createGraphics();
+		g2.drawImage(scaled, (width - scaled.getWidth()) / 2, (height - scaled.getHeight()) / 2, null);
+		g2.dispose();
+		
+		return encode(frame);
+	}
+	
+	/**
+	 * Encodes a frame in the output format
+	 * @param frame - The frame to encode
+	 * @return A buffer holding the encoded frame
+	 * @throws IOException If the frame could not be encoded
+	 */
+	private ByteBuffer encode(BufferedImage frame) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		if(format == Format.PNG) {
+			ImageIO.write(frame, "png", out);
+			return ByteBuffer.wrap(out.toByteArray());
+		}
+		
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+		
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(frame, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		
+		return ByteBuffer.wrap(out.toByteArray());
+	}
+	
+	/**
+	 * Gets the number of video frames a slide is shown for
+	 * @param slide - The slide
+	 * @return The number of frames, at least 1
+	 */
+	private int getFrameCount(Slide slide) {
+		long duration = slide.getDuration() > 0 ? slide.getDuration() : defaultDuration;
+		return (int) Math.max(1, Math.round(duration * frameRate / 1000.0));
+	}
+	
+	/**
+	 * Waits for a frame to be rendered
+	 * @param future - The frame being rendered
+	 * @return The encoded frame
+	 * @throws IOException If the frame could not be rendered or the wait was interrupted
+	 */
+	private static ByteBuffer await(Future<ByteBuffer> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not render slide", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export interrupted", e);
+		}
+	}
+	
+	/**
+	 * Copies the contents of a buffer into an array
+	 * @param buffer - The buffer to copy
+	 * @return The bytes from the buffer position to its limit
+	 */
+	private static byte[] toArray(ByteBuffer buffer) {
+		if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length)
+			return buffer.array();
+		
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,315 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Keeps a slide show in step with the images in a folder.
+ *
+ * The folder is watched for files being created, changed and deleted. Changes are collected until the
+ * folder has been quiet for the debounce time, so a file being copied in is only read once it is complete.
+ * Each changed file is then checked on a background thread: files whose size and modification time did
+ * not change are ignored, and the rest become new slides, replacements for the slides of changed files, or
+ * removals. Replacements for slides which were decoded are decoded in the background too, so a changed
+ * image on screen is swapped without decoding on the event dispatch thread. Changes are handed to the
+ * listener on the event dispatch thread in file name order, starting with every image already in the folder.
+ * The headers of the changed images are read in parallel through the metadata index first, so the first
+ * scan of a large folder is not held up by one file at a time.
+ */
+public class FolderWatcher {
+	
+	/**
+	 * Receives the changes to the folder on the event dispatch thread
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called when an image was added to the folder
+		 * @param slide - The slide of the new image
+		 */
+		void added(Slide slide);
+		
+		/**
+		 * Called when an image in the folder changed
+		 * @param previous - The slide of the image before it changed
+		 * @param slide - The slide of the changed image
+		 */
+		void replaced(Slide previous, Slide slide);
+		
+		/**
+		 * Called when an image was removed from the folder or can no longer be read
+		 * @param previous - The slide of the removed image
+		 */
+		void removed(Slide previous);
+	}
+	
+	private static final long DEBOUNCE = Long.getLong("slideshow.watchDebounce", 500);
+	
+	private final Path folder;
+	private final Listener listener;
+	private final ScheduledExecutorService executor;
+	private final Map<Path, Entry> entries;
+	private final TreeSet<Path> changed;
+	
+	private WatchService service;
+	private ScheduledFuture<?> flush;
+	private boolean rescan;
+	private volatile boolean running;
+	
+	/**
+	 * Constructor
+	 * @param folder - The folder to watch
+	 * @param listener - The listener receiving the changes
+	 */
+	public FolderWatcher(File folder, Listener listener) {
+		this.folder = folder.toPath().toAbsolutePath();
+		this.listener = listener;
+		this.entries = new HashMap<Path, Entry>();
+		this.changed = new TreeSet<Path>();
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Folder Sync");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Starts watching the folder, delivering every image already in it first
+	 * @throws IOException If the folder cannot be watched
+	 */
+	public void start() throws IOException {
+		service = folder.getFileSystem().newWatchService();
+		folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		running = true;
+		
+		synchronized(this) {
+			rescan = true;
+		}
+		executor.submit(this::sync);
+		
+		Thread thread = new Thread(this::watch, "Folder Watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops watching the folder; changes which have not been delivered yet are discarded
+	 */
+	public void stop() {
+		running = false;
+		executor.shutdownNow();
+		
+		try {
+			if(service != null)
+				service.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Checks whether the folder is being watched
+	 * @return True until the watcher is stopped
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * Gets the watched folder
+	 * @return The folder
+	 */
+	public File getFolder() {
+		return folder.toFile();
+	}
+	
+	/**
+	 * Collects the changes reported by the watch service and restarts the debounce timer after each batch.
+	 * If the folder itself goes away, every slide is checked once more so they are all removed
+	 */
+	private void watch() {
+		try {
+			while(running) {
+				WatchKey key = service.take();
+				
+				synchronized(this) {
+					for(WatchEvent<?> event: key.pollEvents()) {
+						if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+							rescan = true;
+						else
+							changed.add(folder.resolve((Path) event.context()));
+					}
+					
+					if(flush != null)
+						flush.cancel(false);
+					
+					flush = executor.schedule(this::sync, DEBOUNCE, TimeUnit.MILLISECONDS);
+				}
+				
+				if(!key.reset()) {
+					synchronized(this) {
+						rescan = true;
+						executor.submit(this::sync);
+					}
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Stopped
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Checks every changed file and delivers the resulting changes, on the background thread
+	 */
+	private void sync() {
+		List<Path> paths;
+		
+		synchronized(this) {
+			if(rescan) {
+				rescan = false;
+				changed.addAll(entries.keySet());
+				changed.addAll(list());
+			}
+			paths = new ArrayList<Path>(changed);
+			changed.clear();
+		}
+		
+		List<File> files = new ArrayList<File>();
+		
+		for(Path path: paths) {
+			if(IO.isImage(path.toFile()))
+				files.add(path.toFile());
+		}
+		MetadataIndex.scan(files);
+		
+		for(Path path: paths) {
+			if(!running)
+				return;
+			
+			check(path);
+		}
+		MetadataIndex.save();
+	}
+	
+	/**
+	 * Checks a single file against what was last delivered for it
+	 * @param path - The changed file
+	 */
+	private void check(Path path) {
+		Entry previous = entries.get(path);
+		Entry entry = read(path, previous);
+		
+		if(entry == previous)
+			return;
+		
+		if(entry == null) {
+			entries.remove(path);
+			deliver(() -> listener.removed(previous.slide));
+			return;
+		}
+		
+		entries.put(path, entry);
+		
+		if(previous == null) {
+			deliver(() -> listener.added(entry.slide));
+		} else {
+			if(previous.slide.isLoaded())
+				entry.slide.getImage();
+			
+			deliver(() -> listener.replaced(previous.slide, entry.slide));
+		}
+	}
+	
+	/**
+	 * Reads the state of a file
+	 * @param path - The file to read
+	 * @param previous - The state last delivered for the file, null if none was
+	 * @return The previous state if the file did not change, null if it is not a readable image, otherwise the new state
+	 */
+	private Entry read(Path path, Entry previous) {
+		File file = path.toFile();
+		
+		if(!IO.isImage(file))
+			return null;
+		
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			long modified = attributes.lastModifiedTime().toMillis();
+			
+			if(previous != null && previous.modified == modified && previous.length == attributes.size())
+				return previous;
+			
+			Metadata metadata = MetadataIndex.get(file);
+			return metadata == null ? null : new Entry(new Slide(file, metadata), modified, attributes.size());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Lists the files in the folder
+	 * @return The paths of the files in the folder
+	 */
+	private List<Path> list() {
+		List<Path> paths = new ArrayList<Path>();
+		
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for(Path path: stream)
+				paths.add(path);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return paths;
+	}
+	
+	/**
+	 * Hands a change to the listener on the event dispatch thread unless the watcher has been stopped
+	 * @param change - The change to deliver
+	 */
+	private void deliver(Runnable change) {
+		SwingUtilities.invokeLater(() -> {
+			if(running)
+				change.run();
+		});
+	}
+	
+	/**
+	 * The state of a file when its slide was delivered
+	 */
+	private static class Entry {
+		
+		private final Slide slide;
+		private final long modified, length;
+		
+		private Entry(Slide slide, long modified, long length) {
+			this.slide = slide;
+			this.modified = modified;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A global cache of scaled frames shared by every panel in the slide show.
+ *
+ * Each owner holds at most one frame, keyed by the target dimensions it was scaled for. Asking for
+ * different dimensions (the container was resized) or invalidating the owner (its image changed) drops
+ * the frame. The total size of all frames is kept within a memory budget by evicting the least recently
+ * used frames first.
+ *
+ * The pixels of each frame are kept in a direct buffer outside the Java heap, so the frames kept ready
+ * do not count against the heap limit. A frame is copied back into a BufferedImage when it is asked for,
+ * and only the few frames asked for last keep that copy, which are the frames on screen. Frames whose
+ * pixels cannot be stored that way, or which do not fit in the direct memory limit, stay on the heap.
+ * The direct memory limit defaults to the heap limit and is raised with -XX:MaxDirectMemorySize.
+ */
+public final class FrameCache {
+	
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final long DEFAULT_BUDGET = Long.getLong("slideshow.frameCache", 64) * MEGABYTE;
+	private static final boolean OFF_HEAP = Boolean.parseBoolean(System.getProperty("slideshow.offHeapFrames", "true"));
+	private static final int HEAP_FRAMES = 2;
+	
+	private static final LinkedHashMap<Object, Frame> frames = new LinkedHashMap<Object, Frame>(16, 0.75f, true);
+	private static final Deque<Frame> materialized = new ArrayDeque<Frame>();
+	
+	private static long budget = DEFAULT_BUDGET;
+	private static long size, heapSize;
+	private static long hits, misses;
+	
+	/**
+	 * Private Constructor
+	 */
+	private FrameCache() {}
+	
+	/**
+	 * Gets the frame cached for the owner at the given target dimensions
+	 * @param owner - The object the frame belongs to
+	 * @param width - The target width the frame was scaled for
+	 * @param height - The target height the frame was scaled for
+	 * @return The cached frame, null if there is no frame for these dimensions
+	 */
+	public static synchronized BufferedImage get(Object owner, int width, int height) {
+		Frame frame = frames.get(owner);
+		
+		if(frame != null && frame.width == width && frame.height == height) {
+			hits++;
+			return materialize(frame);
+		}
+		
+		if(frame != null)
+			remove(owner);
+		
+		misses++;
+		return null;
+	}
+	
+	/**
+	 * Checks whether a frame is cached for the owner at the given target dimensions without counting a lookup
+	 * @param owner - The object the frame belongs to
+	 * @param width - The target width the frame was scaled for
+	 * @param height - The target height the frame was scaled for
+	 * @return True if a frame is cached for these dimensions
+	 */
+	public static synchronized boolean contains(Object owner, int width, int height) {
+		Frame frame = frames.get(owner);
+		return frame != null && frame.width == width && frame.height == height;
+	}
+	
+	/**
+	 * Caches a frame for the owner, replacing any frame it held before. The pixels are copied, so the
+	 * caller's image is not held by the cache unless the frame stays on the heap
+	 * @param owner - The object the frame belongs to
+	 * @param width - The target width the frame was scaled for
+	 * @param height - The target height the frame was scaled for
+	 * @param image - The scaled frame
+	 */
+	public static synchronized void put(Object owner, int width, int height, BufferedImage image) {
+		remove(owner);
+		
+		Frame frame = new Frame(width, height, image);
+		frames.put(owner, frame);
+		size += frame.bytes;
+		
+		if(frame.pixels == null)
+			heapSize += frame.bytes;
+		
+		trim();
+	}
+	
+	/**
+	 * Drops the frame held by the owner
+	 * @param owner - The object whose frame is no longer valid
+	 */
+	public static synchronized void invalidate(Object owner) {
+		remove(owner);
+	}
+	
+	/**
+	 * Drops every cached frame
+	 */
+	public static synchronized void clear() {
+		frames.clear();
+		materialized.clear();
+		size = 0;
+		heapSize = 0;
+	}
+	
+	/**
+	 * Sets the memory budget, evicting frames if the cache is now over budget
+	 * @param bytes - The maximum number of bytes all cached frames may use
+	 */
+	public static synchronized void setBudget(long bytes) {
+		budget = bytes;
+		trim();
+	}
+	
+	/**
+	 * Gets the memory budget
+	 * @return The maximum number of bytes all cached frames may use
+	 */
+	public static synchronized long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Gets the memory currently used by cached frames, on or off the heap
+	 * @return The number of bytes used by all cached frames
+	 */
+	public static synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Gets the heap memory currently used by the cache: the copies of the frames on screen and any frames
+	 * which could not be stored off the heap
+	 * @return The number of heap bytes held by the cache
+	 */
+	public static synchronized long getHeapSize() {
+		return heapSize;
+	}
+	
+	/**
+	 * Gets the number of lookups which found a frame
+	 * @return The cache hit count
+	 */
+	public static synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Gets the number of lookups which did not find a frame
+	 * @return The cache miss count
+	 */
+	public static synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Resets the hit and miss counters
+	 */
+	public static synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Gets a frame as an image, copying its pixels back from off the heap unless it was asked for recently.
+	 * Only the frames asked for last keep their copy
+	 * @param frame - The frame
+	 * @return The frame image
+	 */
+	private static BufferedImage materialize(Frame frame) {
+		if(frame.pixels == null)
+			return frame.image;
+		
+		if(frame.image != null) {
+			materialized.remove(frame);
+			materialized.addLast(frame);
+			return frame.image;
+		}
+		
+		frame.image = frame.load();
+		materialized.addLast(frame);
+		heapSize += frame.bytes;
+		
+		while(materialized.size() > HEAP_FRAMES)
+			drop(materialized.removeFirst());
+		
+		return frame.image;
+	}
+	
+	/**
+	 * Lets go of the heap copy of a frame stored off the heap
+	 * @param frame - The frame
+	 */
+	private static void drop(Frame frame) {
+		if(frame.pixels != null && frame.image != null) {
+			frame.image = null;
+			heapSize -= frame.bytes;
+		}
+	}
+	
+	/**
+	 * Removes the frame held by the owner and releases its memory from the total
+	 * @param owner - The object whose frame to remove
+	 */
+	private static void remove(Object owner) {
+		Frame frame = frames.remove(owner);
+		
+		if(frame != null)
+			forget(frame);
+	}
+	
+	/**
+	 * Releases the memory of a frame which left the cache from the totals
+	 * @param frame - The frame
+	 */
+	private static void forget(Frame frame) {
+		size -= frame.bytes;
+		
+		if(frame.pixels == null) {
+			heapSize -= frame.bytes;
+		} else if(materialized.remove(frame)) {
+			drop(frame);
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used frames until the cache is within budget.
+	 * The most recently used frame is always kept so an oversized frame is not evicted as soon as it is added
+	 */
+	private static void trim() {
+		Iterator<Map.Entry<Object, Frame>> it = frames.entrySet().iterator();
+		
+		while(size > budget && frames.size() > 1 && it.hasNext()) {
+			forget(it.next().getValue());
+			it.remove();
+		}
+	}
+	
+	/**
+	 * A scaled frame and the dimensions it was scaled for
+	 */
+	private static class Frame {
+		
+		private final int width, height;
+		private final ColorModel model;
+		private final SampleModel layout;
+		private final ByteBuffer pixels;
+		private final long bytes;
+		private BufferedImage image;
+		
+		/**
+		 * Constructor, copying the pixels of the image off the heap if possible
+		 * @param width - The target width the frame was scaled for
+		 * @param height - The target height the frame was scaled for
+		 * @param image - The scaled frame
+		 */
+		private Frame(int width, int height, BufferedImage image) {
+			this.width = width;
+			this.height = height;
+			this.model = image.getColorModel();
+			this.layout = image.getSampleModel();
+			this.pixels = store(image.getRaster());
+			this.bytes = pixels != null ? pixels.capacity() : ImageUtils.getBytes(image);
+			this.image = pixels == null ? image : null;
+		}
+		
+		/**
+		 * Copies the pixels of a raster into a direct buffer
+		 * @param raster - The raster of the frame
+		 * @return The buffer, null if the frame has to stay on the heap
+		 */
+		private ByteBuffer store(Raster raster) {
+			int type = raster.getTransferType();
+			long length = (long) raster.getWidth() * raster.getHeight() * raster.getNumDataElements() * DataBuffer.getDataTypeSize(type) / 8;
+			
+			if(!OFF_HEAP || length > Integer.MAX_VALUE || !(type == DataBuffer.TYPE_INT || type == DataBuffer.TYPE_USHORT || type == DataBuffer.TYPE_BYTE))
+				return null;
+			
+			ByteBuffer pixels;
+			
+			try {
+				pixels = ByteBuffer.allocateDirect((int) length).order(ByteOrder.nativeOrder());
+			} catch (OutOfMemoryError e) {
+				return null;
+			}
+			
+			Buffer target = view(pixels, type);
+			Object row = null;
+			
+			for(int y = 0; y < raster.getHeight(); y++) {
+				row = raster.getDataElements(0, y, raster.getWidth(), 1, row);
+				
+				if(target instanceof IntBuffer)
+					((IntBuffer) target).put((int[]) row);
+				else if(target instanceof ShortBuffer)
+					((ShortBuffer) target).put((short[]) row);
+				else
+					((ByteBuffer) target).put((byte[]) row);
+			}
+			return pixels;
+		}
+		
+		/**
+		 * Copies the pixels back from the direct buffer into a new image laid out like the original
+		 * @return The frame image
+		 */
+		private BufferedImage load() {
+			WritableRaster raster = Raster.createWritableRaster(layout, null);
+			Buffer source = view(pixels, raster.getTransferType());
+			int length = raster.getWidth() * raster.getNumDataElements();
+			Object row = source instanceof IntBuffer ? new int[length] : source instanceof ShortBuffer ? new short[length] : new byte[length];
+			
+			for(int y = 0; y < raster.getHeight(); y++) {
+				if(source instanceof IntBuffer)
+					((IntBuffer) source).get((int[]) row);
+				else if(source instanceof ShortBuffer)
+					((ShortBuffer) source).get((short[]) row);
+				else
+					((ByteBuffer) source).get((byte[]) row);
+				
+				raster.setDataElements(0, y, raster.getWidth(), 1, row);
+			}
+			return new BufferedImage(model, raster, model.isAlphaPremultiplied(), null);
+		}
+		
+		/**
+		 * Views a direct buffer as elements of a transfer type, from its start
+		 * @param pixels - The buffer
+		 * @param type - The transfer type of the frame
+		 * @return The view
+		 */
+		private static Buffer view(ByteBuffer pixels, int type) {
+			ByteBuffer buffer = pixels.duplicate().order(ByteOrder.nativeOrder());
+			
+			switch(type) {
+			case DataBuffer.TYPE_INT:
+				return buffer.asIntBuffer();
+			case DataBuffer.TYPE_USHORT:
+				return buffer.asShortBuffer();
+			default:
+				return buffer;
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds values by the Hamming distance between their perceptual hashes.
+ *
+ * Hashes are split into four 16 bit chunks and every value is filed in one table per chunk under that
+ * chunk. If two hashes are within a distance d of each other, at least one of their chunks is within d / 4
+ * of each other, so a search only has to look up the chunks of the query and their close neighbours in
+ * each table and check the few values found there, rather than compare the query with every hash. Searches
+ * wider than the tables can answer fall back to checking every hash.
+ *
+ * @param <T> The type of the values
+ */
+public class HashIndex<T> {
+	
+	private static final int CHUNKS = 4;
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+	private static final int MAX_CHUNK_DISTANCE = 2;
+	
+	private final List<Map<Integer, List<Entry<T>>>> tables;
+	private final List<Entry<T>> entries;
+	
+	/**
+	 * Constructor
+	 */
+	public HashIndex() {
+		tables = new ArrayList<Map<Integer, List<Entry<T>>>>(CHUNKS);
+		entries = new ArrayList<Entry<T>>();
+		
+		for(int i = 0; i < CHUNKS; i++)
+			tables.add(new HashMap<Integer, List<Entry<T>>>());
+	}
+	
+	/**
+	 * Adds a value
+	 * @param hash - The perceptual hash of the value
+	 * @param value - The value
+	 */
+	public synchronized void add(long hash, T value) {
+		Entry<T> entry = new Entry<T>(hash, value);
+		entries.add(entry);
+		
+		for(int i = 0; i < CHUNKS; i++)
+			tables.get(i).computeIfAbsent(chunk(hash, i), key -> new ArrayList<Entry<T>>(1)).add(entry);
+	}
+	
+	/**
+	 * Finds the value whose hash is closest to the given hash
+	 * @param hash - The perceptual hash to search for
+	 * @param maxDistance - The largest Hamming distance a match may have
+	 * @return The closest value within the distance, null if there is none
+	 */
+	public synchronized T find(long hash, int maxDistance) {
+		int radius = maxDistance / CHUNKS;
+		
+		if(radius > MAX_CHUNK_DISTANCE) {
+			Entry<T> best = closest(entries, hash, maxDistance, null);
+			return best == null ? null : best.value;
+		}
+		
+		Entry<T> best = null;
+		
+		for(int i = 0; i < CHUNKS; i++) {
+			Map<Integer, List<Entry<T>>> table = tables.get(i);
+			int chunk = chunk(hash, i);
+			
+			best = closest(table.get(chunk), hash, maxDistance, best);
+			
+			for(int a = 0; a < CHUNK_BITS && radius > 0; a++) {
+				best = closest(table.get(chunk ^ 1 << a), hash, maxDistance, best);
+				
+				for(int b = a + 1; b < CHUNK_BITS && radius > 1; b++)
+					best = closest(table.get(chunk ^ 1 << a ^ 1 << b), hash, maxDistance, best);
+			}
+			
+			if(best != null && best.hash == hash)
+				break;
+		}
+		return best == null ? null : best.value;
+	}
+	
+	/**
+	 * Removes a value
+	 * @param hash - The perceptual hash the value was added with
+	 * @param value - The value to remove
+	 * @return True if the value was in the index
+	 */
+	public synchronized boolean remove(long hash, T value) {
+		List<Entry<T>> bucket = tables.get(0).get(chunk(hash, 0));
+		Entry<T> entry = null;
+		
+		if(bucket != null) {
+			for(Entry<T> candidate: bucket) {
+				if(candidate.hash == hash && candidate.value.equals(value)) {
+					entry = candidate;
+					break;
+				}
+			}
+		}
+		
+		if(entry == null)
+			return false;
+		
+		entries.remove(entry);
+		
+		for(int i = 0; i < CHUNKS; i++) {
+			Integer key = chunk(hash, i);
+			List<Entry<T>> list = tables.get(i).get(key);
+			list.remove(entry);
+			
+			if(list.isEmpty())
+				tables.get(i).remove(key);
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes every value
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		
+		for(Map<Integer, List<Entry<T>>> table: tables)
+			table.clear();
+	}
+	
+	/**
+	 * Gets the number of values in the index
+	 * @return The number of values
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Gets a chunk of a hash
+	 * @param hash - The hash
+	 * @param index - The index of the chunk
+	 * @return The chunk
+	 */
+	private static int chunk(long hash, int index) {
+		return (int) (hash >>> index * CHUNK_BITS) & CHUNK_MASK;
+	}
+	
+	/**
+	 * Finds the entry closest to a hash among some candidates
+	 * @param candidates - The entries to check, may be null
+	 * @param hash - The hash to search for
+	 * @param maxDistance - The largest distance a match may have
+	 * @param best - The closest entry found so far, null if none was
+	 * @return The closest entry, null if there is none within the distance
+	 */
+	private static <T> Entry<T> closest(List<Entry<T>> candidates, long hash, int maxDistance, Entry<T> best) {
+		if(candidates == null)
+			return best;
+		
+		int bestDistance = best == null ? maxDistance + 1 : PerceptualHash.distance(hash, best.hash);
+		
+		for(Entry<T> entry: candidates) {
+			int distance = PerceptualHash.distance(hash, entry.hash);
+			
+			if(distance < bestDistance) {
+				best = entry;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * A value and its hash
+	 */
+	private static class Entry<T> {
+		
+		private final long hash;
+		private final T value;
+		
+		private Entry(long hash, T value) {
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+}
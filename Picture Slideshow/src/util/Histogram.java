@@ -0,0 +1,135 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in nanoseconds.
+ *
+ * Values are counted in logarithmic buckets, each power of two split into eight linear steps, so any
+ * percentile is reported within about 12% of the true value while the histogram stays a fixed, small
+ * array. Recording is safe from any thread and never blocks.
+ */
+public class Histogram {
+	
+	private static final int STEPS = 8;
+	private static final int STEP_BITS = 3;
+	private static final int BUCKETS = (64 - STEP_BITS) * STEPS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records a value
+	 * @param nanos - The duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+		
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		
+		long current;
+		
+		while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos));
+	}
+	
+	/**
+	 * Gets the number of recorded values
+	 * @return The count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Gets the mean of the recorded values
+	 * @return The mean in milliseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / 1e6 / n;
+	}
+	
+	/**
+	 * Gets the largest recorded value
+	 * @return The maximum in milliseconds
+	 */
+	public double getMax() {
+		return max.get() / 1e6;
+	}
+	
+	/**
+	 * Gets a percentile of the recorded values
+	 * @param percentile - The percentile, from 0 to 100
+	 * @return The upper bound of the bucket holding the percentile in milliseconds, 0 if nothing was recorded
+	 */
+	public double getPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		
+		for(int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		
+		if(n == 0)
+			return 0;
+		
+		long rank = (long) Math.ceil(percentile / 100 * n);
+		long seen = 0;
+		
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			
+			if(seen >= Math.max(1, rank))
+				return Math.min(upperBound(i), max.get()) / 1e6;
+		}
+		return getMax();
+	}
+	
+	/**
+	 * Clears every recorded value
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+	
+	/**
+	 * Gets the bucket of a value
+	 * @param value - The value, not negative
+	 * @return The bucket index
+	 */
+	private static int bucket(long value) {
+		if(value < STEPS)
+			return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int step = (int) (value >>> (exponent - STEP_BITS)) & (STEPS - 1);
+		return (exponent - STEP_BITS + 1) * STEPS + step;
+	}
+	
+	/**
+	 * Gets the largest value counted in a bucket
+	 * @param bucket - The bucket index
+	 * @return The upper bound of the bucket
+	 */
+	private static long upperBound(int bucket) {
+		if(bucket < STEPS)
+			return bucket;
+		
+		int exponent = bucket / STEPS + STEP_BITS - 1;
+		long step = bucket % STEPS;
+		long width = 1L << (exponent - STEP_BITS);
+		return (1L << exponent) + (step + 1) * width - 1;
+	}
+}
@@ -1,22 +1,29 @@
 package util;
 
 import java.awt.Desktop;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -28,18 +35,25 @@ public final class IO {
 	private static final String EXTENSION = ".slider";
 	
 	private static final FileNameExtensionFilter IMAGE_FILTER = new FileNameExtensionFilter("Image Extensions", "jpg", "jpeg", "gif", "png");
+	private static final FileNameExtensionFilter URL_FILTER = new FileNameExtensionFilter("URL Lists", "txt");
 	private static final FileNameExtensionFilter SLIDESHOW_FILTER = new FileNameExtensionFilter("Slideshow", EXTENSION.substring(1));
 	
+	private static final ExecutorService ICON_LOADER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Icon Loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
 	private IO() {}
 	
 	/**
-	 * Loads a BufferedImage from a URL
+	 * Loads a BufferedImage from a URL, through the download cache
 	 * @param url - The URL of the image to load
 	 * @return The loaded image, null if the load attempt failed
 	 */
 	public static BufferedImage load(URL url) {
 		try {
-			return ImageIO.read(url);
+			return load(UrlCache.fetch(url));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}	
@@ -53,7 +67,71 @@ public final class IO {
 	 */
 	public static BufferedImage load(File file) {
 		try {
-			return ImageIO.read(file);
+			long start = Metrics.start();
+			BufferedImage image = ImageIO.read(file);
+			Metrics.stop(Metrics.Stage.DECODE, start);
+			return image;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads a BufferedImage from encoded image bytes
+	 * @param data - The encoded image
+	 * @return The loaded BufferedImage, null if the load attempt failed
+	 */
+	public static BufferedImage load(byte[] data) {
+		return load(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Loads a BufferedImage from a buffer holding encoded image bytes, reading the buffer in place
+	 * @param data - The buffer holding the encoded image, from its position to its limit
+	 * @return The loaded BufferedImage, null if the load attempt failed
+	 */
+	public static BufferedImage load(ByteBuffer data) {
+		try {
+			long start = Metrics.start();
+			BufferedImage image = ImageIO.read(new ByteBufferImageInputStream(data));
+			Metrics.stop(Metrics.Stage.DECODE, start);
+			return image;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads a BufferedImage from a File location, decoding only as many pixels as are needed to fill
+	 * the given bounds. The image is subsampled by the largest whole factor which keeps it at least as
+	 * large as the bounds in one dimension, so it still has to be scaled down to fit exactly
+	 * @param file - A File location to read from
+	 * @param maxWidth - The width of the bounding box the image will be shown in
+	 * @param maxHeight - The height of the bounding box the image will be shown in
+	 * @return The loaded BufferedImage, null if the load attempt failed
+	 */
+	public static BufferedImage load(File file, int maxWidth, int maxHeight) {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+			return read(iis, null, maxWidth, maxHeight, 1);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads a BufferedImage from a buffer holding encoded image bytes, decoding only as many pixels as
+	 * are needed to fill the given bounds
+	 * @param data - The buffer holding the encoded image, from its position to its limit
+	 * @param maxWidth - The width of the bounding box the image will be shown in
+	 * @param maxHeight - The height of the bounding box the image will be shown in
+	 * @return The loaded BufferedImage, null if the load attempt failed
+	 */
+	public static BufferedImage load(ByteBuffer data, int maxWidth, int maxHeight) {
+		try {
+			return read(new ByteBufferImageInputStream(data), null, maxWidth, maxHeight, 1);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -61,69 +139,271 @@ public final class IO {
 	}
 	
 	/**
-	 * Loads a BufferedImage from a location within the jar
+	 * Loads a region of an image file, keeping every nth pixel of the region in both directions
+	 * @param file - A File location to read from
+	 * @param region - The region of the image to decode, in full resolution pixels
+	 * @param subsampling - The distance between the decoded pixels, 1 to decode every pixel
+	 * @return The decoded region, null if the load attempt failed
+	 */
+	public static BufferedImage load(File file, Rectangle region, int subsampling) {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+			return read(iis, region, 0, 0, subsampling);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads a region of an image held in a buffer, keeping every nth pixel of the region in both directions
+	 * @param data - The buffer holding the encoded image, from its position to its limit
+	 * @param region - The region of the image to decode, in full resolution pixels
+	 * @param subsampling - The distance between the decoded pixels, 1 to decode every pixel
+	 * @return The decoded region, null if the load attempt failed
+	 */
+	public static BufferedImage load(ByteBuffer data, Rectangle region, int subsampling) {
+		try {
+			return read(new ByteBufferImageInputStream(data), region, 0, 0, subsampling);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the largest subsampling factor which keeps an image at least as large as the given bounds
+	 * in one dimension, so scaling it down to fit the bounds never has to enlarge it
+	 * @param width - The width of the full resolution image
+	 * @param height - The height of the full resolution image
+	 * @param maxWidth - The width of the bounding box
+	 * @param maxHeight - The height of the bounding box
+	 * @return The subsampling factor, at least 1
+	 */
+	public static int getSubsampling(int width, int height, int maxWidth, int maxHeight) {
+		if(maxWidth <= 0 || maxHeight <= 0)
+			return 1;
+		
+		return Math.max(1, Math.min(width / maxWidth, height / maxHeight));
+	}
+	
+	/**
+	 * Decodes the first image of a stream with the given region and subsampling
+	 * @param iis - The stream to decode, closed by the caller
+	 * @param region - The region to decode, null for the whole image
+	 * @param maxWidth - The width of the bounds to subsample the image to, 0 to use the given subsampling
+	 * @param maxHeight - The height of the bounds to subsample the image to, 0 to use the given subsampling
+	 * @param subsampling - The subsampling factor used when no bounds are given
+	 * @return The decoded image, null if no reader understands the stream
+	 * @throws IOException If the image could not be decoded
+	 */
+	private static BufferedImage read(ImageInputStream iis, Rectangle region, int maxWidth, int maxHeight, int subsampling) throws IOException {
+		if(iis == null)
+			return null;
+		
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		
+		if(!readers.hasNext())
+			return null;
+		
+		ImageReader reader = readers.next();
+		
+		try {
+			reader.setInput(iis, true, true);
+			ImageReadParam param = reader.getDefaultReadParam();
+			
+			if(region != null)
+				param.setSourceRegion(region);
+			
+			if(maxWidth > 0 && maxHeight > 0) {
+				int width = region == null ? reader.getWidth(0) : region.width;
+				int height = region == null ? reader.getHeight(0) : region.height;
+				subsampling = getSubsampling(width, height, maxWidth, maxHeight);
+			}
+			
+			if(subsampling > 1)
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+			
+			long start = Metrics.start();
+			BufferedImage image = reader.read(0, param);
+			Metrics.stop(Metrics.Stage.DECODE, start);
+			return image;
+		} finally {
+			reader.dispose();
+		}
+	}
+	
+	/**
+	 * Reads the dimensions of an image file from its header without decoding the image
+	 * @param file - The image file
+	 * @return The image dimensions, null if the file could not be read as an image
+	 */
+	public static Dimension getDimension(File file) {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+			return getDimension(iis);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the dimensions of an image held in a buffer from its header without decoding the image
+	 * @param data - The buffer holding the encoded image, from its position to its limit
+	 * @return The image dimensions, null if the buffer could not be read as an image
+	 */
+	public static Dimension getDimension(ByteBuffer data) {
+		try (ImageInputStream iis = new ByteBufferImageInputStream(data)) {
+			return getDimension(iis);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the dimensions of the first image of a stream from its header
+	 * @param iis - The stream to read, closed by the caller
+	 * @return The image dimensions, null if no reader understands the stream
+	 * @throws IOException If the header could not be read
+	 */
+	private static Dimension getDimension(ImageInputStream iis) throws IOException {
+		if(iis == null)
+			return null;
+		
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		
+		if(!readers.hasNext())
+			return null;
+		
+		ImageReader reader = readers.next();
+		
+		try {
+			reader.setInput(iis, true, true);
+			return new Dimension(reader.getWidth(0), reader.getHeight(0));
+		} finally {
+			reader.dispose();
+		}
+	}
+	
+	/**
+	 * Loads a BufferedImage from a location within the jar. The resource is buffered in memory rather
+	 * than in a temporary file
 	 * @param path - The name of the file to load
 	 * @return A BufferedImage loaded from the resources file of the jar with the given name
 	 */
 	public static BufferedImage load(String path) {
-		try {
-			return ImageIO.read(ClassLoader.getSystemResourceAsStream(LOCAL_BASE + path));
+		try (InputStream is = ClassLoader.getSystemResourceAsStream(LOCAL_BASE + path)) {
+			return ImageIO.read(new MemoryCacheImageInputStream(is));
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
 	
+	/**
+	 * Loads a BufferedImage from a location within the jar and scales it to fit a square
+	 * @param path - The name of the file to load
+	 * @param size - The side of the square in pixels, 0 to keep the image size
+	 * @return The scaled image, null if it could not be loaded
+	 */
+	public static BufferedImage loadIcon(String path, int size) {
+		BufferedImage image = load(path);
+		return image == null || size <= 0 ? image : ImageUtils.resize(image, size, size);
+	}
+	
+	/**
+	 * Loads and scales an image from within the jar on the icon loading thread. Icons queued together load
+	 * one after another there, off the event dispatch thread and away from the common pool, which the image
+	 * scaling code uses for its parallel work
+	 * @param path - The name of the file to load
+	 * @param size - The side of the square in pixels, 0 to keep the image size
+	 * @return The scaled image once it is loaded, null if it could not be loaded
+	 */
+	public static CompletableFuture<BufferedImage> loadIconLater(String path, int size) {
+		return CompletableFuture.supplyAsync(() -> loadIcon(path, size), ICON_LOADER);
+	}
+	
 	/**
 	 * Gets URLs from the given file path
 	 * @param path - The path to the URL text file
 	 * @return An ArrayList containing all of the URLs
 	 */
 	public static ArrayList<URL> getURLs(String path) {
+		InputStream is = ClassLoader.getSystemResourceAsStream(LOCAL_BASE + path);
+		
+		if(is == null)
+			return new ArrayList<URL>();
+		
+		return getURLs(new Scanner(is));
+	}
+	
+	/**
+	 * Gets URLs from a text file listing one URL per line
+	 * @param file - The URL text file
+	 * @return An ArrayList containing all of the URLs
+	 */
+	public static ArrayList<URL> getURLs(File file) {
+		try {
+			return getURLs(new Scanner(file));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return new ArrayList<URL>();
+	}
+	
+	/**
+	 * Reads one URL per line, skipping blank lines, lines starting with # and lines which are not URLs
+	 * @param scanner - The scanner to read, closed once read
+	 * @return An ArrayList containing all of the URLs
+	 */
+	private static ArrayList<URL> getURLs(Scanner scanner) {
 		ArrayList<URL> urls = new ArrayList<URL>();
 		
 		try {
-			InputStream is = ClassLoader.getSystemResourceAsStream(LOCAL_BASE + path);
-			Scanner scanner = new Scanner(is);
+			while(scanner.hasNextLine()) {
+				String line = scanner.nextLine().trim();
 		
-			while(scanner.hasNextLine())
-				urls.add(new URL(scanner.nextLine()));
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
 			
+				try {
+					urls.add(new URL(line));
+				} catch (MalformedURLException e) {
+					e.printStackTrace();
+				}
+			}
+		} finally {
 			scanner.close();
-			
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 		
 		return urls;
 	}
 	
 	/**
-	 * Saves the slideshow to the file selected by the user
+	 * Saves the slideshow to the file selected by the user in the background
 	 * @param component - The component the JFileChooser dialog will be attached to
-	 * @param icons - The ImageIcons containing the images to save
+	 * @param slides - The slides to save
+	 * @param listener - The listener receiving the progress of the save on the event dispatch thread
+	 * @return The running save, null if no file was selected
 	 */
-	public static void saveSlideshow(JComponent component, ArrayList<ImageIcon> icons) {
-		try {
-			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(saveDialog(component)));
-			
-			oos.writeObject(icons);
-			oos.close();
-			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public static SaveTask saveSlideshow(JComponent component, List<Slide> slides, SaveTask.Listener listener) {
+		String path = saveDialog(component);
+		
+		if(path == null)
+			return null;
+		
+		SaveTask task = new SaveTask(new File(path), slides, listener);
+		task.start();
+		return task;
 	}
 	
 	/**
 	 * Loads a slideshow from a file selected by the user
 	 * @param component - The component the JFileChooser dialog will be attached to
-	 * @return An ArrayList containing all of the ImageIcons with all of the images in the slideshow
+	 * @return An ArrayList containing all of the slides in the slideshow, null if no slideshow was loaded
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	public static ArrayList<ImageIcon> loadSlideshow(JComponent component) {
+	public static ArrayList<Slide> loadSlideshow(JComponent component) {
 		JFileChooser fc = new JFileChooser();
 		
 		fc.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
@@ -131,40 +411,91 @@ public final class IO {
 		fc.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
 		fc.setMultiSelectionEnabled(false);
 		fc.setFileFilter(SLIDESHOW_FILTER);
-		fc.showOpenDialog(component);
 		
+		if(fc.showOpenDialog(component) != JFileChooser.APPROVE_OPTION)
+			return null;
 		
 		try {
-			ArrayList<ImageIcon> icons = new ArrayList<ImageIcon>();
-			ObjectInputStream ois =	new ObjectInputStream(new FileInputStream(fc.getSelectedFile().getAbsolutePath()));
-			
-			icons = (ArrayList)ois.readObject();
-			ois.close();
-			return icons;
-			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			return SlideFile.read(fc.getSelectedFile());
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
 		}
 		
 		return null;
 	}
 
 	/**
-	 * Opens a dialog box for file selection
+	 * Opens a dialog box for file selection and imports the selected images in the background
+	 * 
+	 * The images are not decoded, each slide decodes its file when it is first displayed
+	 * @param component - The component which triggers the selection
+	 * @param listener - The listener receiving the imported slides on the event dispatch thread
+	 * @return The running import, null if no files were selected
+	 */
+	public static Importer loadImage(JComponent component, Importer.Listener listener) {
+		File[] files = loadDialog(component, IMAGE_FILTER);
+		
+		if(files.length == 0)
+			return null;
+		
+		Importer importer = new Importer(files, listener);
+		importer.start();
+		return importer;
+	}
+
+	/**
+	 * Opens a dialog box for selecting text files listing image URLs and imports the images in the background
+	 * 
+	 * The images are fetched through the download cache, several at a time
 	 * @param component - The component which triggers the selection
-	 * @return The file selected
+	 * @param listener - The listener receiving the imported slides on the event dispatch thread
+	 * @return The running import, null if no URLs were selected
 	 */
-	public static ArrayList<BufferedImage> loadImage(JComponent component) {
-		ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+	public static Importer loadURLs(JComponent component, Importer.Listener listener) {
+		List<URL> urls = new ArrayList<URL>();
+		
+		for(File file: loadDialog(component, URL_FILTER))
+			urls.addAll(getURLs(file));
 		
-		for(File file: loadDialog(component, IMAGE_FILTER))
-			images.add(load(file));
+		if(urls.isEmpty())
+			return null;
 		
-		return images;
+		Importer importer = new Importer(urls, listener);
+		importer.start();
+		return importer;
+	}
+	
+	/**
+	 * Opens a dialog box for selecting a folder and starts keeping the slide show in step with its images
+	 * @param component - The component which triggers the selection
+	 * @param listener - The listener receiving the changes to the folder on the event dispatch thread
+	 * @return The running watcher, null if no folder was selected or it could not be watched
+	 */
+	public static FolderWatcher watchFolder(JComponent component, FolderWatcher.Listener listener) {
+		File folder = folderDialog(component);
+		
+		if(folder == null)
+			return null;
+		
+		FolderWatcher watcher = new FolderWatcher(folder, listener);
+		
+		try {
+			watcher.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			watcher.stop();
+			return null;
+		}
+		return watcher;
+	}
+	
+	/**
+	 * Checks whether a file has the extension of an image the slide show can show
+	 * @param file - The file to check
+	 * @return True if the file is a regular file with an image extension
+	 */
+	public static boolean isImage(File file) {
+		return file.isFile() && IMAGE_FILTER.accept(file);
 	}
 	
 	/**
@@ -197,8 +528,8 @@ public final class IO {
 		int selection = fc.showSaveDialog(component);
 		
 		if(selection == JFileChooser.APPROVE_OPTION) {
-			File saveFile = fc.getSelectedFile();
-			return saveFile.getAbsolutePath() + EXTENSION;
+			String path = fc.getSelectedFile().getAbsolutePath();
+			return path.endsWith(EXTENSION) ? path : path + EXTENSION;
 		}
 		return null;
 	}
@@ -222,4 +553,22 @@ public final class IO {
 		return fc.getSelectedFiles();
 	}
 	
+	/**
+	 * Opens a dialog for selecting a single folder
+	 * @param component - The JComponent the JFileChooser dialog will be attached to
+	 * @return The selected folder, null if the dialog was cancelled
+	 */
+	private static File folderDialog(JComponent component) {
+		JFileChooser fc = new JFileChooser();
+		
+		fc.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
+		fc.setDialogTitle("Slideshow Folder Chooser");
+		fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		
+		if(fc.showOpenDialog(component) != JFileChooser.APPROVE_OPTION)
+			return null;
+		
+		return fc.getSelectedFile();
+	}
+	
 }
@@ -1,10 +1,46 @@
 package util;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.ImageObserver;
+import java.util.stream.IntStream;
+
+import javax.swing.ImageIcon;
 
 public final class ImageUtils {
+	
+	/**
+	 * The trade off between speed and quality when scaling an image
+	 */
+	public enum Quality {
+		
+		/**
+		 * A single bilinear pass; fastest, but large reductions alias
+		 */
+		FAST,
+		
+		/**
+		 * Bilinear halving steps followed by a final bilinear pass; suitable for live painting
+		 */
+		BALANCED,
+		
+		/**
+		 * Bilinear halving steps followed by a final bicubic pass; suitable for export
+		 */
+		HIGH
+	}
+	
+	private static final int PARALLEL_THRESHOLD = 1 << 20;
+	private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
 
 	/**
 	 * Private Constructor
@@ -19,11 +55,53 @@ public final class ImageUtils {
 	 * @return The image set to the new size
 	 */
 	public static BufferedImage force(BufferedImage image, int width, int height) {
-		BufferedImage resizedImage = new BufferedImage(width, height, BufferedImage.TRANSLUCENT);
-		Graphics2D g2 = resizedImage.createGraphics();
-		g2.drawImage(image, 0, 0, width, height, null);
-		g2.dispose();
-		return resizedImage;
+		return force(image, width, height, Quality.BALANCED);
+	}
+	
+	/**
+	 * Resizes the image to the new size; ignores aspect ratio of original image.
+	 * 
+	 * Large reductions are done in steps which halve the image until it is within twice the new size, so
+	 * every source pixel contributes to the result. The result is opaque if the image is opaque.
+	 * @param image - The image to resize
+	 * @param width - The new width of the image
+	 * @param height - The new height of the image
+	 * @param quality - The trade off between speed and quality
+	 * @return The image set to the new size
+	 */
+	public static BufferedImage force(BufferedImage image, int width, int height, Quality quality) {
+		long start = Metrics.start();
+		BufferedImage scaled = scale(image, width, height, quality);
+		Metrics.stop(Metrics.Stage.SCALE, start);
+		return scaled;
+	}
+	
+	/**
+	 * Resizes the image to the new size in halving steps followed by a final pass
+	 * @param image - The image to resize
+	 * @param width - The new width of the image
+	 * @param height - The new height of the image
+	 * @param quality - The trade off between speed and quality
+	 * @return The image set to the new size
+	 */
+	private static BufferedImage scale(BufferedImage image, int width, int height, Quality quality) {
+		int type = image.getTransparency() == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+		BufferedImage current = image;
+		int w = image.getWidth(), h = image.getHeight();
+		
+		if(quality != Quality.FAST) {
+			while(w > width * 2 || h > height * 2) {
+				w = Math.max(w / 2, width);
+				h = Math.max(h / 2, height);
+				current = draw(current, w, h, type, RenderingHints.VALUE_INTERPOLATION_BILINEAR, quality);
+			}
+		}
+		
+		if(current.getWidth() == width && current.getHeight() == height && current != image)
+			return current;
+		
+		Object interpolation = quality == Quality.HIGH ? RenderingHints.VALUE_INTERPOLATION_BICUBIC : RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+		return draw(current, width, height, type, interpolation, quality);
 	}
 	
 	/**
@@ -34,6 +112,18 @@ public final class ImageUtils {
 	 * @return Returns either an image resized to fit within the bounds, or the same image if no resize was necessary
 	 */
 	public static BufferedImage resize(BufferedImage image, int maxWidth, int maxHeight) {
+		return resize(image, maxWidth, maxHeight, Quality.BALANCED);
+	}
+	
+	/**
+	 * Attempts to resize the image to within the given bounds while maintaining aspect ratio
+	 * @param image - The image to be resized
+	 * @param maxWidth - The maximum width bound
+	 * @param maxHeight - The maximum height bound
+	 * @param quality - The trade off between speed and quality
+	 * @return Returns either an image resized to fit within the bounds, or the same image if no resize was necessary
+	 */
+	public static BufferedImage resize(BufferedImage image, int maxWidth, int maxHeight, Quality quality) {
 		int w = image.getWidth(), h = image.getHeight();
 		float aspectRatio = (float)w / h;
 		
@@ -55,13 +145,185 @@ public final class ImageUtils {
 					h = (int) (w / aspectRatio);
 				}	
 			}
-			return force(image, w, h);
+			return force(image, Math.max(w, 1), Math.max(h, 1), quality);
 		}
 		else {
 			return image;
 		}
 	}
 	
+	/**
+	 * Creates an opaque thumbnail of the image which fits within a square of the given size
+	 * @param image - The image to create a thumbnail of
+	 * @param size - The maximum width and height of the thumbnail
+	 * @return The thumbnail, with any transparency drawn over black
+	 */
+	public static BufferedImage thumbnail(BufferedImage image, int size) {
+		BufferedImage scaled = resize(image, size, size);
+		BufferedImage thumbnail = new BufferedImage(scaled.getWidth(), scaled.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = thumbnail.createGraphics();
+		g2.drawImage(scaled, 0, 0, Color.BLACK, null);
+		g2.dispose();
+		return thumbnail;
+	}
+	
+	/**
+	 * Turns an image upright according to its EXIF orientation
+	 * @param image - The image as stored, may be null
+	 * @param orientation - The EXIF orientation, from 1 to 8
+	 * @return The upright image, the image itself if it is already upright
+	 */
+	public static BufferedImage orient(BufferedImage image, int orientation) {
+		if(image == null || orientation == Metadata.NORMAL)
+			return image;
+		
+		int width = image.getWidth(), height = image.getHeight();
+		boolean transposed = isTransposed(orientation);
+		int type = image.getType();
+		
+		if(type == BufferedImage.TYPE_CUSTOM || type == BufferedImage.TYPE_BYTE_BINARY || type == BufferedImage.TYPE_BYTE_INDEXED)
+			type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		
+		BufferedImage oriented = new BufferedImage(transposed ? height : width, transposed ? width : height, type);
+		Graphics2D g2 = oriented.createGraphics();
+		g2.drawImage(image, getOrientation(orientation, width, height), null);
+		g2.dispose();
+		return oriented;
+	}
+	
+	/**
+	 * Gets the transform turning an image upright according to its EXIF orientation
+	 * @param orientation - The EXIF orientation, from 1 to 8
+	 * @param width - The width of the image as stored
+	 * @param height - The height of the image as stored
+	 * @return The transform from stored to upright coordinates
+	 */
+	public static AffineTransform getOrientation(int orientation, int width, int height) {
+		switch(orientation) {
+		case 2:
+			return new AffineTransform(-1, 0, 0, 1, width, 0);
+		case 3:
+			return new AffineTransform(-1, 0, 0, -1, width, height);
+		case 4:
+			return new AffineTransform(1, 0, 0, -1, 0, height);
+		case 5:
+			return new AffineTransform(0, 1, 1, 0, 0, 0);
+		case 6:
+			return new AffineTransform(0, 1, -1, 0, height, 0);
+		case 7:
+			return new AffineTransform(0, -1, -1, 0, height, width);
+		case 8:
+			return new AffineTransform(0, -1, 1, 0, 0, width);
+		default:
+			return new AffineTransform();
+		}
+	}
+	
+	/**
+	 * Checks whether an EXIF orientation swaps the width and height of an image
+	 * @param orientation - The EXIF orientation, from 1 to 8
+	 * @return True if the image is turned a quarter
+	 */
+	public static boolean isTransposed(int orientation) {
+		return orientation >= 5 && orientation <= 8;
+	}
+	
+	/**
+	 * Converts the image to the pixel format of a graphics configuration, so drawing it to that
+	 * configuration needs no conversion on every blit
+	 * @param image - The image to convert
+	 * @param gc - The graphics configuration the image will be drawn to, null to keep the image as is
+	 * @return The image itself if it already has the native format, else a compatible copy
+	 */
+	public static BufferedImage toCompatible(BufferedImage image, GraphicsConfiguration gc) {
+		if(gc == null)
+			return image;
+		
+		int transparency = image.getTransparency();
+		
+		if(image.getColorModel().equals(gc.getColorModel(transparency)))
+			return image;
+		
+		BufferedImage compatible = gc.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+		Graphics2D g2 = compatible.createGraphics();
+		g2.drawImage(image, 0, 0, null);
+		g2.dispose();
+		return compatible;
+	}
+	
+	/**
+	 * Converts the image to the pixel format of the default screen
+	 * @param image - The image to convert
+	 * @return The image in the native format of the default screen, or the image itself when headless
+	 */
+	public static BufferedImage toCompatible(BufferedImage image) {
+		return toCompatible(image, getDefaultConfiguration());
+	}
+	
+	/**
+	 * Gets the graphics configuration of the default screen
+	 * @return The default graphics configuration, null when running headless
+	 */
+	public static GraphicsConfiguration getDefaultConfiguration() {
+		if(GraphicsEnvironment.isHeadless())
+			return null;
+		
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+	}
+	
+	/**
+	 * Draws the image held by an ImageIcon into a BufferedImage
+	 * @param icon - The ImageIcon containing the image
+	 * @return A BufferedImage containing the icon image
+	 */
+	public static BufferedImage toBufferedImage(ImageIcon icon) {
+		Image image = icon.getImage();
+		ImageObserver observer = icon.getImageObserver();
+		
+		BufferedImage bi = new BufferedImage(image.getWidth(observer), image.getHeight(observer), BufferedImage.TYPE_INT_RGB);
+		bi.getGraphics().drawImage(image, 0, 0, observer);
+		
+		return bi;
+	}
+	
+	/**
+	 * Draws the image scaled into a new image.
+	 * Large results are split into horizontal bands which are drawn in parallel
+	 * @param image - The image to draw
+	 * @param width - The width of the new image
+	 * @param height - The height of the new image
+	 * @param type - The type of the new image
+	 * @param interpolation - The interpolation rendering hint to draw with
+	 * @param quality - The trade off between speed and quality
+	 * @return The new image
+	 */
+	private static BufferedImage draw(BufferedImage image, int width, int height, int type, Object interpolation, Quality quality) {
+		BufferedImage scaled = new BufferedImage(width, height, type);
+		int bands = (long) width * height >= PARALLEL_THRESHOLD ? Math.min(PARALLELISM, height) : 1;
+		int bandHeight = (height + bands - 1) / bands;
+		
+		IntStream range = IntStream.range(0, bands);
+		
+		if(bands > 1)
+			range = range.parallel();
+		
+		range.forEach(band -> {
+			int y = band * bandHeight;
+			
+			if(y >= height)
+				return;
+			
+			Graphics2D g2 = scaled.createGraphics();
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+			g2.setRenderingHint(RenderingHints.KEY_RENDERING, quality == Quality.FAST ? RenderingHints.VALUE_RENDER_SPEED : RenderingHints.VALUE_RENDER_QUALITY);
+			g2.clipRect(0, y, width, Math.min(bandHeight, height - y));
+			g2.drawImage(image, 0, 0, width, height, null);
+			g2.dispose();
+		});
+		
+		return scaled;
+	}
+	
 	/**
 	 * Returns a Dimension representing the dimension of an image
 	 * @param image - The image from which to get the dimensions
@@ -70,4 +332,14 @@ public final class ImageUtils {
 	public static Dimension getDimension(BufferedImage image) {
 		return new Dimension(image.getWidth(), image.getHeight());
 	}
+	
+	/**
+	 * Gets the memory held by the pixels of an image
+	 * @param image - The image to measure
+	 * @return The size of the image data in bytes
+	 */
+	public static long getBytes(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
 }
@@ -0,0 +1,279 @@
+package util;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Imports image files or URLs into slides on a pool of background threads.
+ *
+ * Each source is checked on a worker thread and turned into a slide. Slides are handed to the listener on
+ * the event dispatch thread as soon as they and every source selected before them are done, so they arrive
+ * in selection order while the rest of the import carries on. Sources which cannot be read as images are
+ * skipped. The import can be cancelled at any time, keeping the slides already delivered.
+ *
+ * URLs are fetched through the download cache. Fetching waits on the network rather than the processor,
+ * so URL imports use a larger pool than file imports.
+ *
+ * The metadata of image files is read through the metadata index, which is written back once the import
+ * is over, so importing the same files again does not read their headers again.
+ *
+ * While hashing is on, the perceptual hash of every slide is computed on the worker threads from a copy
+ * decoded at a tiny size, so the listener can look for duplicates without decoding anything.
+ */
+public class Importer {
+	
+	/**
+	 * Receives the results of an import on the event dispatch thread
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called for every imported slide, in selection order
+		 * @param slide - The imported slide
+		 */
+		void imported(Slide slide);
+		
+		/**
+		 * Called whenever a file has been processed
+		 * @param done - The number of sources processed so far
+		 * @param total - The number of sources being imported
+		 */
+		void progress(int done, int total);
+		
+		/**
+		 * Called once when the import is over
+		 * @param cancelled - True if the import was cancelled before every file was processed
+		 */
+		void finished(boolean cancelled);
+	}
+	
+	private static final int FETCH_THREADS = Integer.getInteger("slideshow.fetchThreads", 8);
+	
+	private static volatile boolean hashing = true;
+	
+	private final int total;
+	private final IntFunction<Slide> source;
+	private final Listener listener;
+	private final Slide[] results;
+	private final boolean[] done;
+	private final ExecutorService executor;
+	
+	private int next, completed;
+	private volatile boolean cancelled;
+	private boolean over;
+	
+	/**
+	 * Constructor
+	 * @param files - The image files to import, in selection order
+	 * @param listener - The listener receiving the imported slides
+	 */
+	public Importer(File[] files, Listener listener) {
+		this(files.length, i -> read(files[i]), Runtime.getRuntime().availableProcessors(), listener);
+	}
+	
+	/**
+	 * Constructor
+	 * @param urls - The image URLs to import, in selection order
+	 * @param listener - The listener receiving the imported slides
+	 */
+	public Importer(List<URL> urls, Listener listener) {
+		this(urls.size(), i -> fetch(urls.get(i)), FETCH_THREADS, listener);
+	}
+	
+	/**
+	 * Constructor
+	 * @param total - The number of sources to import
+	 * @param source - Creates the slide of a source from its index, returning null if it is not an image
+	 * @param threads - The maximum number of sources processed at once
+	 * @param listener - The listener receiving the imported slides
+	 */
+	private Importer(int total, IntFunction<Slide> source, int threads, Listener listener) {
+		this.total = total;
+		this.source = source;
+		this.listener = listener;
+		this.results = new Slide[total];
+		this.done = new boolean[total];
+		
+		threads = Math.max(1, Math.min(total, threads));
+		
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Image Importer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Starts importing the sources
+	 */
+	public void start() {
+		if(total == 0) {
+			finish();
+			return;
+		}
+		
+		for(int i = 0; i < total; i++) {
+			int index = i;
+			executor.submit(() -> process(index));
+		}
+		executor.shutdown();
+	}
+	
+	/**
+	 * Cancels the import; sources which are still being processed are discarded
+	 */
+	public void cancel() {
+		cancelled = true;
+		executor.shutdownNow();
+		finish();
+	}
+	
+	/**
+	 * Checks whether the import was cancelled
+	 * @return True if the import was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Gets the number of sources being imported
+	 * @return The number of sources
+	 */
+	public int getTotal() {
+		return total;
+	}
+	
+	/**
+	 * Sets whether imports compute the perceptual hash of their slides, from the next import
+	 * @param hashing - True to hash imported slides
+	 */
+	public static void setHashing(boolean hashing) {
+		Importer.hashing = hashing;
+	}
+	
+	/**
+	 * Checks whether imports compute the perceptual hash of their slides
+	 * @return True if imported slides are hashed
+	 */
+	public static boolean isHashing() {
+		return hashing;
+	}
+	
+	/**
+	 * Creates a slide from an image file without fully decoding it
+	 * @param file - The image file
+	 * @return The slide, null if the file could not be read as an image
+	 */
+	private static Slide read(File file) {
+		Metadata metadata = MetadataIndex.get(file);
+		return metadata == null ? null : hash(new Slide(file, metadata));
+	}
+	
+	/**
+	 * Creates a slide from the bytes of an image URL without fully decoding it
+	 * @param url - The image URL
+	 * @return The slide, null if the URL could not be fetched or read as an image
+	 */
+	private static Slide fetch(URL url) {
+		try {
+			ByteBuffer data = UrlCache.fetch(url);
+			Dimension size = IO.getDimension(data.duplicate());
+			return size == null ? null : hash(new Slide(data, size));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Computes the perceptual hash of a new slide if hashing is on
+	 * @param slide - The slide to hash
+	 * @return The slide
+	 */
+	private static Slide hash(Slide slide) {
+		if(hashing)
+			slide.getHash();
+		return slide;
+	}
+	
+	/**
+	 * Processes a single source on a worker thread
+	 * @param index - The index of the source in selection order
+	 */
+	private void process(int index) {
+		Slide slide = null;
+		
+		if(!cancelled)
+			slide = source.apply(index);
+		
+		complete(index, slide);
+	}
+	
+	/**
+	 * Records a processed source and delivers every slide which is now ready in selection order
+	 * @param index - The index of the processed source
+	 * @param slide - The slide created from the source, null if it could not be read
+	 */
+	private synchronized void complete(int index, Slide slide) {
+		if(cancelled)
+			return;
+		
+		results[index] = slide;
+		done[index] = true;
+		completed++;
+		
+		int count = completed;
+		
+		while(next < total && done[next]) {
+			Slide ready = results[next];
+			results[next++] = null;
+			
+			if(ready != null)
+				SwingUtilities.invokeLater(() -> deliver(ready));
+		}
+		
+		SwingUtilities.invokeLater(() -> {
+			if(!cancelled)
+				listener.progress(count, total);
+		});
+		
+		if(count == total)
+			finish();
+	}
+	
+	/**
+	 * Hands an imported slide to the listener unless the import has been cancelled
+	 * @param slide - The imported slide
+	 */
+	private void deliver(Slide slide) {
+		if(!cancelled)
+			listener.imported(slide);
+	}
+	
+	/**
+	 * Tells the listener the import is over, exactly once, and writes the metadata index on a thread of its
+	 * own, since a cancelled import finishes on the event dispatch thread
+	 */
+	private synchronized void finish() {
+		if(over)
+			return;
+		
+		over = true;
+		boolean result = cancelled;
+		SwingUtilities.invokeLater(() -> listener.finished(result));
+		
+		Thread saver = new Thread(MetadataIndex::save, "Metadata Save");
+		saver.setDaemon(true);
+		saver.start();
+	}
+}
@@ -0,0 +1,105 @@
+package util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Commits the timed stages as Java Flight Recorder events.
+ *
+ * The slide show targets Java 8, which has no flight recorder API to compile against, so one event type
+ * per stage is defined at runtime through jdk.jfr.EventFactory. Each event is named slideshow.Stage, is
+ * filed under the Slideshow category and holds the time the stage took. On runtimes without the factory
+ * nothing is defined and committing does nothing.
+ */
+final class JfrEvents {
+	
+	private static final String CATEGORY = "Slideshow";
+	
+	private static Object[] factories;
+	private static Method newEvent, set, commit;
+	private static volatile boolean available;
+	
+	/**
+	 * Private Constructor
+	 */
+	private JfrEvents() {}
+	
+	/**
+	 * Defines the event types if the runtime supports it. Defining more than once has no effect
+	 */
+	static synchronized void init() {
+		if(factories != null)
+			return;
+		
+		factories = new Object[0];
+		
+		try {
+			Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+			Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+			Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			
+			Constructor<?> newElement = element.getConstructor(Class.class, Object.class);
+			Constructor<?> newDescriptor = descriptor.getConstructor(Class.class, String.class, List.class);
+			Method create = factory.getMethod("create", List.class, List.class);
+			
+			Object elapsed = newDescriptor.newInstance(long.class, "elapsed", Arrays.asList(
+					newElement.newInstance(annotation("jdk.jfr.Label"), "Elapsed"),
+					newElement.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS")));
+			
+			Object[] created = new Object[Metrics.Stage.values().length];
+			
+			for(Metrics.Stage stage: Metrics.Stage.values()) {
+				List<Object> annotations = Arrays.asList(
+						newElement.newInstance(annotation("jdk.jfr.Name"), "slideshow." + stage.getLabel().replace(" ", "")),
+						newElement.newInstance(annotation("jdk.jfr.Label"), stage.getLabel()),
+						newElement.newInstance(annotation("jdk.jfr.Category"), new String[] {CATEGORY}));
+				
+				created[stage.ordinal()] = create.invoke(null, annotations, Collections.singletonList(elapsed));
+			}
+			
+			newEvent = factory.getMethod("newEvent");
+			set = event.getMethod("set", int.class, Object.class);
+			commit = event.getMethod("commit");
+			factories = created;
+			available = true;
+		} catch (ClassNotFoundException e) {
+			// The runtime has no flight recorder API
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Commits the event of a stage
+	 * @param stage - The timed stage
+	 * @param nanos - The time the stage took in nanoseconds
+	 */
+	static void commit(Metrics.Stage stage, long nanos) {
+		if(!available)
+			return;
+		
+		try {
+			Object event = newEvent.invoke(factories[stage.ordinal()]);
+			set.invoke(event, 0, nanos);
+			commit.invoke(event);
+		} catch (ReflectiveOperationException e) {
+			available = false;
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Loads a flight recorder annotation type
+	 * @param name - The name of the annotation type
+	 * @return The annotation type
+	 * @throws ClassNotFoundException If the runtime has no such annotation
+	 */
+	private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+		return Class.forName(name).asSubclass(Annotation.class);
+	}
+}
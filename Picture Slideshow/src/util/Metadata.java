@@ -0,0 +1,355 @@
+package util;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * What is known about an image without decoding its pixels: its dimensions, EXIF orientation, capture
+ * time and camera.
+ *
+ * The dimensions are read from the image header through an ImageReader. The EXIF block of a JPEG is its
+ * APP1 marker segment, found by stepping over the marker segments before the image data, and only the few
+ * tags needed are looked up in it. Images without EXIF are upright and have no capture time or camera.
+ */
+public class Metadata {
+	
+	/**
+	 * The orientation of an image which is stored upright
+	 */
+	public static final int NORMAL = 1;
+	
+	private static final int SOI = 0xD8;
+	private static final int EOI = 0xD9;
+	private static final int SOS = 0xDA;
+	private static final int APP1 = 0xE1;
+	private static final byte[] EXIF = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+	
+	private static final int TAG_MAKE = 0x010F;
+	private static final int TAG_MODEL = 0x0110;
+	private static final int TAG_ORIENTATION = 0x0112;
+	private static final int TAG_DATE_TIME = 0x0132;
+	private static final int TAG_EXIF_IFD = 0x8769;
+	private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+	
+	private static final int TYPE_ASCII = 2;
+	private static final int TYPE_SHORT = 3;
+	private static final int TYPE_LONG = 4;
+	
+	private final int width, height, orientation;
+	private final long captured;
+	private final String camera;
+	
+	/**
+	 * Constructor
+	 * @param width - The width of the encoded image
+	 * @param height - The height of the encoded image
+	 * @param orientation - The EXIF orientation, from 1 to 8
+	 * @param captured - When the photo was taken in milliseconds since the epoch, -1 if unknown
+	 * @param camera - The make and model of the camera, null if unknown
+	 */
+	public Metadata(int width, int height, int orientation, long captured, String camera) {
+		this.width = width;
+		this.height = height;
+		this.orientation = orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+		this.captured = captured;
+		this.camera = camera;
+	}
+	
+	/**
+	 * Reads the metadata of an image file from its header
+	 * @param file - The image file
+	 * @return The metadata, null if the file could not be read as an image
+	 */
+	public static Metadata read(File file) {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+			return read(iis);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the metadata of an image held in a buffer from its header
+	 * @param data - The buffer holding the encoded image, from its position to its limit
+	 * @return The metadata, null if the buffer could not be read as an image
+	 */
+	public static Metadata read(ByteBuffer data) {
+		try (ImageInputStream iis = new ByteBufferImageInputStream(data)) {
+			return read(iis);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the metadata of the first image of a stream
+	 * @param iis - The stream to read, closed by the caller
+	 * @return The metadata, null if no reader understands the stream
+	 * @throws IOException If the header could not be read
+	 */
+	private static Metadata read(ImageInputStream iis) throws IOException {
+		if(iis == null)
+			return null;
+		
+		byte[] exif;
+		iis.mark();
+		
+		try {
+			exif = findExif(iis);
+		} catch (IOException e) {
+			exif = null;
+		}
+		
+		iis.reset();
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		
+		if(!readers.hasNext())
+			return null;
+		
+		ImageReader reader = readers.next();
+		
+		try {
+			reader.setInput(iis, true, false);
+			int width = reader.getWidth(0), height = reader.getHeight(0);
+			return exif == null ? new Metadata(width, height, NORMAL, -1, null) : parseExif(width, height, exif);
+		} finally {
+			reader.dispose();
+		}
+	}
+	
+	/**
+	 * Finds the EXIF block among the marker segments at the start of a JPEG
+	 * @param iis - The stream, positioned at the start of the image
+	 * @return The EXIF block, null if the image is not a JPEG or has no EXIF
+	 * @throws IOException If the stream ended or could not be read
+	 */
+	private static byte[] findExif(ImageInputStream iis) throws IOException {
+		if(iis.read() != 0xFF || iis.read() != SOI)
+			return null;
+		
+		while(iis.read() == 0xFF) {
+			int marker = iis.read();
+			
+			while(marker == 0xFF)
+				marker = iis.read();
+			
+			if(marker < 0 || marker == SOS || marker == EOI)
+				return null;
+			
+			int length = iis.readUnsignedShort() - 2;
+			
+			if(length < 0)
+				return null;
+			
+			if(marker == APP1 && length >= EXIF.length) {
+				byte[] data = new byte[length];
+				iis.readFully(data);
+				
+				if(startsWith(data, EXIF))
+					return data;
+			} else {
+				iis.skipBytes(length);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the tags of interest from an EXIF block. A damaged block yields what could be read before the damage
+	 * @param width - The width of the encoded image
+	 * @param height - The height of the encoded image
+	 * @param exif - The EXIF block, starting with the EXIF identifier
+	 * @return The metadata
+	 */
+	private static Metadata parseExif(int width, int height, byte[] exif) {
+		ByteBuffer tiff = ByteBuffer.wrap(exif, EXIF.length, exif.length - EXIF.length).slice();
+		int orientation = NORMAL;
+		String make = null, model = null, date = null, original = null;
+		
+		try {
+			tiff.order(tiff.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			
+			int ifd = tiff.getInt(4);
+			int exifIfd = -1;
+			
+			for(int i = 0, count = tiff.getShort(ifd) & 0xFFFF; i < count; i++) {
+				int entry = ifd + 2 + i * 12;
+				
+				switch(tiff.getShort(entry) & 0xFFFF) {
+				case TAG_MAKE:
+					make = getString(tiff, entry);
+					break;
+				case TAG_MODEL:
+					model = getString(tiff, entry);
+					break;
+				case TAG_ORIENTATION:
+					orientation = (int) getNumber(tiff, entry);
+					break;
+				case TAG_DATE_TIME:
+					date = getString(tiff, entry);
+					break;
+				case TAG_EXIF_IFD:
+					exifIfd = (int) getNumber(tiff, entry);
+					break;
+				}
+			}
+			
+			for(int i = 0, count = exifIfd < 0 ? 0 : tiff.getShort(exifIfd) & 0xFFFF; i < count; i++) {
+				int entry = exifIfd + 2 + i * 12;
+				
+				if((tiff.getShort(entry) & 0xFFFF) == TAG_DATE_TIME_ORIGINAL)
+					original = getString(tiff, entry);
+			}
+		} catch (RuntimeException e) {
+			// Damaged EXIF is common, keep what was read
+		}
+		
+		return new Metadata(width, height, orientation, parseTime(original != null ? original : date), getCamera(make, model));
+	}
+	
+	/**
+	 * Reads the ASCII value of an IFD entry
+	 * @param tiff - The TIFF structure of the EXIF block
+	 * @param entry - The offset of the entry
+	 * @return The trimmed value, null if the entry is not ASCII or is empty
+	 */
+	private static String getString(ByteBuffer tiff, int entry) {
+		if((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII)
+			return null;
+		
+		int count = tiff.getInt(entry + 4);
+		int offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+		
+		if(count <= 0 || offset < 0 || offset + count > tiff.limit())
+			return null;
+		
+		byte[] bytes = new byte[count];
+		ByteBuffer value = tiff.duplicate();
+		value.position(offset);
+		value.get(bytes);
+		
+		String string = new String(bytes, StandardCharsets.ISO_8859_1);
+		int end = string.indexOf('\0');
+		string = (end < 0 ? string : string.substring(0, end)).trim();
+		return string.isEmpty() ? null : string;
+	}
+	
+	/**
+	 * Reads the numeric value of an IFD entry
+	 * @param tiff - The TIFF structure of the EXIF block
+	 * @param entry - The offset of the entry
+	 * @return The value, -1 if the entry is not a short or long
+	 */
+	private static long getNumber(ByteBuffer tiff, int entry) {
+		switch(tiff.getShort(entry + 2) & 0xFFFF) {
+		case TYPE_SHORT:
+			return tiff.getShort(entry + 8) & 0xFFFF;
+		case TYPE_LONG:
+			return tiff.getInt(entry + 8) & 0xFFFFFFFFL;
+		default:
+			return -1;
+		}
+	}
+	
+	/**
+	 * Parses an EXIF date, which is in the local time of the camera
+	 * @param date - The date in the form yyyy:MM:dd HH:mm:ss, may be null
+	 * @return The time in milliseconds since the epoch, -1 if the date is missing or invalid
+	 */
+	private static long parseTime(String date) {
+		if(date == null)
+			return -1;
+		
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+			format.setLenient(false);
+			return format.parse(date).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Joins the make and model of a camera, which often already starts with the make
+	 * @param make - The camera make, may be null
+	 * @param model - The camera model, may be null
+	 * @return The camera name, null if both are missing
+	 */
+	private static String getCamera(String make, String model) {
+		if(model == null)
+			return make;
+		if(make == null || model.toLowerCase().startsWith(make.toLowerCase()))
+			return model;
+		return make + " " + model;
+	}
+	
+	/**
+	 * Checks whether an array starts with a prefix
+	 * @param bytes - The array
+	 * @param prefix - The prefix
+	 * @return True if the array starts with the prefix
+	 */
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		if(bytes.length < prefix.length)
+			return false;
+		
+		for(int i = 0; i < prefix.length; i++) {
+			if(bytes[i] != prefix[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the dimensions of the encoded image
+	 * @return The image dimensions as stored
+	 */
+	public Dimension getSize() {
+		return new Dimension(width, height);
+	}
+	
+	/**
+	 * Gets the dimensions of the image once its orientation is applied
+	 * @return The image dimensions as displayed
+	 */
+	public Dimension getDisplaySize() {
+		return ImageUtils.isTransposed(orientation) ? new Dimension(height, width) : new Dimension(width, height);
+	}
+	
+	/**
+	 * Gets the EXIF orientation, which tells how the stored image must be turned to be upright
+	 * @return The orientation, from 1 to 8
+	 */
+	public int getOrientation() {
+		return orientation;
+	}
+	
+	/**
+	 * Gets when the photo was taken
+	 * @return The capture time in milliseconds since the epoch, -1 if unknown
+	 */
+	public long getCaptured() {
+		return captured;
+	}
+	
+	/**
+	 * Gets the camera the photo was taken with
+	 * @return The make and model of the camera, null if unknown
+	 */
+	public String getCamera() {
+		return camera;
+	}
+}
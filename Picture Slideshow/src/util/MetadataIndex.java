@@ -0,0 +1,285 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the metadata of image files in an index on disk, so it only has to be read from each file once.
+ *
+ * Entries are looked up by file path and are only trusted while the modification time and length of the
+ * file are unchanged. The index file lists every folder and camera name once and refers to them by number
+ * from the entries, so an entry takes a few dozen bytes. It is loaded on first use and written back when
+ * it has changed; entries of files which no longer exist are dropped when it is written.
+ */
+public final class MetadataIndex {
+	
+	private static final int MAGIC = 0x534C4D49;
+	private static final int VERSION = 1;
+	
+	private static final File FILE = new File(System.getProperty("slideshow.metadataIndex",
+			System.getProperty("user.home") + File.separator + ".slideshow" + File.separator + "metadata.idx"));
+	
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	
+	private static Map<File, Entry> entries;
+	private static volatile boolean dirty;
+	
+	private MetadataIndex() {}
+	
+	/**
+	 * Gets the metadata of an image file, reading it from the file header if the index has no current entry.
+	 * May be called from any thread
+	 * @param file - The image file
+	 * @return The metadata, null if the file could not be read as an image
+	 */
+	public static Metadata get(File file) {
+		file = file.getAbsoluteFile();
+		long modified, length;
+		
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			modified = attributes.lastModifiedTime().toMillis();
+			length = attributes.size();
+		} catch (IOException e) {
+			return null;
+		}
+		
+		Map<File, Entry> entries = getEntries();
+		Entry entry = entries.get(file);
+		
+		if(entry != null && entry.modified == modified && entry.length == length)
+			return entry.metadata;
+		
+		Metadata metadata = Metadata.read(file);
+		
+		if(metadata != null) {
+			entries.put(file, new Entry(modified, length, metadata));
+			dirty = true;
+		}
+		return metadata;
+	}
+	
+	/**
+	 * Brings the entries of many files up to date on a pool of threads, waiting until all are done
+	 * @param files - The image files
+	 */
+	public static void scan(Collection<File> files) {
+		if(files.size() < 2) {
+			for(File file: files)
+				get(file);
+			return;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, files.size()), r -> {
+			Thread thread = new Thread(r, "Metadata Scanner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		try {
+			List<Future<?>> pending = new ArrayList<Future<?>>();
+			
+			for(File file: files)
+				pending.add(executor.submit(() -> get(file)));
+			
+			for(Future<?> future: pending)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Writes the index to disk if it changed since it was loaded or last written, replacing the index file
+	 * atomically. May be called from any thread
+	 */
+	public static synchronized void save() {
+		if(!dirty)
+			return;
+		
+		dirty = false;
+		
+		Map<String, Integer> folders = new HashMap<String, Integer>();
+		Map<String, Integer> cameras = new HashMap<String, Integer>();
+		List<Map.Entry<File, Entry>> kept = new ArrayList<Map.Entry<File, Entry>>();
+		
+		for(Map.Entry<File, Entry> e: getEntries().entrySet()) {
+			if(!e.getKey().isFile())
+				continue;
+			
+			kept.add(e);
+			folders.putIfAbsent(e.getKey().getParent(), folders.size());
+			
+			String camera = e.getValue().metadata.getCamera();
+			
+			if(camera != null)
+				cameras.putIfAbsent(camera, cameras.size());
+		}
+		
+		try {
+			Path folder = FILE.getAbsoluteFile().getParentFile().toPath();
+			Files.createDirectories(folder);
+			Path temp = Files.createTempFile(folder, "metadata", ".tmp");
+			
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					writeTable(out, folders);
+					writeTable(out, cameras);
+					out.writeInt(kept.size());
+					
+					for(Map.Entry<File, Entry> e: kept) {
+						Entry entry = e.getValue();
+						Metadata metadata = entry.metadata;
+						String camera = metadata.getCamera();
+						
+						out.writeInt(folders.get(e.getKey().getParent()));
+						out.writeUTF(e.getKey().getName());
+						out.writeLong(entry.modified);
+						out.writeLong(entry.length);
+						out.writeInt(metadata.getSize().width);
+						out.writeInt(metadata.getSize().height);
+						out.writeByte(metadata.getOrientation());
+						out.writeLong(metadata.getCaptured());
+						out.writeInt(camera == null ? -1 : cameras.get(camera));
+					}
+				}
+				Files.move(temp, FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Gets the number of files in the index
+	 * @return The number of entries
+	 */
+	public static int size() {
+		return getEntries().size();
+	}
+	
+	/**
+	 * Gets the index entries, loading them from disk on first use
+	 * @return The entries by absolute file
+	 */
+	private static synchronized Map<File, Entry> getEntries() {
+		if(entries == null)
+			entries = load();
+		return entries;
+	}
+	
+	/**
+	 * Reads the index file
+	 * @return The entries read, empty if there is no index file or it could not be read
+	 */
+	private static Map<File, Entry> load() {
+		Map<File, Entry> loaded = new ConcurrentHashMap<File, Entry>();
+		
+		if(!FILE.isFile())
+			return loaded;
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FILE)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				return loaded;
+			
+			String[] folders = readTable(in);
+			String[] cameras = readTable(in);
+			
+			for(int i = 0, count = in.readInt(); i < count; i++) {
+				File file = new File(folders[in.readInt()], in.readUTF());
+				long modified = in.readLong();
+				long length = in.readLong();
+				int width = in.readInt();
+				int height = in.readInt();
+				int orientation = in.readByte();
+				long captured = in.readLong();
+				int camera = in.readInt();
+				
+				loaded.put(file, new Entry(modified, length, new Metadata(width, height, orientation, captured, camera < 0 ? null : cameras[camera])));
+			}
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			loaded.clear();
+		}
+		return loaded;
+	}
+	
+	/**
+	 * Writes a table of strings in the order of their numbers
+	 * @param out - The stream to write to
+	 * @param table - The strings and their numbers
+	 * @throws IOException If the table could not be written
+	 */
+	private static void writeTable(DataOutputStream out, Map<String, Integer> table) throws IOException {
+		String[] strings = new String[table.size()];
+		
+		for(Map.Entry<String, Integer> e: table.entrySet())
+			strings[e.getValue()] = e.getKey();
+		
+		out.writeInt(strings.length);
+		
+		for(String string: strings)
+			out.writeUTF(string);
+	}
+	
+	/**
+	 * Reads a table of strings
+	 * @param in - The stream to read from
+	 * @return The strings, indexed by their numbers
+	 * @throws IOException If the table could not be read
+	 */
+	private static String[] readTable(DataInputStream in) throws IOException {
+		String[] strings = new String[in.readInt()];
+		
+		for(int i = 0; i < strings.length; i++)
+			strings[i] = in.readUTF();
+		return strings;
+	}
+	
+	/**
+	 * The metadata of a file, with the state of the file it was read from
+	 */
+	private static class Entry {
+		
+		private final long modified, length;
+		private final Metadata metadata;
+		
+		/**
+		 * Constructor
+		 * @param modified - The modification time of the file
+		 * @param length - The length of the file
+		 * @param metadata - The metadata read from the file
+		 */
+		private Entry(long modified, long length, Metadata metadata) {
+			this.modified = modified;
+			this.length = length;
+			this.metadata = metadata;
+		}
+	}
+}
@@ -0,0 +1,450 @@
+package util;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A registry of performance metrics for the slide show.
+ *
+ * The time taken by each stage of showing a slide is recorded in a histogram, along with the hit rates of
+ * the caches and the memory held by decoded slides. Stages are timed by taking a start time before the
+ * work and stopping it afterwards. While the registry is disabled the start time is 0 and stopping it
+ * returns straight away, so the instrumentation costs a single volatile read. The registry is enabled with
+ * the slideshow.metrics property, from the performance overlay, or over JMX.
+ *
+ * Every recorded stage is also committed as a Java Flight Recorder event when the runtime supports
+ * defining events, so the stages line up with the rest of a flight recording.
+ */
+public final class Metrics {
+	
+	/**
+	 * The timed stages
+	 */
+	public enum Stage {
+		DECODE("Decode"), SCALE("Scale"), PAINT("Paint"), FRAME("Transition Frame");
+		
+		private final String label;
+		
+		private Stage(String label) {
+			this.label = label;
+		}
+		
+		/**
+		 * Gets the name of the stage shown to the user
+		 * @return The label
+		 */
+		public String getLabel() {
+			return label;
+		}
+	}
+	
+	/**
+	 * The caches whose hit rates are counted here; the frame cache keeps its own counters
+	 */
+	public enum Cache {
+		THUMBNAIL, DOWNLOAD
+	}
+	
+	/**
+	 * The statistics of a stage at one point in time
+	 */
+	public static class Summary {
+		
+		private final long count;
+		private final double mean, median, p99, max;
+		
+		/**
+		 * Constructor
+		 * @param count - The number of recorded values
+		 * @param mean - The mean in milliseconds
+		 * @param median - The median in milliseconds
+		 * @param p99 - The 99th percentile in milliseconds
+		 * @param max - The maximum in milliseconds
+		 */
+		@ConstructorProperties({"count", "mean", "median", "p99", "max"})
+		public Summary(long count, double mean, double median, double p99, double max) {
+			this.count = count;
+			this.mean = mean;
+			this.median = median;
+			this.p99 = p99;
+			this.max = max;
+		}
+		
+		/**
+		 * @return The number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * @return The mean in milliseconds
+		 */
+		public double getMean() {
+			return mean;
+		}
+		
+		/**
+		 * @return The median in milliseconds
+		 */
+		public double getMedian() {
+			return median;
+		}
+		
+		/**
+		 * @return The 99th percentile in milliseconds
+		 */
+		public double getP99() {
+			return p99;
+		}
+		
+		/**
+		 * @return The maximum in milliseconds
+		 */
+		public double getMax() {
+			return max;
+		}
+	}
+	
+	private static final String OBJECT_NAME = "slideshow:type=Metrics";
+	
+	private static final Histogram[] histograms = new Histogram[Stage.values().length];
+	private static final AtomicLongArray hits = new AtomicLongArray(Cache.values().length);
+	private static final AtomicLongArray misses = new AtomicLongArray(Cache.values().length);
+	private static final AtomicLong slideBytes = new AtomicLong();
+	
+	private static volatile boolean enabled;
+	private static boolean registered;
+	
+	static {
+		for(int i = 0; i < histograms.length; i++)
+			histograms[i] = new Histogram();
+		
+		setEnabled(Boolean.getBoolean("slideshow.metrics"));
+	}
+	
+	/**
+	 * Private Constructor
+	 */
+	private Metrics() {}
+	
+	/**
+	 * Starts timing a stage
+	 * @return The start time to pass to stop, 0 if metrics are disabled
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+	
+	/**
+	 * Stops timing a stage and records the time it took
+	 * @param stage - The timed stage
+	 * @param start - The start time returned by start
+	 */
+	public static void stop(Stage stage, long start) {
+		if(start != 0)
+			record(stage, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Records the time a stage took
+	 * @param stage - The timed stage
+	 * @param nanos - The time taken in nanoseconds
+	 */
+	public static void record(Stage stage, long nanos) {
+		if(!enabled)
+			return;
+		
+		histograms[stage.ordinal()].record(nanos);
+		JfrEvents.commit(stage, nanos);
+	}
+	
+	/**
+	 * Counts a lookup which found its entry in a cache
+	 * @param cache - The cache looked up
+	 */
+	public static void hit(Cache cache) {
+		if(enabled)
+			hits.incrementAndGet(cache.ordinal());
+	}
+	
+	/**
+	 * Counts a lookup which did not find its entry in a cache
+	 * @param cache - The cache looked up
+	 */
+	public static void miss(Cache cache) {
+		if(enabled)
+			misses.incrementAndGet(cache.ordinal());
+	}
+	
+	/**
+	 * Tracks the memory held by decoded slide images. This is counted even while metrics are
+	 * disabled so the total stays correct when they are enabled later
+	 * @param bytes - The number of bytes decoded, negative when an image is released
+	 */
+	public static void addSlideBytes(long bytes) {
+		slideBytes.addAndGet(bytes);
+	}
+	
+	/**
+	 * Gets the memory held by decoded slide images
+	 * @return The number of bytes
+	 */
+	public static long getSlideBytes() {
+		return slideBytes.get();
+	}
+	
+	/**
+	 * Gets the histogram of a stage
+	 * @param stage - The timed stage
+	 * @return The histogram of the stage
+	 */
+	public static Histogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+	
+	/**
+	 * Gets the statistics of a stage
+	 * @param stage - The timed stage
+	 * @return The current statistics of the stage
+	 */
+	public static Summary getSummary(Stage stage) {
+		Histogram histogram = getHistogram(stage);
+		return new Summary(histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+				histogram.getPercentile(99), histogram.getMax());
+	}
+	
+	/**
+	 * Gets the share of lookups which found their entry in a cache
+	 * @param cache - The cache looked up
+	 * @return The hit rate from 0 to 1, 0 if there were no lookups
+	 */
+	public static double getHitRate(Cache cache) {
+		return getHitRate(hits.get(cache.ordinal()), misses.get(cache.ordinal()));
+	}
+	
+	/**
+	 * Gets the share of frame cache lookups which found a frame
+	 * @return The hit rate from 0 to 1, 0 if there were no lookups
+	 */
+	public static double getFrameHitRate() {
+		return getHitRate(FrameCache.getHits(), FrameCache.getMisses());
+	}
+	
+	/**
+	 * Enables or disables recording
+	 * @param enabled - True to record metrics
+	 */
+	public static void setEnabled(boolean enabled) {
+		if(enabled)
+			JfrEvents.init();
+		
+		Metrics.enabled = enabled;
+	}
+	
+	/**
+	 * Checks whether metrics are being recorded
+	 * @return True if metrics are recorded
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Clears every histogram and counter, except the memory held by decoded slides
+	 */
+	public static void reset() {
+		for(Histogram histogram: histograms)
+			histogram.reset();
+		
+		for(int i = 0; i < hits.length(); i++) {
+			hits.set(i, 0);
+			misses.set(i, 0);
+		}
+		
+		FrameCache.resetCounters();
+	}
+	
+	/**
+	 * Registers the metrics with the platform MBean server so they can be read and controlled over JMX.
+	 * Registering more than once has no effect
+	 */
+	public static synchronized void register() {
+		if(registered)
+			return;
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+			registered = true;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Gets the share of lookups which were hits
+	 * @param hits - The number of hits
+	 * @param misses - The number of misses
+	 * @return The hit rate from 0 to 1, 0 if there were no lookups
+	 */
+	private static double getHitRate(long hits, long misses) {
+		return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+	}
+	
+	/**
+	 * The management interface of the metrics
+	 */
+	public interface MetricsMXBean {
+		
+		/**
+		 * @return True if metrics are recorded
+		 */
+		boolean isEnabled();
+		
+		/**
+		 * @param enabled - True to record metrics
+		 */
+		void setEnabled(boolean enabled);
+		
+		/**
+		 * Clears every histogram and counter
+		 */
+		void reset();
+		
+		/**
+		 * @return The statistics of decoding images
+		 */
+		Summary getDecode();
+		
+		/**
+		 * @return The statistics of scaling images
+		 */
+		Summary getScale();
+		
+		/**
+		 * @return The statistics of painting slides
+		 */
+		Summary getPaint();
+		
+		/**
+		 * @return The statistics of transition frame times
+		 */
+		Summary getTransitionFrame();
+		
+		/**
+		 * @return The memory held by decoded slides in bytes
+		 */
+		long getSlideBytes();
+		
+		/**
+		 * @return The memory held by the frame cache in bytes, on or off the heap
+		 */
+		long getFrameCacheBytes();
+		
+		/**
+		 * @return The heap memory held by the frame cache in bytes
+		 */
+		long getFrameCacheHeapBytes();
+		
+		/**
+		 * @return The memory budget of the frame cache in bytes
+		 */
+		long getFrameCacheBudget();
+		
+		/**
+		 * @return The frame cache hit rate from 0 to 1
+		 */
+		double getFrameCacheHitRate();
+		
+		/**
+		 * @return The thumbnail cache hit rate from 0 to 1
+		 */
+		double getThumbnailHitRate();
+		
+		/**
+		 * @return The download cache hit rate from 0 to 1
+		 */
+		double getDownloadHitRate();
+	}
+	
+	/**
+	 * Exposes the registry over JMX
+	 */
+	private static class Bean implements MetricsMXBean {
+		
+		@Override
+		public boolean isEnabled() {
+			return Metrics.isEnabled();
+		}
+		
+		@Override
+		public void setEnabled(boolean enabled) {
+			Metrics.setEnabled(enabled);
+		}
+		
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+		
+		@Override
+		public Summary getDecode() {
+			return getSummary(Stage.DECODE);
+		}
+		
+		@Override
+		public Summary getScale() {
+			return getSummary(Stage.SCALE);
+		}
+		
+		@Override
+		public Summary getPaint() {
+			return getSummary(Stage.PAINT);
+		}
+		
+		@Override
+		public Summary getTransitionFrame() {
+			return getSummary(Stage.FRAME);
+		}
+		
+		@Override
+		public long getSlideBytes() {
+			return Metrics.getSlideBytes();
+		}
+		
+		@Override
+		public long getFrameCacheBytes() {
+			return FrameCache.getSize();
+		}
+		
+		@Override
+		public long getFrameCacheHeapBytes() {
+			return FrameCache.getHeapSize();
+		}
+		
+		@Override
+		public long getFrameCacheBudget() {
+			return FrameCache.getBudget();
+		}
+		
+		@Override
+		public double getFrameCacheHitRate() {
+			return getFrameHitRate();
+		}
+		
+		@Override
+		public double getThumbnailHitRate() {
+			return getHitRate(Cache.THUMBNAIL);
+		}
+		
+		@Override
+		public double getDownloadHitRate() {
+			return getHitRate(Cache.DOWNLOAD);
+		}
+	}
+}
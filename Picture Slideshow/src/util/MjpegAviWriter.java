@@ -0,0 +1,212 @@
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a Motion-JPEG video in an AVI file.
+ *
+ * Every frame is a complete JPEG stored as its own chunk, so any frame can be written without knowing
+ * the others. The headers are written first with placeholders and filled in on close, once the number
+ * of frames and the largest frame are known, followed by the index most players need to seek. The file
+ * follows AVI 1.0 and is limited to 2 GB.
+ *
+ * <pre>
+ * RIFF 'AVI '
+ *   LIST 'hdrl'  avih, LIST 'strl' (strh, strf)
+ *   LIST 'movi'  '00dc' chunk per frame
+ *   idx1         offset and size of each frame chunk
+ * </pre>
+ */
+public class MjpegAviWriter implements Closeable {
+	
+	private static final int AVIF_HASINDEX = 0x10;
+	private static final int AVIIF_KEYFRAME = 0x10;
+	private static final long MAX_SIZE = Integer.MAX_VALUE;
+	
+	private static final int HEADER_SIZE = 224;
+	private static final int AVIH_FRAMES = 48;
+	private static final int AVIH_MAX_BYTES = 36;
+	private static final int AVIH_BUFFER = 60;
+	private static final int STRH_LENGTH = 140;
+	private static final int STRH_BUFFER = 144;
+	private static final int MOVI_SIZE = HEADER_SIZE - 8;
+	private static final int MOVI_START = HEADER_SIZE - 4;
+	
+	private final FileChannel channel;
+	private final int width, height, frameRate;
+	private final ByteBuffer chunk;
+	private ByteBuffer index;
+	private int frames, largest;
+	
+	/**
+	 * Constructor; creates or replaces the file
+	 * @param file - The file to write
+	 * @param width - The width of every frame
+	 * @param height - The height of every frame
+	 * @param frameRate - The number of frames per second
+	 * @throws IOException If the file could not be created
+	 */
+	public MjpegAviWriter(File file, int width, int height, int frameRate) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.frameRate = frameRate;
+		this.chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		this.index = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		
+		writeFully(header());
+	}
+	
+	/**
+	 * Appends a frame
+	 * @param jpeg - The buffer holding the JPEG encoded frame
+	 * @throws IOException If the frame could not be written or the file would grow beyond 2 GB
+	 */
+	public void write(ByteBuffer jpeg) throws IOException {
+		int length = jpeg.remaining();
+		long offset = channel.position();
+		
+		if(offset + length + 8 + (frames + 1L) * 16 + 8 > MAX_SIZE)
+			throw new IOException("Video would exceed the AVI size limit of 2 GB");
+		
+		chunk.clear();
+		chunk.put(fourcc("00dc")).putInt(length).flip();
+		writeFully(chunk);
+		writeFully(jpeg.duplicate());
+		
+		if((length & 1) != 0) {
+			chunk.clear();
+			chunk.put((byte) 0).flip();
+			writeFully(chunk);
+		}
+		
+		if(index.remaining() < 16) {
+			ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+			index.flip();
+			index = grown.put(index);
+		}
+		
+		index.put(fourcc("00dc")).putInt(AVIIF_KEYFRAME).putInt((int) (offset - MOVI_START)).putInt(length);
+		frames++;
+		largest = Math.max(largest, length);
+	}
+	
+	/**
+	 * Appends the same frame several times, for slides shown longer than one frame
+	 * @param jpeg - The buffer holding the JPEG encoded frame
+	 * @param count - The number of times to write the frame
+	 * @throws IOException If the frames could not be written
+	 */
+	public void write(ByteBuffer jpeg, int count) throws IOException {
+		for(int i = 0; i < count; i++)
+			write(jpeg);
+	}
+	
+	/**
+	 * Gets the number of frames written
+	 * @return The number of frames
+	 */
+	public int getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * Writes the index, fills in the headers and closes the file
+	 * @throws IOException If the file could not be completed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			long moviEnd = channel.position();
+			
+			index.flip();
+			chunk.clear();
+			chunk.put(fourcc("idx1")).putInt(index.remaining()).flip();
+			writeFully(chunk);
+			writeFully(index);
+			
+			long end = channel.position();
+			
+			patch(4, (int) (end - 8));
+			patch(AVIH_MAX_BYTES, (int) Math.min(Integer.MAX_VALUE, (long) largest * frameRate));
+			patch(AVIH_FRAMES, frames);
+			patch(AVIH_BUFFER, largest);
+			patch(STRH_LENGTH, frames);
+			patch(STRH_BUFFER, largest);
+			patch(MOVI_SIZE, (int) (moviEnd - MOVI_SIZE - 4));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Builds the headers up to the start of the movi list, with placeholders for the counts and sizes
+	 * @return The header, ready to be written
+	 */
+	private ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		
+		header.put(fourcc("RIFF")).putInt(0).put(fourcc("AVI "));
+		header.put(fourcc("LIST")).putInt(192).put(fourcc("hdrl"));
+		
+		header.put(fourcc("avih")).putInt(56);
+		header.putInt(1000000 / frameRate).putInt(0).putInt(0).putInt(AVIF_HASINDEX);
+		header.putInt(0).putInt(0).putInt(1).putInt(0);
+		header.putInt(width).putInt(height).putInt(0).putInt(0).putInt(0).putInt(0);
+		
+		header.put(fourcc("LIST")).putInt(116).put(fourcc("strl"));
+		
+		header.put(fourcc("strh")).putInt(56);
+		header.put(fourcc("vids")).put(fourcc("MJPG")).putInt(0).putShort((short) 0).putShort((short) 0);
+		header.putInt(0).putInt(1).putInt(frameRate).putInt(0).putInt(0).putInt(0).putInt(-1).putInt(0);
+		header.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+		
+		header.put(fourcc("strf")).putInt(40);
+		header.putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) 24);
+		header.put(fourcc("MJPG")).putInt(width * height * 3).putInt(0).putInt(0).putInt(0).putInt(0);
+		
+		header.put(fourcc("LIST")).putInt(0).put(fourcc("movi"));
+		header.flip();
+		return header;
+	}
+	
+	/**
+	 * Overwrites a header field
+	 * @param position - The position of the field in the file
+	 * @param value - The new value
+	 * @throws IOException If the field could not be written
+	 */
+	private void patch(long position, int value) throws IOException {
+		chunk.clear();
+		chunk.putInt(value).flip();
+		channel.position(position);
+		writeFully(chunk);
+	}
+	
+	/**
+	 * Writes the whole buffer at the current channel position
+	 * @param buffer - The buffer to write
+	 * @throws IOException If the write failed
+	 */
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+	
+	/**
+	 * Gets the bytes of a four character code
+	 * @param code - The four character code
+	 * @return The code as ASCII bytes
+	 */
+	private static byte[] fourcc(String code) {
+		return code.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,103 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Computes 64 bit perceptual hashes of images.
+ *
+ * The image is reduced to a 32 by 32 grayscale copy and transformed with a discrete cosine transform. Each
+ * bit of the hash records whether one of the 64 lowest frequencies, apart from the average brightness, is
+ * above their median. Copies of an image which were resized, recompressed or slightly retouched have hashes
+ * which differ in only a few bits, so the Hamming distance between two hashes measures how alike two
+ * images look.
+ */
+public final class PerceptualHash {
+	
+	/**
+	 * The size of the grayscale copy; images only need decoding at this size to be hashed
+	 */
+	public static final int SIZE = 32;
+	
+	private static final int BITS = 8;
+	private static final double[][] COSINES = new double[BITS][SIZE];
+	
+	static {
+		for(int u = 0; u < BITS; u++) {
+			for(int x = 0; x < SIZE; x++)
+				COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SIZE));
+		}
+	}
+	
+	/**
+	 * Private Constructor
+	 */
+	private PerceptualHash() {}
+	
+	/**
+	 * Computes the hash of an image
+	 * @param image - The image to hash, of any size
+	 * @return The perceptual hash
+	 */
+	public static long of(BufferedImage image) {
+		BufferedImage small = image.getWidth() == SIZE && image.getHeight() == SIZE ? image
+				: ImageUtils.force(image, SIZE, SIZE, ImageUtils.Quality.BALANCED);
+		
+		int[] rgb = small.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+		double[] gray = new double[SIZE * SIZE];
+		
+		for(int i = 0; i < gray.length; i++) {
+			int pixel = rgb[i];
+			gray[i] = 0.299 * (pixel >> 16 & 0xFF) + 0.587 * (pixel >> 8 & 0xFF) + 0.114 * (pixel & 0xFF);
+		}
+		
+		double[] rows = new double[BITS * SIZE];
+		
+		for(int u = 0; u < BITS; u++) {
+			for(int y = 0; y < SIZE; y++) {
+				double sum = 0;
+				
+				for(int x = 0; x < SIZE; x++)
+					sum += COSINES[u][x] * gray[y * SIZE + x];
+				
+				rows[u * SIZE + y] = sum;
+			}
+		}
+		
+		double[] coefficients = new double[BITS * BITS];
+		
+		for(int u = 0; u < BITS; u++) {
+			for(int v = 0; v < BITS; v++) {
+				double sum = 0;
+				
+				for(int y = 0; y < SIZE; y++)
+					sum += COSINES[v][y] * rows[u * SIZE + y];
+				
+				coefficients[v * BITS + u] = sum;
+			}
+		}
+		
+		double[] sorted = new double[coefficients.length - 1];
+		System.arraycopy(coefficients, 1, sorted, 0, sorted.length);
+		Arrays.sort(sorted);
+		double median = (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+		
+		long hash = 0;
+		
+		for(int i = 0; i < coefficients.length; i++) {
+			if(i > 0 && coefficients[i] > median)
+				hash |= 1L << i;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Counts the bits in which two hashes differ
+	 * @param a - The first hash
+	 * @param b - The second hash
+	 * @return The Hamming distance, from 0 for images which look the same to 64
+	 */
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+}
@@ -0,0 +1,240 @@
+package util;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Advances the slide show automatically on a fixed wall clock cadence.
+ *
+ * Every slide switch has a deadline, the previous deadline plus the duration of the slide shown before it,
+ * so time spent decoding and painting never pushes later switches back. The scheduler fires early by the
+ * time switching has recently taken, so the new slide is on screen at its deadline rather than starting
+ * to appear then. The upcoming slides are decoded and scaled ahead of time by the prefetcher, which the
+ * listener drives as it moves to each slide.
+ *
+ * A switch which finishes later than the tolerance after its deadline counts as a missed deadline. If
+ * playback falls more than a whole slide behind, for example after the computer was asleep, the cadence
+ * restarts from the current time instead of rushing through the missed slides.
+ */
+public class Playback {
+	
+	/**
+	 * Moves the slide show on the event dispatch thread
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called when the next slide is due. The slide should be shown before returning, so the time taken
+		 * to show it is accounted for
+		 * @return The index of the slide now shown
+		 */
+		int advance();
+	}
+	
+	public static final long DEFAULT_DURATION = 5000;
+	
+	private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("slideshow.playbackTolerance", 50));
+	private static final double SMOOTHING = 0.25;
+	
+	private final List<Slide> slides;
+	private final Listener listener;
+	private final LongSupplier clock;
+	private final ScheduledExecutorService scheduler;
+	
+	private ScheduledFuture<?> pending;
+	private long defaultDuration = DEFAULT_DURATION;
+	private long deadline, cost;
+	private int generation, advances, missed;
+	private long lateness, maxLateness;
+	private boolean playing;
+	
+	/**
+	 * Constructor
+	 * @param slides - The slides in the slide show
+	 * @param listener - The listener moving the slide show
+	 */
+	public Playback(List<Slide> slides, Listener listener) {
+		this(slides, listener, System::nanoTime, Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Slide Playback");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY + 1);
+			return thread;
+		}));
+	}
+	
+	/**
+	 * Constructor with the clock and scheduler to use, so the deadlines can be tested without waiting
+	 * @param slides - The slides in the slide show
+	 * @param listener - The listener moving the slide show
+	 * @param clock - The time in nanoseconds, System.nanoTime outside of tests
+	 * @param scheduler - The scheduler of the switches, shut down by shutdown
+	 */
+	public Playback(List<Slide> slides, Listener listener, LongSupplier clock, ScheduledExecutorService scheduler) {
+		this.slides = slides;
+		this.listener = listener;
+		this.clock = clock;
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * Starts playback, showing the current slide for its full duration first.
+	 * Must be called on the event dispatch thread
+	 * @param current - The index of the slide currently shown
+	 */
+	public void start(int current) {
+		stop();
+		
+		if(slides.isEmpty())
+			return;
+		
+		playing = true;
+		deadline = clock.getAsLong() + getDuration(current);
+		schedule();
+	}
+	
+	/**
+	 * Stops playback. Must be called on the event dispatch thread
+	 */
+	public void stop() {
+		playing = false;
+		generation++;
+		
+		if(pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+	
+	/**
+	 * Checks whether the slide show is playing
+	 * @return True if playback is running
+	 */
+	public boolean isPlaying() {
+		return playing;
+	}
+	
+	/**
+	 * Sets how long slides without their own duration are shown; takes effect from the next switch
+	 * @param duration - The default duration in milliseconds
+	 */
+	public void setDefaultDuration(long duration) {
+		defaultDuration = Math.max(1, duration);
+	}
+	
+	/**
+	 * Gets how long slides without their own duration are shown
+	 * @return The default duration in milliseconds
+	 */
+	public long getDefaultDuration() {
+		return defaultDuration;
+	}
+	
+	/**
+	 * Gets the number of slide switches made since the counters were reset
+	 * @return The number of switches
+	 */
+	public int getAdvances() {
+		return advances;
+	}
+	
+	/**
+	 * Gets the number of slide switches which finished later than the tolerance after their deadline
+	 * @return The number of missed deadlines
+	 */
+	public int getMissed() {
+		return missed;
+	}
+	
+	/**
+	 * Gets how late the last slide switch finished relative to its deadline
+	 * @return The lateness in milliseconds, negative if the switch finished early
+	 */
+	public double getLateness() {
+		return lateness / 1e6;
+	}
+	
+	/**
+	 * Gets the latest any slide switch finished since the counters were reset
+	 * @return The maximum lateness in milliseconds
+	 */
+	public double getMaxLateness() {
+		return maxLateness / 1e6;
+	}
+	
+	/**
+	 * Resets the switch, missed deadline and lateness counters
+	 */
+	public void resetCounters() {
+		advances = 0;
+		missed = 0;
+		lateness = 0;
+		maxLateness = 0;
+	}
+	
+	/**
+	 * Stops the playback thread
+	 */
+	public void shutdown() {
+		stop();
+		scheduler.shutdownNow();
+	}
+	
+	/**
+	 * Schedules the next switch to start early by the recent switch cost
+	 */
+	private void schedule() {
+		int id = generation;
+		long delay = deadline - cost - clock.getAsLong();
+		
+		pending = scheduler.schedule(() -> SwingUtilities.invokeLater(() -> tick(id)), Math.max(0, delay), TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Switches to the next slide on the event dispatch thread and schedules the switch after it
+	 * @param id - The generation the switch was scheduled in, stale switches are ignored
+	 */
+	private void tick(int id) {
+		if(id != generation || !playing)
+			return;
+		
+		if(slides.isEmpty()) {
+			stop();
+			return;
+		}
+		
+		long start = clock.getAsLong();
+		int index = listener.advance();
+		long end = clock.getAsLong();
+		
+		cost = (long) (cost + SMOOTHING * ((end - start) - cost));
+		lateness = end - deadline;
+		maxLateness = Math.max(maxLateness, lateness);
+		advances++;
+		
+		if(lateness > TOLERANCE)
+			missed++;
+		
+		deadline += getDuration(index);
+		
+		if(deadline - cost < end)
+			deadline = end + getDuration(index);
+		
+		schedule();
+	}
+	
+	/**
+	 * Gets how long a slide is shown
+	 * @param index - The index of the slide
+	 * @return The duration in nanoseconds
+	 */
+	private long getDuration(int index) {
+		long duration = index >= 0 && index < slides.size() ? slides.get(index).getDuration() : 0;
+		return TimeUnit.MILLISECONDS.toNanos(duration > 0 ? duration : defaultDuration);
+	}
+}
@@ -0,0 +1,173 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decodes and scales the slides the user is likely to show next on a background thread.
+ *
+ * The navigation direction is predicted from the last move. The slides ahead in that direction are
+ * prefetched first, followed by the slide behind. Finished frames are handed to the frame cache on the
+ * event dispatch thread, so showing a prefetched slide only has to draw the cached frame. The decoded
+ * image is released once its frame is made, since the frame is all that is needed to show the slide and
+ * is held off the heap. Each move cancels the work queued for the previous one.
+ */
+public class Prefetcher {
+	
+	private final List<Slide> slides;
+	private final SlideWindow window;
+	private final ExecutorService executor;
+	private final List<Future<?>> pending;
+	
+	private int depth;
+	private int last = -1;
+	private int direction = 1;
+	private volatile int generation;
+	
+	/**
+	 * Constructor
+	 * @param slides - The slides in the slide show
+	 * @param window - The window limiting which slides may stay decoded
+	 * @param depth - The number of slides to prefetch in the predicted direction
+	 */
+	public Prefetcher(List<Slide> slides, SlideWindow window, int depth) {
+		this.slides = slides;
+		this.window = window;
+		this.depth = depth;
+		this.pending = new ArrayList<Future<?>>();
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "Slide Prefetcher");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Records a move to a new slide and prefetches the slides around it.
+	 * Must be called on the event dispatch thread
+	 * @param index - The index of the slide now displayed
+	 * @param width - The width of the area the slides are displayed in
+	 * @param height - The height of the area the slides are displayed in
+	 */
+	public void navigated(int index, int width, int height) {
+		cancel();
+		
+		int size = slides.size();
+		
+		if(size == 0 || width <= 0 || height <= 0)
+			return;
+		
+		if(last >= 0 && last != index) {
+			int delta = Math.floorMod(index - last, size);
+			direction = delta <= size / 2 ? 1 : -1;
+		}
+		last = index;
+		
+		List<Slide> targets = new ArrayList<Slide>();
+		
+		for(int i = 1; i <= depth; i++)
+			addTarget(targets, slides.get(Math.floorMod(index + i * direction, size)));
+		
+		addTarget(targets, slides.get(Math.floorMod(index - direction, size)));
+		targets.remove(slides.get(index));
+		
+		int id = generation;
+		
+		for(Slide slide: targets) {
+			if(!FrameCache.contains(slide, width, height))
+				pending.add(executor.submit(() -> prefetch(slide, width, height, id)));
+		}
+	}
+	
+	/**
+	 * Cancels all prefetching which has not finished yet
+	 */
+	public void cancel() {
+		generation++;
+		
+		for(Future<?> future: pending)
+			future.cancel(false);
+		
+		pending.clear();
+	}
+	
+	/**
+	 * Forgets the navigation history, for when the slide show is replaced
+	 */
+	public void reset() {
+		cancel();
+		last = -1;
+		direction = 1;
+	}
+	
+	/**
+	 * Stops the prefetch thread
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Sets the number of slides to prefetch in the predicted direction
+	 * @param depth - The new prefetch depth
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+	
+	/**
+	 * Gets the number of slides prefetched in the predicted direction
+	 * @return The prefetch depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Adds a slide to the list of slides to prefetch if it is not already in it
+	 * @param targets - The slides to prefetch
+	 * @param slide - The slide to add
+	 */
+	private static void addTarget(List<Slide> targets, Slide slide) {
+		if(!targets.contains(slide))
+			targets.add(slide);
+	}
+	
+	/**
+	 * Decodes and scales a slide on the prefetch thread, abandoning the work if a newer move was made
+	 * @param slide - The slide to prefetch
+	 * @param width - The width of the area the slide will be displayed in
+	 * @param height - The height of the area the slide will be displayed in
+	 * @param id - The generation of the move the work was queued for
+	 */
+	private void prefetch(Slide slide, int width, int height, int id) {
+		if(id != generation)
+			return;
+		
+		BufferedImage image = slide.getImage();
+		
+		if(image == null || !window.contains(slide)) {
+			slide.release();
+			return;
+		}
+		
+		if(id != generation) {
+			if(!window.contains(slide))
+				slide.release();
+			return;
+		}
+		
+		BufferedImage frame = ImageUtils.toCompatible(ImageUtils.resize(image, width, height));
+		slide.release();
+		
+		SwingUtilities.invokeLater(() -> FrameCache.put(slide, width, height, frame));
+	}
+}
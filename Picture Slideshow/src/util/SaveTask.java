@@ -0,0 +1,130 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Saves a slide show on a background thread.
+ *
+ * The slides to save are copied when the task is created, so the slide show can be edited while it is
+ * being saved. Saves run one at a time on a single writer thread. Progress and the final result, including
+ * the write throughput, are reported to the listener on the event dispatch thread.
+ */
+public class SaveTask {
+	
+	/**
+	 * Receives the progress of a save on the event dispatch thread
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called after each slide has been written
+		 * @param done - The number of slides written so far
+		 * @param total - The number of slides being saved
+		 * @param bytesPerSecond - The write throughput so far
+		 */
+		void progress(int done, int total, double bytesPerSecond);
+		
+		/**
+		 * Called once when the save is over
+		 * @param error - The error which stopped the save, null if it completed or was cancelled
+		 * @param cancelled - True if the save was cancelled
+		 * @param bytes - The number of bytes written
+		 * @param bytesPerSecond - The write throughput
+		 */
+		void finished(IOException error, boolean cancelled, long bytes, double bytesPerSecond);
+	}
+	
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Slide Show Writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private final File file;
+	private final List<Slide> slides;
+	private final Listener listener;
+	
+	private Future<?> future;
+	private volatile boolean cancelled;
+	
+	/**
+	 * Constructor
+	 * @param file - The file to save to
+	 * @param slides - The slides to save
+	 * @param listener - The listener receiving the progress of the save
+	 */
+	public SaveTask(File file, List<Slide> slides, Listener listener) {
+		this.file = file;
+		this.slides = new ArrayList<Slide>(slides);
+		this.listener = listener;
+	}
+	
+	/**
+	 * Queues the save on the writer thread
+	 */
+	public void start() {
+		future = executor.submit(this::save);
+	}
+	
+	/**
+	 * Cancels the save. Any existing file is left as it was before the save
+	 */
+	public void cancel() {
+		cancelled = true;
+		
+		if(future != null)
+			future.cancel(true);
+	}
+	
+	/**
+	 * Checks whether the save was cancelled
+	 * @return True if the save was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * Writes the slides on the writer thread
+	 */
+	private void save() {
+		long start = System.nanoTime();
+		IOException error = null;
+		long bytes = 0;
+		
+		try {
+			bytes = SlideFile.write(file, slides, (done, written) -> {
+				double rate = throughput(written, start);
+				SwingUtilities.invokeLater(() -> listener.progress(done, slides.size(), rate));
+			});
+		} catch (IOException e) {
+			if(!cancelled)
+				error = e;
+		}
+		
+		IOException result = error;
+		long written = bytes;
+		double rate = throughput(bytes, start);
+		
+		SwingUtilities.invokeLater(() -> listener.finished(result, cancelled, written, rate));
+	}
+	
+	/**
+	 * Calculates the write throughput
+	 * @param bytes - The number of bytes written
+	 * @param start - The time the save started, in nanoseconds
+	 * @return The number of bytes written per second
+	 */
+	private static double throughput(long bytes, long start) {
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		return bytes * 1e9 / elapsed;
+	}
+}
@@ -0,0 +1,434 @@
+package util;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A single slide in a slide show.
+ *
+ * A slide only keeps a reference to where its image comes from, either a file or the encoded image bytes,
+ * and decodes the image on demand. The encoded bytes may live outside the heap, such as in a memory mapped
+ * slide show file. The decoded image can be released at any time and will be decoded
+ * again the next time it is needed.
+ *
+ * When decode bounds are set, images are subsampled while decoding so they are no larger than needed to
+ * fill the bounds, which should be the size of the largest screen. The slide size always stays the size
+ * of the full resolution image as stored.
+ *
+ * Images are turned upright according to their EXIF orientation as they are decoded, so every view of the
+ * slide shows it the right way up while the image itself is never rewritten.
+ */
+public class Slide {
+	
+	private static final String ENCODING = "png";
+	
+	private static volatile int maxWidth, maxHeight;
+	
+	private final File file;
+	private final ByteBuffer data;
+	private final boolean pinned;
+	private Dimension size;
+	private Metadata metadata;
+	private boolean metadataRead;
+	private ByteBuffer thumbnail;
+	private SlideFile.Location location;
+	private BufferedImage image;
+	private long duration;
+	private long hash;
+	private boolean hashed;
+	private byte[] digest;
+	
+	/**
+	 * Constructor
+	 * @param file - The image file the slide is decoded from
+	 */
+	public Slide(File file) {
+		this.file = file;
+		this.data = null;
+		this.pinned = false;
+	}
+	
+	/**
+	 * Constructor
+	 * @param file - The image file the slide is decoded from
+	 * @param size - The dimensions of the image, read without decoding it
+	 */
+	public Slide(File file, Dimension size) {
+		this(file);
+		this.size = size;
+	}
+	
+	/**
+	 * Constructor
+	 * @param file - The image file the slide is decoded from
+	 * @param metadata - The metadata of the image, read without decoding it
+	 */
+	public Slide(File file, Metadata metadata) {
+		this(file, metadata.getSize());
+		this.metadata = metadata;
+	}
+	
+	/**
+	 * Constructor
+	 * @param data - The encoded image bytes the slide is decoded from
+	 */
+	public Slide(byte[] data) {
+		this(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Constructor
+	 * @param data - The buffer holding the encoded image the slide is decoded from
+	 */
+	public Slide(ByteBuffer data) {
+		this.file = null;
+		this.data = data.asReadOnlyBuffer();
+		this.pinned = false;
+	}
+	
+	/**
+	 * Constructor
+	 * @param data - The encoded image bytes the slide is decoded from
+	 * @param size - The dimensions of the image, read without decoding it
+	 */
+	public Slide(byte[] data, Dimension size) {
+		this(data);
+		this.size = size;
+	}
+	
+	/**
+	 * Constructor
+	 * @param data - The buffer holding the encoded image the slide is decoded from
+	 * @param size - The dimensions of the image, read without decoding it
+	 */
+	public Slide(ByteBuffer data, Dimension size) {
+		this(data);
+		this.size = size;
+	}
+	
+	/**
+	 * Constructor
+	 *
+	 * The slide has no encoded source, so the image is pinned and is never released
+	 * @param image - The decoded image
+	 */
+	public Slide(BufferedImage image) {
+		this.file = null;
+		this.data = null;
+		this.pinned = true;
+		this.image = image;
+	}
+	
+	/**
+	 * Creates a slide from a decoded image by encoding it, so the decoded image can be released
+	 * @param image - The image to encode
+	 * @return A slide decoded from the encoded image, or a pinned slide if the image could not be encoded
+	 */
+	public static Slide encode(BufferedImage image) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(image, ENCODING, out);
+			return new Slide(out.toByteArray(), ImageUtils.getDimension(image));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new Slide(image);
+		}
+	}
+	
+	/**
+	 * Sets the bounds slides are decoded to fit; images larger than the bounds are subsampled
+	 * while decoding. Slides which are already loaded keep their image until released
+	 * @param maxWidth - The width of the decode bounds, 0 to decode images at full resolution
+	 * @param maxHeight - The height of the decode bounds, 0 to decode images at full resolution
+	 */
+	public static void setDecodeBounds(int maxWidth, int maxHeight) {
+		Slide.maxWidth = Math.max(0, maxWidth);
+		Slide.maxHeight = Math.max(0, maxHeight);
+	}
+	
+	/**
+	 * Gets the bounds slides are decoded to fit
+	 * @return The decode bounds, null if images are decoded at full resolution
+	 */
+	public static Dimension getDecodeBounds() {
+		int width = maxWidth, height = maxHeight;
+		return width > 0 && height > 0 ? new Dimension(width, height) : null;
+	}
+	
+	/**
+	 * Gets the decoded image, decoding it if it is not currently loaded.
+	 * The image is subsampled to the decode bounds if they are set, and turned upright
+	 * @return The decoded image, null if the image could not be decoded
+	 */
+	public synchronized BufferedImage getImage() {
+		if(image == null) {
+			int orientation = getOrientation();
+			boolean transposed = ImageUtils.isTransposed(orientation);
+			int width = transposed ? maxHeight : maxWidth, height = transposed ? maxWidth : maxHeight;
+			boolean bounded = width > 0 && height > 0;
+			
+			if(bounded && size == null && metadata != null)
+				size = metadata.getSize();
+			
+			if(!bounded || size == null || IO.getSubsampling(size.width, size.height, width, height) == 1)
+				image = file != null ? IO.load(file) : IO.load(data.duplicate());
+			else
+				image = file != null ? IO.load(file, width, height) : IO.load(data.duplicate(), width, height);
+			
+			if(image != null) {
+				if(size == null)
+					size = ImageUtils.getDimension(image);
+				
+				image = ImageUtils.orient(image, orientation);
+				Metrics.addSlideBytes(ImageUtils.getBytes(image));
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Decodes the image at full resolution regardless of the decode bounds, without keeping it loaded
+	 * @return The full resolution upright image, null if the image could not be decoded
+	 */
+	public BufferedImage getFullImage() {
+		if(file != null)
+			return ImageUtils.orient(IO.load(file), getOrientation());
+		
+		if(data != null)
+			return ImageUtils.orient(IO.load(data.duplicate()), getOrientation());
+		
+		return getImage();
+	}
+	
+	/**
+	 * Gets the dimensions of the image as stored without decoding it if they are already known
+	 * @return The image dimensions, null if they are not known and the image is not loaded
+	 */
+	public synchronized Dimension getSize() {
+		if(size == null && image != null)
+			size = ImageUtils.getDimension(image);
+		return size;
+	}
+	
+	/**
+	 * Gets the dimensions of the image once it is turned upright, reading them from the image header if
+	 * they are not known yet
+	 * @return The upright image dimensions, null if the image could not be read
+	 */
+	public Dimension getDisplaySize() {
+		Dimension size = getSize();
+		
+		if(size == null) {
+			Metadata metadata = getMetadata();
+			
+			if(metadata == null)
+				return null;
+			
+			synchronized(this) {
+				if(this.size == null)
+					this.size = metadata.getSize();
+			}
+			return metadata.getDisplaySize();
+		}
+		
+		return ImageUtils.isTransposed(getOrientation()) ? new Dimension(size.height, size.width) : size;
+	}
+	
+	/**
+	 * Gets the metadata of the image, reading it from the image header the first time. The metadata of
+	 * image files comes from the metadata index
+	 * @return The metadata, null if the image could not be read
+	 */
+	public synchronized Metadata getMetadata() {
+		if(metadata == null && !metadataRead) {
+			metadataRead = true;
+			
+			if(file != null)
+				metadata = MetadataIndex.get(file);
+			else if(data != null)
+				metadata = Metadata.read(data.duplicate());
+			else if(image != null)
+				metadata = new Metadata(image.getWidth(), image.getHeight(), Metadata.NORMAL, -1, null);
+		}
+		return metadata;
+	}
+	
+	/**
+	 * Gets the EXIF orientation of the image
+	 * @return The orientation, from 1 to 8
+	 */
+	public int getOrientation() {
+		Metadata metadata = getMetadata();
+		return metadata == null ? Metadata.NORMAL : metadata.getOrientation();
+	}
+	
+	/**
+	 * Checks whether the decoded image is currently held in memory
+	 * @return True if the image is loaded
+	 */
+	public synchronized boolean isLoaded() {
+		return image != null;
+	}
+	
+	/**
+	 * Releases the decoded image; pinned slides keep their image
+	 */
+	public synchronized void release() {
+		if(!pinned && image != null) {
+			Metrics.addSlideBytes(-ImageUtils.getBytes(image));
+			image = null;
+		}
+	}
+	
+	/**
+	 * Gets the encoded image, reading it from the slide file or encoding a pinned image if necessary
+	 * @return A buffer holding the encoded image
+	 * @throws IOException If the file could not be read or the image could not be encoded
+	 */
+	public ByteBuffer getEncoded() throws IOException {
+		if(file != null)
+			return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		
+		if(data != null)
+			return data.duplicate();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(getFullImage(), ENCODING, out);
+		return ByteBuffer.wrap(out.toByteArray());
+	}
+	
+	/**
+	 * Gets the encoded thumbnail of the slide
+	 * @return A buffer holding the encoded thumbnail, null if no thumbnail has been rendered
+	 */
+	public synchronized ByteBuffer getThumbnail() {
+		return thumbnail == null ? null : thumbnail.duplicate();
+	}
+	
+	/**
+	 * Sets the encoded thumbnail of the slide
+	 * @param thumbnail - The buffer holding the encoded thumbnail
+	 */
+	public synchronized void setThumbnail(ByteBuffer thumbnail) {
+		this.thumbnail = thumbnail.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Gets where the slide is stored in a slide show file
+	 * @return The location of the slide, null if it has not been read from or written to a slide show file
+	 */
+	public synchronized SlideFile.Location getLocation() {
+		return location;
+	}
+	
+	/**
+	 * Sets where the slide is stored in a slide show file
+	 * @param location - The location of the slide
+	 */
+	public synchronized void setLocation(SlideFile.Location location) {
+		this.location = location;
+	}
+	
+	/**
+	 * Gets how long the slide is shown during playback
+	 * @return The duration in milliseconds, 0 to use the playback default
+	 */
+	public synchronized long getDuration() {
+		return duration;
+	}
+	
+	/**
+	 * Sets how long the slide is shown during playback
+	 * @param duration - The duration in milliseconds, 0 to use the playback default
+	 */
+	public synchronized void setDuration(long duration) {
+		this.duration = Math.max(0, duration);
+	}
+	
+	/**
+	 * Gets the perceptual hash of the image, computing it if it is not known yet. The hash is computed
+	 * from the loaded image, the thumbnail or a copy decoded at a tiny size, whichever is cheapest
+	 * @return The perceptual hash, 0 if the image could not be decoded
+	 */
+	public long getHash() {
+		BufferedImage source;
+		
+		synchronized(this) {
+			if(hashed)
+				return hash;
+			
+			source = image;
+		}
+		
+		if(source == null && getThumbnail() != null)
+			source = IO.load(getThumbnail());
+		
+		if(source == null && file != null)
+			source = ImageUtils.orient(IO.load(file, PerceptualHash.SIZE, PerceptualHash.SIZE), getOrientation());
+		
+		if(source == null && data != null)
+			source = ImageUtils.orient(IO.load(data.duplicate(), PerceptualHash.SIZE, PerceptualHash.SIZE), getOrientation());
+		
+		if(source == null)
+			return 0;
+		
+		setHash(PerceptualHash.of(source));
+		return getHash();
+	}
+	
+	/**
+	 * Sets the perceptual hash of the image, for when it was stored with the slide
+	 * @param hash - The perceptual hash
+	 */
+	public synchronized void setHash(long hash) {
+		this.hash = hash;
+		this.hashed = true;
+	}
+	
+	/**
+	 * Checks whether the perceptual hash of the image is known without computing it
+	 * @return True if the hash is known
+	 */
+	public synchronized boolean hasHash() {
+		return hashed;
+	}
+	
+	/**
+	 * Gets the digest of the encoded image, which identifies identical images
+	 * @return The digest, null if it has not been computed
+	 */
+	public synchronized byte[] getDigest() {
+		return digest == null ? null : digest.clone();
+	}
+	
+	/**
+	 * Sets the digest of the encoded image
+	 * @param digest - The digest
+	 */
+	public synchronized void setDigest(byte[] digest) {
+		this.digest = digest.clone();
+	}
+	
+	/**
+	 * Gets the file the slide is decoded from
+	 * @return The image file, null if the slide is not backed by a file
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Gets the encoded image bytes the slide is decoded from
+	 * @return A buffer holding the encoded image, null if the slide is not backed by encoded bytes
+	 */
+	public ByteBuffer getData() {
+		return data == null ? null : data.duplicate();
+	}
+}
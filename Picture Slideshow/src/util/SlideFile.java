@@ -0,0 +1,700 @@
+package util;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Reads and writes slide show files.
+ *
+ * A slide show file starts with a fixed size header holding the number of slides and the offset of the
+ * index. The encoded image bytes of every slide, as they were imported, and a small JPEG thumbnail follow
+ * the header. The index at the end holds the offsets, lengths and image dimensions of each slide, so a
+ * reader can find any slide without reading the others.
+ *
+ * <pre>
+ * header: magic (int), version (short), flags (short), count (int), index offset (long)
+ * blocks: image bytes and thumbnail bytes of each slide
+ * index:  per slide, data offset (long), data length (int), width (int), height (int),
+ *         thumbnail offset (long), thumbnail length (int), playback duration in milliseconds (int),
+ *         flags (int), perceptual hash (long), SHA-256 digest of the image bytes (32 bytes)
+ * </pre>
+ *
+ * Version 1 files have no playback durations in their index; their slides use the default duration.
+ * Version 2 files have no flags, hashes or digests.
+ *
+ * Image blocks are addressed by content: a slide whose image bytes have the same digest as a slide already
+ * in the file points at the existing image and thumbnail rather than storing them again, so an image added
+ * to a slide show several times is only stored once.
+ *
+ * Slide show files are read through a memory map. Only the header and index are read up front; each slide
+ * decodes its image straight out of the mapped file when it is needed, so the operating system page cache
+ * rather than the heap holds the image data.
+ *
+ * Slides are written one at a time. A new file is written to a temporary file which then replaces the
+ * target. Saving over the file the slides were read from only appends the slides which are not in it yet,
+ * followed by a new index, and then points the header at the new index, so the file stays valid if the
+ * save is interrupted. Once most of the file is no longer referenced it is rewritten in full instead.
+ *
+ * Files written by older versions, which hold a serialized ArrayList of ImageIcons, are still read and
+ * are converted to slides as they are loaded.
+ */
+public final class SlideFile {
+	
+	public static final int MAGIC = 0x534C4452;
+	public static final short VERSION = 3;
+	
+	public static final int HEADER_SIZE = 20;
+	public static final int ENTRY_SIZE = 80;
+	
+	private static final int ENTRY_SIZE_V1 = 32;
+	private static final int ENTRY_SIZE_V2 = 36;
+	
+	private static final int FLAG_HASHED = 1;
+	private static final String DIGEST = "SHA-256";
+	private static final int DIGEST_LENGTH = 32;
+	
+	public static final int THUMBNAIL_SIZE = 160;
+	private static final String THUMBNAIL_ENCODING = "jpg";
+	
+	private static final short LEGACY_MAGIC = (short) 0xACED;
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	/**
+	 * Receives progress while slides are written
+	 */
+	public interface Progress {
+		
+		/**
+		 * Called after each slide has been written
+		 * @param done - The number of slides written so far
+		 * @param bytes - The number of bytes written so far
+		 */
+		void written(int done, long bytes);
+	}
+	
+	/**
+	 * A slide show file as it was last read or written, shared by the locations of all slides in it
+	 */
+	public static class Origin {
+		
+		private final Path path;
+		private long size;
+		private FileTime modified;
+		
+		/**
+		 * Constructor
+		 * @param path - The slide show file
+		 * @throws IOException If the file attributes could not be read
+		 */
+		private Origin(Path path) throws IOException {
+			this.path = path.toAbsolutePath().normalize();
+			update();
+		}
+		
+		/**
+		 * Records the current size and modification time of the file
+		 * @throws IOException If the file attributes could not be read
+		 */
+		private void update() throws IOException {
+			size = Files.size(path);
+			modified = Files.getLastModifiedTime(path);
+		}
+		
+		/**
+		 * Checks whether this is the given file and it has not been changed since it was last read or written
+		 * @param file - The file to check
+		 * @return True if the file is this origin and is unchanged
+		 */
+		private boolean matches(Path file) {
+			try {
+				return path.equals(file.toAbsolutePath().normalize()) && Files.size(path) == size
+						&& Files.getLastModifiedTime(path).equals(modified);
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Where a slide is stored in a slide show file
+	 */
+	public static class Location {
+		
+		private final Origin origin;
+		private final long dataOffset, thumbnailOffset;
+		private final int dataLength, thumbnailLength;
+		
+		/**
+		 * Constructor
+		 * @param origin - The file the slide is stored in
+		 * @param dataOffset - The offset of the encoded image
+		 * @param dataLength - The length of the encoded image
+		 * @param thumbnailOffset - The offset of the encoded thumbnail
+		 * @param thumbnailLength - The length of the encoded thumbnail
+		 */
+		private Location(Origin origin, long dataOffset, int dataLength, long thumbnailOffset, int thumbnailLength) {
+			this.origin = origin;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+			this.thumbnailOffset = thumbnailOffset;
+			this.thumbnailLength = thumbnailLength;
+		}
+		
+		/**
+		 * Gets the number of bytes the slide takes up in the file
+		 * @return The length of the encoded image and thumbnail
+		 */
+		private long length() {
+			return (long) dataLength + thumbnailLength;
+		}
+	}
+	
+	/**
+	 * Private Constructor
+	 */
+	private SlideFile() {}
+	
+	/**
+	 * Writes the slides to a slide show file
+	 * @param file - The file to write
+	 * @param slides - The slides to write
+	 * @throws IOException If the file could not be written or a slide could not be read
+	 */
+	public static void write(File file, List<Slide> slides) throws IOException {
+		write(file, slides, null);
+	}
+	
+	/**
+	 * Writes the slides to a slide show file.
+	 *
+	 * If the file is the unchanged file the slides were read from or last written to, only the slides not
+	 * in it yet and a new index are appended. Otherwise the slides are written to a temporary file which
+	 * then replaces the target, as the slides being written may be mapped from the file being replaced.
+	 * Interrupting the writing thread stops the save and leaves any existing file as it was; an append which
+	 * fails is cut off again
+	 * @param file - The file to write
+	 * @param slides - The slides to write
+	 * @param progress - Receives progress after each slide, may be null
+	 * @return The number of bytes written
+	 * @throws IOException If the file could not be written or a slide could not be read
+	 */
+	public static long write(File file, List<Slide> slides, Progress progress) throws IOException {
+		Path target = file.toPath();
+		Origin origin = findOrigin(target, slides);
+		
+		if(origin != null)
+			return append(origin, slides, progress);
+		
+		Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+		Location[] locations = new Location[slides.size()];
+		
+		try {
+			long bytes;
+			
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.position(HEADER_SIZE);
+				bytes = writeSlides(channel, slides, locations, null, progress);
+				bytes += writeHeader(channel, slides.size());
+				channel.force(true);
+			}
+			
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			setLocations(slides, locations, new Origin(target));
+			return bytes;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Reads the slides from a slide show file in either the current or the old serialized format
+	 * @param file - The file to read
+	 * @return The slides in the file
+	 * @throws IOException If the file could not be read or is not a slide show
+	 */
+	public static ArrayList<Slide> read(File file) throws IOException {
+		int magic;
+		
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			magic = in.readInt();
+		} catch (EOFException e) {
+			throw new IOException("Not a slide show: " + file);
+		}
+		
+		if(magic == MAGIC)
+			return readIndexed(file);
+		
+		if((short) (magic >>> 16) == LEGACY_MAGIC)
+			return readLegacy(file);
+		
+		throw new IOException("Not a slide show: " + file);
+	}
+	
+	/**
+	 * Renders a slide thumbnail and encodes it
+	 * @param image - The slide image
+	 * @return A buffer holding the encoded thumbnail
+	 * @throws IOException If the thumbnail could not be encoded
+	 */
+	public static ByteBuffer renderThumbnail(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(ImageUtils.thumbnail(image, THUMBNAIL_SIZE), THUMBNAIL_ENCODING, out);
+		return ByteBuffer.wrap(out.toByteArray());
+	}
+	
+	/**
+	 * Finds the file the slides were read from or last written to, if it is the target and it is worth
+	 * appending to rather than rewriting
+	 * @param target - The file being written
+	 * @param slides - The slides to write
+	 * @return The origin to append to, null if the file must be written in full
+	 */
+	private static Origin findOrigin(Path target, List<Slide> slides) {
+		Origin origin = null;
+		long live = HEADER_SIZE + (long) slides.size() * ENTRY_SIZE;
+		Set<Long> counted = new HashSet<Long>();
+		
+		for(Slide slide: slides) {
+			Location location = slide.getLocation();
+			
+			if(location == null)
+				continue;
+			
+			if(origin == null && location.origin.matches(target))
+				origin = location.origin;
+			
+			if(location.origin == origin && counted.add(location.dataOffset))
+				live += location.length();
+		}
+		
+		if(origin == null || origin.size - live > live)
+			return null;
+		
+		return origin;
+	}
+	
+	/**
+	 * Appends the slides not yet in the file and a new index, then points the header at the new index
+	 * @param origin - The file to append to
+	 * @param slides - The slides to write
+	 * @param progress - Receives progress after each slide, may be null
+	 * @return The number of bytes written
+	 * @throws IOException If the file could not be written or a slide could not be read
+	 */
+	private static long append(Origin origin, List<Slide> slides, Progress progress) throws IOException {
+		Location[] locations = new Location[slides.size()];
+		long bytes;
+		
+		try (FileChannel channel = FileChannel.open(origin.path, StandardOpenOption.WRITE)) {
+			channel.position(origin.size);
+			
+			try {
+				bytes = writeSlides(channel, slides, locations, origin, progress);
+				channel.force(false);
+			} catch (IOException | RuntimeException e) {
+				truncate(origin, e);
+				throw e;
+			}
+			
+			bytes += writeHeader(channel, slides.size());
+			channel.force(true);
+		}
+		
+		origin.update();
+		setLocations(slides, locations, origin);
+		return bytes;
+	}
+	
+	/**
+	 * Cuts a file back to its size before an append which failed before the header was pointed at the new
+	 * index. The header still points at the old index, so nothing the file refers to is cut off. The channel
+	 * of the append is closed if the thread was interrupted, so a new one is opened with the interrupt held
+	 * back until it is done
+	 * @param origin - The file appended to
+	 * @param failure - The failure of the append, which keeps any failure to truncate as suppressed
+	 */
+	private static void truncate(Origin origin, Exception failure) {
+		boolean interrupted = Thread.interrupted();
+		
+		try (FileChannel channel = FileChannel.open(origin.path, StandardOpenOption.WRITE)) {
+			channel.truncate(origin.size);
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		} finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Writes every slide which is not already stored in the given origin, followed by the index.
+	 * Slides whose image is already stored, in the origin or earlier in this write, share the stored image
+	 * @param channel - The channel to write to, positioned where the first slide goes
+	 * @param slides - The slides to write
+	 * @param locations - Receives the location of each slide, with a null origin to be filled in later
+	 * @param origin - The file the channel writes to if slides already stored in it may be kept, else null
+	 * @param progress - Receives progress after each slide, may be null
+	 * @return The number of bytes written
+	 * @throws IOException If the file could not be written or a slide could not be read
+	 */
+	private static long writeSlides(FileChannel channel, List<Slide> slides, Location[] locations, Origin origin,
+			Progress progress) throws IOException {
+		ByteBuffer index = ByteBuffer.allocate(slides.size() * ENTRY_SIZE);
+		long start = channel.position();
+		Map<ByteBuffer, Location> stored = new HashMap<ByteBuffer, Location>();
+		
+		for(Slide slide: slides) {
+			Location location = slide.getLocation();
+			
+			if(origin != null && location != null && location.origin == origin)
+				stored.putIfAbsent(ByteBuffer.wrap(digest(slide)), location);
+		}
+		
+		for(int i = 0; i < slides.size(); i++) {
+			Slide slide = slides.get(i);
+			Location location = slide.getLocation();
+			Dimension size = slide.getSize();
+			byte[] digest = digest(slide);
+			
+			if(origin == null || location == null || location.origin != origin)
+				location = stored.get(ByteBuffer.wrap(digest));
+			
+			if(location == null) {
+				ByteBuffer thumbnail = slide.getThumbnail();
+				
+				if(size == null || thumbnail == null) {
+					boolean loaded = slide.isLoaded();
+					BufferedImage image = slide.getImage();
+					
+					if(image == null)
+						throw new IOException("Could not decode slide image");
+					
+					size = slide.getSize();
+					slide.setThumbnail(renderThumbnail(image));
+					thumbnail = slide.getThumbnail();
+					
+					if(!loaded)
+						slide.release();
+				}
+				
+				long dataOffset = channel.position();
+				writeImage(channel, slide);
+				int dataLength = (int) (channel.position() - dataOffset);
+				
+				long thumbnailOffset = channel.position();
+				int thumbnailLength = thumbnail.remaining();
+				writeFully(channel, thumbnail);
+				
+				location = new Location(null, dataOffset, dataLength, thumbnailOffset, thumbnailLength);
+				stored.put(ByteBuffer.wrap(digest), location);
+			}
+			
+			if(size == null)
+				size = getSize(slide);
+			
+			boolean hashed = slide.hasHash();
+			
+			locations[i] = location;
+			index.putLong(location.dataOffset).putInt(location.dataLength)
+				.putInt(size.width).putInt(size.height)
+				.putLong(location.thumbnailOffset).putInt(location.thumbnailLength)
+				.putInt((int) Math.min(Integer.MAX_VALUE, slide.getDuration()))
+				.putInt(hashed ? FLAG_HASHED : 0).putLong(hashed ? slide.getHash() : 0).put(digest);
+			
+			if(progress != null)
+				progress.written(i + 1, channel.position() - start);
+		}
+		
+		index.flip();
+		writeFully(channel, index);
+		return channel.position() - start;
+	}
+	
+	/**
+	 * Gets the dimensions of a slide which shares a stored image, reading them without decoding
+	 * @param slide - The slide
+	 * @return The image dimensions
+	 * @throws IOException If the image could not be read
+	 */
+	private static Dimension getSize(Slide slide) throws IOException {
+		Dimension size = slide.getFile() != null ? IO.getDimension(slide.getFile()) : IO.getDimension(slide.getEncoded());
+		
+		if(size == null)
+			throw new IOException("Could not read slide image");
+		return size;
+	}
+	
+	/**
+	 * Gets the digest of the encoded image of a slide, computing and keeping it if it is not known.
+	 * Files are digested through a memory map
+	 * @param slide - The slide
+	 * @return The digest
+	 * @throws IOException If the image could not be read
+	 */
+	private static byte[] digest(Slide slide) throws IOException {
+		byte[] digest = slide.getDigest();
+		
+		if(digest != null)
+			return digest;
+		
+		MessageDigest md;
+		
+		try {
+			md = MessageDigest.getInstance(DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		
+		File file = slide.getFile();
+		
+		if(file != null) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				
+				for(long position = 0; position < size; position += Integer.MAX_VALUE)
+					md.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+			}
+		} else {
+			md.update(slide.getEncoded());
+		}
+		
+		digest = md.digest();
+		slide.setDigest(digest);
+		return digest;
+	}
+	
+	/**
+	 * Writes the header at the start of the file, pointing at the index which ends the file
+	 * @param channel - The channel to write to
+	 * @param count - The number of slides in the index
+	 * @return The number of bytes written
+	 * @throws IOException If the header could not be written
+	 */
+	private static long writeHeader(FileChannel channel, int count) throws IOException {
+		long indexOffset = channel.size() - (long) count * ENTRY_SIZE;
+		
+		channel.position(0);
+		writeFully(channel, header(count, indexOffset));
+		return HEADER_SIZE;
+	}
+	
+	/**
+	 * Writes the encoded image of a slide at the current channel position.
+	 * Slides backed by a file are copied by the file system without passing through the heap
+	 * @param channel - The channel to write to
+	 * @param slide - The slide to write
+	 * @throws IOException If the image could not be read or written
+	 */
+	private static void writeImage(FileChannel channel, Slide slide) throws IOException {
+		File file = slide.getFile();
+		
+		if(file == null) {
+			writeFully(channel, slide.getEncoded());
+			return;
+		}
+		
+		try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = source.size(), position = 0;
+			
+			while(position < size)
+				position += source.transferTo(position, size - position, channel);
+		}
+	}
+	
+	/**
+	 * Records where each slide was written, once the file has been written successfully
+	 * @param slides - The slides written
+	 * @param locations - The location of each slide
+	 * @param origin - The file the slides were written to
+	 */
+	private static void setLocations(List<Slide> slides, Location[] locations, Origin origin) {
+		for(int i = 0; i < slides.size(); i++) {
+			Location location = locations[i];
+			
+			if(location.origin != origin)
+				location = new Location(origin, location.dataOffset, location.dataLength,
+						location.thumbnailOffset, location.thumbnailLength);
+			
+			slides.get(i).setLocation(location);
+		}
+	}
+	
+	/**
+	 * Reads a slide show file in the current format through a memory map.
+	 * Only the index is read; every slide and thumbnail is a view of its region of the mapped file
+	 * @param file - The file to read
+	 * @return The slides in the file
+	 * @throws IOException If the file could not be read, is truncated or its header or index is corrupt
+	 */
+	private static ArrayList<Slide> readIndexed(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Origin origin = new Origin(file.toPath());
+			long length = channel.size();
+			
+			if(length < HEADER_SIZE)
+				throw new EOFException("Slide show file is truncated: " + file);
+			
+			MappedByteBuffer map = length <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, length) : null;
+			ByteBuffer header = region(channel, map, 0, HEADER_SIZE);
+			
+			header.getInt();
+			short version = header.getShort();
+			header.getShort();
+			int count = header.getInt();
+			long indexOffset = header.getLong();
+			
+			if(version > VERSION)
+				throw new IOException("Unsupported slide show version " + version + ": " + file);
+			
+			int entrySize = version < 2 ? ENTRY_SIZE_V1 : version < 3 ? ENTRY_SIZE_V2 : ENTRY_SIZE;
+			
+			if(count < 0 || indexOffset < HEADER_SIZE || (long) count * entrySize > Integer.MAX_VALUE)
+				throw new IOException("Corrupt slide show file: " + file);
+			
+			if(indexOffset + (long) count * entrySize > length)
+				throw new EOFException("Slide show file is truncated: " + file);
+			
+			ByteBuffer index = region(channel, map, indexOffset, count * entrySize);
+			ArrayList<Slide> slides = new ArrayList<Slide>(count);
+			
+			for(int i = 0; i < count; i++) {
+				long dataOffset = index.getLong();
+				int dataLength = index.getInt();
+				Dimension size = new Dimension(index.getInt(), index.getInt());
+				long thumbnailOffset = index.getLong();
+				int thumbnailLength = index.getInt();
+				int duration = version < 2 ? 0 : index.getInt();
+				int flags = version < 3 ? 0 : index.getInt();
+				long hash = version < 3 ? 0 : index.getLong();
+				byte[] digest = null;
+				
+				if(version >= 3) {
+					digest = new byte[DIGEST_LENGTH];
+					index.get(digest);
+				}
+				
+				if(dataOffset < HEADER_SIZE || dataLength < 0 || thumbnailOffset < HEADER_SIZE || thumbnailLength < 0
+						|| size.width < 0 || size.height < 0)
+					throw new IOException("Corrupt slide show file: " + file);
+				
+				if(dataOffset + dataLength > length || thumbnailOffset + thumbnailLength > length)
+					throw new EOFException("Slide show file is truncated: " + file);
+				
+				Slide slide = new Slide(region(channel, map, dataOffset, dataLength), size);
+				slide.setThumbnail(region(channel, map, thumbnailOffset, thumbnailLength));
+				slide.setDuration(Math.max(0, duration));
+				
+				if((flags & FLAG_HASHED) != 0)
+					slide.setHash(hash);
+				if(digest != null)
+					slide.setDigest(digest);
+				
+				slide.setLocation(new Location(origin, dataOffset, dataLength, thumbnailOffset, thumbnailLength));
+				slides.add(slide);
+			}
+			return slides;
+		}
+	}
+	
+	/**
+	 * Reads a slide show file written as a serialized ArrayList of ImageIcons, encoding each image as it
+	 * is read so the decoded images can be released
+	 * @param file - The file to read
+	 * @return The slides in the file
+	 * @throws IOException If the file could not be read
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ArrayList<Slide> readLegacy(File file) throws IOException {
+		ArrayList<ImageIcon> icons;
+		
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			icons = (ArrayList)ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Not a slide show: " + file, e);
+		}
+		
+		ArrayList<Slide> slides = new ArrayList<Slide>(icons.size());
+		
+		for(int i = 0; i < icons.size(); i++) {
+			BufferedImage image = ImageUtils.toBufferedImage(icons.get(i));
+			Slide slide = Slide.encode(image);
+			
+			slide.setThumbnail(renderThumbnail(image));
+			slides.add(slide);
+			icons.set(i, null);
+		}
+		return slides;
+	}
+	
+	/**
+	 * Creates the file header
+	 * @param count - The number of slides in the file
+	 * @param indexOffset - The offset of the index
+	 * @return The header, ready to be written
+	 */
+	private static ByteBuffer header(int count, long indexOffset) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putLong(indexOffset);
+		header.flip();
+		return header;
+	}
+	
+	/**
+	 * Writes the whole buffer at the current channel position
+	 * @param channel - The channel to write to
+	 * @param buffer - The buffer to write
+	 * @throws IOException If the write failed
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+	
+	/**
+	 * Gets a view of a region of a mapped file.
+	 * Files too large to map in one piece have no whole file map, so the region is mapped on its own
+	 * @param channel - The channel of the file
+	 * @param map - The map of the whole file, null if the file was too large to map in one piece
+	 * @param position - The offset of the region
+	 * @param length - The length of the region
+	 * @return A buffer holding the region, positioned at its start
+	 * @throws IOException If the region could not be mapped
+	 */
+	private static ByteBuffer region(FileChannel channel, MappedByteBuffer map, long position, int length) throws IOException {
+		if(map == null)
+			return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		
+		ByteBuffer region = map.duplicate();
+		region.position((int) position);
+		region.limit((int) position + length);
+		return region.slice();
+	}
+}
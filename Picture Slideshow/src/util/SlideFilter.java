@@ -0,0 +1,174 @@
+package util;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Picks slides by what the metadata index knows about their images, without decoding pixels.
+ *
+ * A query is a list of terms separated by spaces, and a slide matches when it matches every term:
+ * landscape, portrait or square match the shape of the upright image, min:N matches images whose shortest
+ * side has at least N pixels, from:yyyy-mm-dd and to:yyyy-mm-dd match photos taken on or after and on or
+ * before a day, and any other word matches slides whose camera or file name contains it, ignoring case.
+ */
+public class SlideFilter implements Predicate<Slide> {
+	
+	private final List<Predicate<Slide>> terms;
+	
+	/**
+	 * Constructor
+	 * @param terms - The terms every matching slide matches
+	 */
+	private SlideFilter(List<Predicate<Slide>> terms) {
+		this.terms = terms;
+	}
+	
+	/**
+	 * Reads a query
+	 * @param query - The query
+	 * @return The filter
+	 * @throws IllegalArgumentException If a term has an invalid value
+	 */
+	public static SlideFilter parse(String query) {
+		List<Predicate<Slide>> terms = new ArrayList<Predicate<Slide>>();
+		
+		for(String term: query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+			if(term.isEmpty())
+				continue;
+			
+			int colon = term.indexOf(':');
+			String key = colon < 0 ? term : term.substring(0, colon);
+			String value = colon < 0 ? null : term.substring(colon + 1);
+			
+			switch(key) {
+			case "landscape":
+				terms.add(slide -> compareSides(slide) == 1);
+				break;
+			case "portrait":
+				terms.add(slide -> compareSides(slide) == -1);
+				break;
+			case "square":
+				terms.add(slide -> compareSides(slide) == 0);
+				break;
+			case "min":
+				int pixels = parsePixels(term, value);
+				terms.add(slide -> getShortestSide(slide) >= pixels);
+				break;
+			case "from":
+				long from = parseDay(term, value, 0);
+				terms.add(slide -> getCaptured(slide) >= from);
+				break;
+			case "to":
+				long to = parseDay(term, value, 1);
+				terms.add(slide -> getCaptured(slide) >= 0 && getCaptured(slide) < to);
+				break;
+			default:
+				terms.add(slide -> contains(slide, term));
+			}
+		}
+		return new SlideFilter(terms);
+	}
+	
+	@Override
+	public boolean test(Slide slide) {
+		for(Predicate<Slide> term: terms) {
+			if(!term.test(slide))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads a number of pixels
+	 * @param term - The whole term, for the error message
+	 * @param value - The value of the term
+	 * @return The number of pixels
+	 * @throws IllegalArgumentException If the value is not a number of pixels
+	 */
+	private static int parsePixels(String term, String value) {
+		try {
+			int pixels = Integer.parseInt(value);
+			
+			if(pixels >= 0)
+				return pixels;
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("Invalid number of pixels in " + term);
+	}
+	
+	/**
+	 * Reads a day in local time
+	 * @param term - The whole term, for the error message
+	 * @param value - The day in the form yyyy-mm-dd
+	 * @param days - The number of days to add to the day read
+	 * @return The start of the day in milliseconds since the epoch
+	 * @throws IllegalArgumentException If the value is not a day
+	 */
+	private static long parseDay(String term, String value, int days) {
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+			format.setLenient(false);
+			
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(format.parse(value));
+			calendar.add(Calendar.DAY_OF_MONTH, days);
+			return calendar.getTimeInMillis();
+		} catch (ParseException | NullPointerException e) {
+			throw new IllegalArgumentException("Invalid day in " + term + ", expected yyyy-mm-dd");
+		}
+	}
+	
+	/**
+	 * Compares the width of the upright image of a slide with its height
+	 * @param slide - The slide
+	 * @return The sign of the width less the height, Integer.MIN_VALUE if the size is unknown
+	 */
+	private static int compareSides(Slide slide) {
+		Dimension size = slide.getDisplaySize();
+		return size == null ? Integer.MIN_VALUE : Integer.signum(size.width - size.height);
+	}
+	
+	/**
+	 * Gets the length of the shortest side of the image of a slide
+	 * @param slide - The slide
+	 * @return The shortest side in pixels, -1 if the size is unknown
+	 */
+	private static int getShortestSide(Slide slide) {
+		Dimension size = slide.getDisplaySize();
+		return size == null ? -1 : Math.min(size.width, size.height);
+	}
+	
+	/**
+	 * Gets when the photo of a slide was taken
+	 * @param slide - The slide
+	 * @return The capture time in milliseconds since the epoch, -1 if unknown
+	 */
+	private static long getCaptured(Slide slide) {
+		Metadata metadata = slide.getMetadata();
+		return metadata == null ? -1 : metadata.getCaptured();
+	}
+	
+	/**
+	 * Checks whether the camera or file name of a slide contains a word
+	 * @param slide - The slide
+	 * @param word - The word in lower case
+	 * @return True if the word was found
+	 */
+	private static boolean contains(Slide slide, String word) {
+		File file = slide.getFile();
+		
+		if(file != null && file.getName().toLowerCase(Locale.ROOT).contains(word))
+			return true;
+		
+		Metadata metadata = slide.getMetadata();
+		return metadata != null && metadata.getCamera() != null && metadata.getCamera().toLowerCase(Locale.ROOT).contains(word);
+	}
+}
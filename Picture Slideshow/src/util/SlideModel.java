@@ -0,0 +1,809 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The ordered slides of a slide show.
+ *
+ * Slides are kept in a randomized balanced tree (a treap) whose nodes know the size of their subtree, so
+ * getting, inserting, removing and moving a slide by index take logarithmic time whatever the size of the
+ * slide show. Every slide maps to its node, and its index is found by walking from the node up to the root.
+ * The model is a List, so the slide window, prefetcher, playback and thumbnail grid read it like any list.
+ *
+ * Every change is reported to the listeners, and to the undoable edit listeners as an edit which undoes it
+ * with the opposite change, so undoing costs no more than the change did. Changes made between beginEdit
+ * and endEdit are reported as a single edit. A slide may only be in the model once. The model is used on
+ * the event dispatch thread.
+ */
+public class SlideModel extends AbstractList<Slide> {
+	
+	/**
+	 * Receives the changes made to the slides
+	 */
+	public interface Listener {
+		
+		/**
+		 * Called after a slide was inserted
+		 * @param index - The index of the new slide
+		 * @param slide - The new slide
+		 */
+		void inserted(int index, Slide slide);
+		
+		/**
+		 * Called after a slide was removed
+		 * @param index - The index the slide had
+		 * @param slide - The removed slide
+		 */
+		void removed(int index, Slide slide);
+		
+		/**
+		 * Called after a slide was swapped for another
+		 * @param index - The index of the slide
+		 * @param previous - The slide which was replaced
+		 * @param slide - The new slide
+		 */
+		void replaced(int index, Slide previous, Slide slide);
+		
+		/**
+		 * Called after a slide was moved
+		 * @param from - The index the slide had
+		 * @param to - The index the slide has now
+		 */
+		void moved(int from, int to);
+		
+		/**
+		 * Called after the same slides were put in another order
+		 */
+		void reordered();
+		
+		/**
+		 * Called after every slide was replaced at once
+		 */
+		void reset();
+	}
+	
+	private final Map<Slide, Node> nodes = new IdentityHashMap<Slide, Node>();
+	private final List<Listener> listeners = new ArrayList<Listener>();
+	private final List<UndoableEditListener> editListeners = new ArrayList<UndoableEditListener>();
+	private final Random random = new Random();
+	
+	private Node root;
+	private CompoundEdit batch;
+	private boolean undoable = true;
+	
+	@Override
+	public int size() {
+		return size(root);
+	}
+	
+	@Override
+	public Slide get(int index) {
+		return node(index).slide;
+	}
+	
+	@Override
+	public Slide set(int index, Slide slide) {
+		Node node = node(index);
+		Slide previous = node.slide;
+		
+		if(previous == slide)
+			return previous;
+		
+		checkAbsent(slide);
+		replace(node, index, slide);
+		post(new Change(Change.REPLACE, index, index, previous, slide));
+		return previous;
+	}
+	
+	@Override
+	public void add(int index, Slide slide) {
+		checkPosition(index);
+		checkAbsent(slide);
+		insert(index, slide);
+		post(new Change(Change.INSERT, index, index, null, slide));
+	}
+	
+	@Override
+	public Slide remove(int index) {
+		Slide slide = node(index).slide;
+		delete(index);
+		post(new Change(Change.REMOVE, index, index, slide, null));
+		return slide;
+	}
+	
+	/**
+	 * Moves a slide to another index, shifting the slides between
+	 * @param from - The index of the slide to move
+	 * @param to - The index the slide should have afterwards
+	 */
+	public void move(int from, int to) {
+		node(from);
+		node(to);
+		
+		if(from == to)
+			return;
+		
+		relocate(from, to);
+		post(new Change(Change.MOVE, from, to, null, null));
+	}
+	
+	/**
+	 * Puts the slides in order in one step, reported as a single edit which restores the previous order.
+	 * The sort is stable
+	 * @param c - The order of the slides
+	 */
+	@Override
+	public void sort(Comparator<? super Slide> c) {
+		Slide[] previous = toArray(new Slide[size()]);
+		Slide[] sorted = previous.clone();
+		Arrays.sort(sorted, c);
+		
+		if(Arrays.equals(previous, sorted))
+			return;
+		
+		reorder(sorted);
+		post(new Reorder(previous, sorted));
+	}
+	
+	/**
+	 * Removes the slides matching a filter, reported as a single edit
+	 * @param filter - Tells which slides to remove
+	 * @return True if any slide was removed
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super Slide> filter) {
+		Slide[] slides = toArray(new Slide[size()]);
+		CompoundEdit edit = beginEdit("Remove Slides");
+		boolean removed = false;
+		
+		try {
+			for(int i = slides.length - 1; i >= 0; i--) {
+				if(filter.test(slides[i])) {
+					remove(i);
+					removed = true;
+				}
+			}
+		} finally {
+			endEdit(edit);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Removes every slide. This is not reported as an edit, so the edits reported before should be discarded
+	 */
+	@Override
+	public void clear() {
+		setAll(new ArrayList<Slide>());
+	}
+	
+	/**
+	 * Replaces every slide at once, for loading a slide show. This is not reported as an edit, so the edits
+	 * reported before should be discarded
+	 * @param slides - The new slides
+	 */
+	public void setAll(Collection<? extends Slide> slides) {
+		root = null;
+		nodes.clear();
+		batch = null;
+		modCount++;
+		
+		for(Slide slide: slides) {
+			if(nodes.containsKey(slide))
+				continue;
+			
+			Node node = new Node(slide, random.nextInt());
+			nodes.put(slide, node);
+			root = merge(root, node);
+		}
+		
+		if(root != null)
+			root.parent = null;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.reset();
+	}
+	
+	@Override
+	public int indexOf(Object o) {
+		Node node = nodes.get(o);
+		
+		if(node == null)
+			return -1;
+		
+		int index = size(node.left);
+		
+		for(Node n = node; n.parent != null; n = n.parent) {
+			if(n == n.parent.right)
+				index += size(n.parent.left) + 1;
+		}
+		return index;
+	}
+	
+	@Override
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+		
+		if(index < 0)
+			return false;
+		
+		remove(index);
+		return true;
+	}
+	
+	@Override
+	public int lastIndexOf(Object o) {
+		return indexOf(o);
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		return nodes.containsKey(o);
+	}
+	
+	/**
+	 * Iterates over the slides in order by stepping between neighbouring nodes
+	 * @return The iterator
+	 */
+	@Override
+	public Iterator<Slide> iterator() {
+		return new Iterator<Slide>() {
+			
+			private final int expected = modCount;
+			private Node next = first(root);
+			
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			
+			@Override
+			public Slide next() {
+				if(modCount != expected)
+					throw new ConcurrentModificationException();
+				if(next == null)
+					throw new NoSuchElementException();
+				
+				Node node = next;
+				next = successor(node);
+				return node.slide;
+			}
+		};
+	}
+	
+	/**
+	 * Starts reporting the changes made from now on as a single edit, until endEdit is called with the
+	 * edit returned. If a batch is already open the changes join it instead
+	 * @param name - The name of the batch, shown in the undo menu
+	 * @return The batch edit, null if a batch was already open
+	 */
+	public CompoundEdit beginEdit(String name) {
+		if(batch != null)
+			return null;
+		
+		batch = new CompoundEdit() {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getPresentationName() {
+				return name;
+			}
+			
+			@Override
+			public String getUndoPresentationName() {
+				return "Undo " + name;
+			}
+			
+			@Override
+			public String getRedoPresentationName() {
+				return "Redo " + name;
+			}
+		};
+		return batch;
+	}
+	
+	/**
+	 * Stops collecting changes into a batch and reports the batch if anything changed
+	 * @param edit - The edit returned by beginEdit, ignored if null or no longer open
+	 */
+	public void endEdit(CompoundEdit edit) {
+		if(edit == null || edit != batch)
+			return;
+		
+		batch = null;
+		edit.end();
+		
+		if(edit.isSignificant())
+			fire(edit);
+	}
+	
+	/**
+	 * Checks whether changes are being collected into a batch. Edits reported before must not be undone
+	 * while a batch is open, since the batch would no longer match the slides
+	 * @return True if a batch is open
+	 */
+	public boolean isEditing() {
+		return batch != null;
+	}
+	
+	/**
+	 * Sets whether changes are reported as edits. Edits reported before should be discarded when this is
+	 * turned off, since they may no longer match the slides
+	 * @param undoable - True to report changes as edits
+	 */
+	public void setUndoable(boolean undoable) {
+		this.undoable = undoable;
+	}
+	
+	/**
+	 * Checks whether changes are reported as edits
+	 * @return True if changes are reported as edits
+	 */
+	public boolean isUndoable() {
+		return undoable;
+	}
+	
+	/**
+	 * Adds a listener told about every change to the slides
+	 * @param listener - The listener to add
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a change listener
+	 * @param listener - The listener to remove
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Adds a listener receiving an edit for every change, such as an UndoManager
+	 * @param listener - The listener to add
+	 */
+	public void addUndoableEditListener(UndoableEditListener listener) {
+		editListeners.add(listener);
+	}
+	
+	/**
+	 * Removes an edit listener
+	 * @param listener - The listener to remove
+	 */
+	public void removeUndoableEditListener(UndoableEditListener listener) {
+		editListeners.remove(listener);
+	}
+	
+	/**
+	 * Inserts a slide and tells the listeners
+	 * @param index - The index to insert the slide at
+	 * @param slide - The slide to insert
+	 */
+	private void insert(int index, Slide slide) {
+		Node node = new Node(slide, random.nextInt());
+		nodes.put(slide, node);
+		
+		Node[] parts = split(root, index);
+		setRoot(merge(merge(parts[0], node), parts[1]));
+		modCount++;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.inserted(index, slide);
+	}
+	
+	/**
+	 * Removes a slide and tells the listeners
+	 * @param index - The index of the slide to remove
+	 */
+	private void delete(int index) {
+		Node[] parts = split(root, index);
+		Node[] rest = split(parts[1], 1);
+		Slide slide = rest[0].slide;
+		
+		nodes.remove(slide);
+		setRoot(merge(parts[0], rest[1]));
+		modCount++;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.removed(index, slide);
+	}
+	
+	/**
+	 * Swaps the slide of a node and tells the listeners
+	 * @param node - The node of the slide
+	 * @param index - The index of the slide
+	 * @param slide - The new slide
+	 */
+	private void replace(Node node, int index, Slide slide) {
+		Slide previous = node.slide;
+		
+		nodes.remove(previous);
+		node.slide = slide;
+		nodes.put(slide, node);
+		modCount++;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.replaced(index, previous, slide);
+	}
+	
+	/**
+	 * Moves a node to another index and tells the listeners
+	 * @param from - The index of the slide to move
+	 * @param to - The index the slide should have afterwards
+	 */
+	private void relocate(int from, int to) {
+		Node[] parts = split(root, from);
+		Node[] rest = split(parts[1], 1);
+		Node node = rest[0];
+		
+		parts = split(merge(parts[0], rest[1]), to);
+		setRoot(merge(merge(parts[0], node), parts[1]));
+		modCount++;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.moved(from, to);
+	}
+	
+	/**
+	 * Rebuilds the tree with the slides in another order and tells the listeners
+	 * @param order - Every slide of the model, in the new order
+	 */
+	private void reorder(Slide[] order) {
+		root = null;
+		
+		for(Slide slide: order) {
+			Node node = nodes.get(slide);
+			node.left = node.right = node.parent = null;
+			node.size = 1;
+			root = merge(root, node);
+		}
+		
+		setRoot(root);
+		modCount++;
+		
+		for(Listener listener: new ArrayList<Listener>(listeners))
+			listener.reordered();
+	}
+	
+	/**
+	 * Reports a change as an edit, or adds it to the open batch
+	 * @param edit - The edit undoing and redoing the change
+	 */
+	private void post(UndoableEdit edit) {
+		if(!undoable)
+			return;
+		
+		if(batch != null)
+			batch.addEdit(edit);
+		else
+			fire(edit);
+	}
+	
+	/**
+	 * Hands an edit to the edit listeners
+	 * @param edit - The edit
+	 */
+	private void fire(UndoableEdit edit) {
+		UndoableEditEvent event = new UndoableEditEvent(this, edit);
+		
+		for(UndoableEditListener listener: new ArrayList<UndoableEditListener>(editListeners))
+			listener.undoableEditHappened(event);
+	}
+	
+	/**
+	 * Gets the node at an index
+	 * @param index - The index of the node
+	 * @return The node
+	 */
+	private Node node(int index) {
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		
+		Node node = root;
+		
+		while(true) {
+			int left = size(node.left);
+			
+			if(index < left) {
+				node = node.left;
+			} else if(index > left) {
+				index -= left + 1;
+				node = node.right;
+			} else {
+				return node;
+			}
+		}
+	}
+	
+	/**
+	 * Checks that a slide can be inserted at an index
+	 * @param index - The index to check
+	 */
+	private void checkPosition(int index) {
+		if(index < 0 || index > size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+	}
+	
+	/**
+	 * Checks that a slide is not already in the model
+	 * @param slide - The slide to check
+	 */
+	private void checkAbsent(Slide slide) {
+		if(slide == null)
+			throw new NullPointerException();
+		if(nodes.containsKey(slide))
+			throw new IllegalArgumentException("The slide is already in the slide show");
+	}
+	
+	/**
+	 * Makes a node the root of the tree
+	 * @param node - The new root
+	 */
+	private void setRoot(Node node) {
+		root = node;
+		
+		if(root != null)
+			root.parent = null;
+	}
+	
+	/**
+	 * Splits a tree in two by index
+	 * @param node - The root of the tree to split
+	 * @param index - The number of nodes which go into the first tree
+	 * @return The roots of the two trees, which may be null
+	 */
+	private static Node[] split(Node node, int index) {
+		if(node == null)
+			return new Node[2];
+		
+		Node[] parts;
+		
+		if(index <= size(node.left)) {
+			parts = split(node.left, index);
+			node.left = parts[1];
+			parts[1] = node;
+		} else {
+			parts = split(node.right, index - size(node.left) - 1);
+			node.right = parts[0];
+			parts[0] = node;
+		}
+		
+		update(node);
+		node.parent = null;
+		return parts;
+	}
+	
+	/**
+	 * Joins two trees, every node of the first coming before every node of the second
+	 * @param first - The root of the first tree, may be null
+	 * @param second - The root of the second tree, may be null
+	 * @return The root of the joined tree
+	 */
+	private static Node merge(Node first, Node second) {
+		if(first == null)
+			return second;
+		if(second == null)
+			return first;
+		
+		if(first.priority > second.priority) {
+			first.right = merge(first.right, second);
+			update(first);
+			return first;
+		}
+		
+		second.left = merge(first, second.left);
+		update(second);
+		return second;
+	}
+	
+	/**
+	 * Recomputes the size of a node and points its children back at it
+	 * @param node - The node to update
+	 */
+	private static void update(Node node) {
+		node.size = 1 + size(node.left) + size(node.right);
+		
+		if(node.left != null)
+			node.left.parent = node;
+		if(node.right != null)
+			node.right.parent = node;
+	}
+	
+	/**
+	 * Gets the size of a tree
+	 * @param node - The root of the tree, may be null
+	 * @return The number of nodes in the tree
+	 */
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+	
+	/**
+	 * Gets the first node of a tree
+	 * @param node - The root of the tree, may be null
+	 * @return The first node, null if the tree is empty
+	 */
+	private static Node first(Node node) {
+		while(node != null && node.left != null)
+			node = node.left;
+		return node;
+	}
+	
+	/**
+	 * Gets the node after a node
+	 * @param node - The node
+	 * @return The next node, null if the node is the last
+	 */
+	private static Node successor(Node node) {
+		if(node.right != null)
+			return first(node.right);
+		
+		while(node.parent != null && node == node.parent.right)
+			node = node.parent;
+		return node.parent;
+	}
+	
+	/**
+	 * A slide in the tree
+	 */
+	private static class Node {
+		
+		private Slide slide;
+		private final int priority;
+		private int size = 1;
+		private Node left, right, parent;
+		
+		/**
+		 * Constructor
+		 * @param slide - The slide
+		 * @param priority - The random heap priority of the node
+		 */
+		private Node(Slide slide, int priority) {
+			this.slide = slide;
+			this.priority = priority;
+		}
+	}
+	
+	/**
+	 * An edit undoing and redoing a single change
+	 */
+	private class Change extends AbstractUndoableEdit {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final int INSERT = 0;
+		private static final int REMOVE = 1;
+		private static final int REPLACE = 2;
+		private static final int MOVE = 3;
+		
+		private final int type, from, to;
+		private final Slide previous, slide;
+		
+		/**
+		 * Constructor
+		 * @param type - The type of change
+		 * @param from - The index changed, or the index a moved slide had
+		 * @param to - The index changed, or the index a moved slide has now
+		 * @param previous - The slide removed or replaced, null if none
+		 * @param slide - The slide inserted or replacing another, null if none
+		 */
+		private Change(int type, int from, int to, Slide previous, Slide slide) {
+			this.type = type;
+			this.from = from;
+			this.to = to;
+			this.previous = previous;
+			this.slide = slide;
+		}
+		
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			
+			switch(type) {
+			case INSERT:
+				delete(to);
+				break;
+			case REMOVE:
+				insert(from, previous);
+				break;
+			case REPLACE:
+				replace(node(to), to, previous);
+				break;
+			default:
+				relocate(to, from);
+			}
+		}
+		
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			
+			switch(type) {
+			case INSERT:
+				insert(to, slide);
+				break;
+			case REMOVE:
+				delete(from);
+				break;
+			case REPLACE:
+				replace(node(to), to, slide);
+				break;
+			default:
+				relocate(from, to);
+			}
+		}
+		
+		@Override
+		public String getPresentationName() {
+			switch(type) {
+			case INSERT:
+				return "Add Slide";
+			case REMOVE:
+				return "Remove Slide";
+			case REPLACE:
+				return "Replace Slide";
+			default:
+				return "Move Slide";
+			}
+		}
+	}
+	
+	/**
+	 * An edit undoing and redoing a change of order
+	 */
+	private class Reorder extends AbstractUndoableEdit {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Slide[] previous, order;
+		
+		/**
+		 * Constructor
+		 * @param previous - The slides in the order they had
+		 * @param order - The slides in the order they have now
+		 */
+		private Reorder(Slide[] previous, Slide[] order) {
+			this.previous = previous;
+			this.order = order;
+		}
+		
+		@Override
+		public void undo() throws CannotUndoException {
+			super.undo();
+			reorder(previous);
+		}
+		
+		@Override
+		public void redo() throws CannotRedoException {
+			super.redo();
+			reorder(order);
+		}
+		
+		@Override
+		public String getPresentationName() {
+			return "Sort Slides";
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package util;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.util.Comparator;
+
+/**
+ * The orders slides can be sorted in, all worked out from what the metadata index knows about each image
+ * so sorting never decodes pixels. Slides for which the value is unknown come last, in the order they had.
+ */
+public enum SlideOrder implements Comparator<Slide> {
+	
+	/**
+	 * By file name, ignoring case
+	 */
+	FILE_NAME("File Name") {
+		
+		@Override
+		public int compare(Slide a, Slide b) {
+			File first = a.getFile(), second = b.getFile();
+			
+			if(first == null || second == null)
+				return compareKnown(first != null, second != null);
+			return String.CASE_INSENSITIVE_ORDER.compare(first.getName(), second.getName());
+		}
+	},
+	
+	/**
+	 * By the time the photo was taken, oldest first
+	 */
+	CAPTURE_TIME("Capture Time") {
+		
+		@Override
+		public int compare(Slide a, Slide b) {
+			long first = getCaptured(a), second = getCaptured(b);
+			
+			if(first < 0 || second < 0)
+				return compareKnown(first >= 0, second >= 0);
+			return Long.compare(first, second);
+		}
+	},
+	
+	/**
+	 * By camera name, then by the time the photo was taken
+	 */
+	CAMERA("Camera") {
+		
+		@Override
+		public int compare(Slide a, Slide b) {
+			String first = getCamera(a), second = getCamera(b);
+			
+			if(first == null || second == null) {
+				int known = compareKnown(first != null, second != null);
+				return known != 0 ? known : CAPTURE_TIME.compare(a, b);
+			}
+			
+			int order = String.CASE_INSENSITIVE_ORDER.compare(first, second);
+			return order != 0 ? order : CAPTURE_TIME.compare(a, b);
+		}
+	},
+	
+	/**
+	 * By the number of pixels, smallest first
+	 */
+	IMAGE_SIZE("Image Size") {
+		
+		@Override
+		public int compare(Slide a, Slide b) {
+			Dimension first = a.getDisplaySize(), second = b.getDisplaySize();
+			
+			if(first == null || second == null)
+				return compareKnown(first != null, second != null);
+			return Long.compare((long) first.width * first.height, (long) second.width * second.height);
+		}
+	};
+	
+	private final String label;
+	
+	/**
+	 * Constructor
+	 * @param label - The name of the order shown to the user
+	 */
+	private SlideOrder(String label) {
+		this.label = label;
+	}
+	
+	/**
+	 * Gets the name of the order shown to the user
+	 * @return The label
+	 */
+	public String getLabel() {
+		return label;
+	}
+	
+	/**
+	 * Orders two values of which at least one is unknown, putting unknown values last
+	 * @param first - Whether the first value is known
+	 * @param second - Whether the second value is known
+	 * @return The comparison result
+	 */
+	private static int compareKnown(boolean first, boolean second) {
+		return Boolean.compare(second, first);
+	}
+	
+	/**
+	 * Gets when the photo of a slide was taken
+	 * @param slide - The slide
+	 * @return The capture time in milliseconds since the epoch, -1 if unknown
+	 */
+	private static long getCaptured(Slide slide) {
+		Metadata metadata = slide.getMetadata();
+		return metadata == null ? -1 : metadata.getCaptured();
+	}
+	
+	/**
+	 * Gets the camera the photo of a slide was taken with
+	 * @param slide - The slide
+	 * @return The camera name, null if unknown
+	 */
+	private static String getCamera(Slide slide) {
+		Metadata metadata = slide.getMetadata();
+		return metadata == null ? null : metadata.getCamera();
+	}
+}
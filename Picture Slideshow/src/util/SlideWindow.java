@@ -0,0 +1,114 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Limits which slides may keep their decoded images in memory.
+ *
+ * Only the current slide and the slides up to the radius away from it on either side are kept decoded.
+ * The window wraps around the ends of the slide show just like navigation does. Slides inside
+ * the window are decoded by whichever needs them first, the panel painting them or the prefetcher.
+ */
+public class SlideWindow {
+	
+	private final List<Slide> slides;
+	private final List<Slide> resident;
+	private int radius;
+	private int current;
+	
+	/**
+	 * Constructor
+	 * @param slides - The slides in the slide show
+	 * @param radius - The number of slides on either side of the current slide to keep decoded
+	 */
+	public SlideWindow(List<Slide> slides, int radius) {
+		this.slides = slides;
+		this.resident = new ArrayList<Slide>();
+		this.radius = radius;
+	}
+	
+	/**
+	 * Moves the window to be centered on the given slide, releasing the slides leaving it
+	 * @param index - The index of the current slide
+	 */
+	public synchronized void moveTo(int index) {
+		current = index;
+		int size = slides.size();
+		
+		if(size == 0) {
+			clear();
+			return;
+		}
+		
+		List<Slide> window = new ArrayList<Slide>();
+		
+		for(int i = -Math.min(radius, size / 2); i <= Math.min(radius, (size - 1) / 2); i++) {
+			Slide slide = slides.get(Math.floorMod(index + i, size));
+			
+			if(!window.contains(slide))
+				window.add(slide);
+		}
+		
+		Iterator<Slide> it = resident.iterator();
+		
+		while(it.hasNext()) {
+			Slide slide = it.next();
+			
+			if(!window.contains(slide)) {
+				slide.release();
+				it.remove();
+			}
+		}
+		
+		for(Slide slide: window) {
+			if(!resident.contains(slide))
+				resident.add(slide);
+		}
+	}
+	
+	/**
+	 * Checks whether a slide is inside the window and so may stay decoded
+	 * @param slide - The slide to check
+	 * @return True if the slide is inside the window
+	 */
+	public synchronized boolean contains(Slide slide) {
+		return resident.contains(slide);
+	}
+	
+	/**
+	 * Releases every slide held by the window
+	 */
+	public synchronized void clear() {
+		for(Slide slide: resident)
+			slide.release();
+		
+		resident.clear();
+	}
+	
+	/**
+	 * Sets the number of slides on either side of the current slide to keep decoded
+	 * @param radius - The new window radius
+	 */
+	public synchronized void setRadius(int radius) {
+		this.radius = radius;
+		moveTo(current);
+	}
+	
+	/**
+	 * Gets the number of slides on either side of the current slide kept decoded
+	 * @return The window radius
+	 */
+	public synchronized int getRadius() {
+		return radius;
+	}
+	
+	/**
+	 * Gets the index of the slide the window is centered on
+	 * @return The current slide index
+	 */
+	public synchronized int getCurrent() {
+		return current;
+	}
+}
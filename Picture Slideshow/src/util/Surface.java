@@ -0,0 +1,137 @@
+package util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Draws a frame through an accelerated surface when the screen supports it.
+ *
+ * The frame is copied once into a VolatileImage, which the graphics pipeline can keep in video memory,
+ * and later paints only blit that surface. Its contents can be lost at any time, for example when the
+ * display mode changes, so every draw validates the surface first, copies the frame again if it was
+ * restored or recreated, and retries if the contents were lost while drawing.
+ *
+ * Drawing falls back to the frame itself when running headless, when drawing to something other than a
+ * screen such as a printer or an offscreen image, when the surface turns out not to be accelerated, or
+ * when acceleration is turned off with the slideshow.accelerated system property.
+ */
+public class Surface {
+	
+	private static final boolean ENABLED = !GraphicsEnvironment.isHeadless()
+			&& Boolean.parseBoolean(System.getProperty("slideshow.accelerated", "true"));
+	
+	private BufferedImage frame;
+	private VolatileImage surface;
+	private boolean unaccelerated;
+	
+	/**
+	 * Sets the frame drawn by the surface, discarding the copy of the previous frame
+	 * @param frame - The frame to draw
+	 */
+	public void setFrame(BufferedImage frame) {
+		if(frame == this.frame)
+			return;
+		
+		this.frame = frame;
+		flush();
+	}
+	
+	/**
+	 * Gets the frame drawn by the surface
+	 * @return The frame, null if none has been set
+	 */
+	public BufferedImage getFrame() {
+		return frame;
+	}
+	
+	/**
+	 * Draws the frame
+	 * @param g - The Graphics to draw with
+	 * @param x - The x coordinate to draw the frame at
+	 * @param y - The y coordinate to draw the frame at
+	 */
+	public void draw(Graphics g, int x, int y) {
+		if(frame == null)
+			return;
+		
+		GraphicsConfiguration gc = getScreenConfiguration(g);
+		
+		if(gc == null || unaccelerated) {
+			g.drawImage(frame, x, y, null);
+			return;
+		}
+		
+		do {
+			int status = surface == null ? VolatileImage.IMAGE_INCOMPATIBLE : surface.validate(gc);
+			
+			if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				flush();
+				surface = gc.createCompatibleVolatileImage(frame.getWidth(), frame.getHeight(), frame.getTransparency());
+				
+				if(surface == null || !surface.getCapabilities().isAccelerated()) {
+					flush();
+					unaccelerated = true;
+					g.drawImage(frame, x, y, null);
+					return;
+				}
+				
+				render();
+			} else if(status == VolatileImage.IMAGE_RESTORED) {
+				render();
+			}
+			
+			g.drawImage(surface, x, y, null);
+		} while(surface.contentsLost());
+	}
+	
+	/**
+	 * Releases the accelerated copy of the frame; it is created again by the next draw
+	 */
+	public void flush() {
+		if(surface != null) {
+			surface.flush();
+			surface = null;
+		}
+	}
+	
+	/**
+	 * Checks whether the surface is being drawn through an accelerated copy
+	 * @return True if the last draw used an accelerated surface
+	 */
+	public boolean isAccelerated() {
+		return surface != null;
+	}
+	
+	/**
+	 * Copies the frame into the accelerated surface
+	 */
+	private void render() {
+		Graphics2D g2 = surface.createGraphics();
+		g2.setComposite(AlphaComposite.Src);
+		g2.drawImage(frame, 0, 0, null);
+		g2.dispose();
+	}
+	
+	/**
+	 * Gets the screen configuration a Graphics draws to
+	 * @param g - The Graphics to check
+	 * @return The screen configuration, null if acceleration is off or the Graphics does not draw to a screen
+	 */
+	private static GraphicsConfiguration getScreenConfiguration(Graphics g) {
+		if(!ENABLED || !(g instanceof Graphics2D))
+			return null;
+		
+		GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+		
+		if(gc == null || gc.getDevice().getType() != GraphicsDevice.TYPE_RASTER_SCREEN)
+			return null;
+		
+		return gc;
+	}
+}
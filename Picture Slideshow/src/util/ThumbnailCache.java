@@ -0,0 +1,170 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Provides slide thumbnails, keeping the thumbnails of image files in a cache on disk.
+ *
+ * Slides read from a slide show file already carry their thumbnail. Thumbnails of image files are looked
+ * up in the cache directory by a key made of the file path, modification time and length, so an edited
+ * file gets a new thumbnail. Missing thumbnails are rendered from a subsampled decode of the image, stored
+ * in the cache and kept on the slide, where saving the slide show will reuse them.
+ */
+public final class ThumbnailCache {
+	
+	private static final String EXTENSION = ".jpg";
+	private static final File DIRECTORY = new File(System.getProperty("slideshow.thumbnails",
+			System.getProperty("user.home") + File.separator + ".slideshow" + File.separator + "thumbnails"));
+	
+	private ThumbnailCache() {}
+	
+	/**
+	 * Gets the encoded thumbnail of a slide, rendering and caching it if necessary.
+	 * May be called from any thread
+	 * @param slide - The slide to get the thumbnail of
+	 * @return A buffer holding the encoded thumbnail, null if the slide image could not be decoded
+	 */
+	public static ByteBuffer getEncoded(Slide slide) {
+		ByteBuffer thumbnail = slide.getThumbnail();
+		
+		if(thumbnail != null) {
+			Metrics.hit(Metrics.Cache.THUMBNAIL);
+			return thumbnail;
+		}
+		
+		File file = slide.getFile();
+		File entry = file != null ? getEntry(file, slide.getOrientation()) : null;
+		
+		if(entry != null && entry.isFile()) {
+			try {
+				thumbnail = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+				slide.setThumbnail(thumbnail);
+				Metrics.hit(Metrics.Cache.THUMBNAIL);
+				return thumbnail;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		Metrics.miss(Metrics.Cache.THUMBNAIL);
+		BufferedImage image = decode(slide);
+		
+		if(image == null)
+			return null;
+		
+		try {
+			thumbnail = SlideFile.renderThumbnail(image);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		
+		slide.setThumbnail(thumbnail);
+		
+		if(entry != null)
+			store(entry, thumbnail.duplicate());
+		
+		return thumbnail;
+	}
+	
+	/**
+	 * Gets the decoded thumbnail of a slide, rendering and caching it if necessary.
+	 * May be called from any thread
+	 * @param slide - The slide to get the thumbnail of
+	 * @return The thumbnail, null if the slide image could not be decoded
+	 */
+	public static BufferedImage get(Slide slide) {
+		ByteBuffer thumbnail = getEncoded(slide);
+		return thumbnail == null ? null : IO.load(thumbnail);
+	}
+	
+	/**
+	 * Gets the directory the thumbnails are cached in
+	 * @return The cache directory
+	 */
+	public static File getDirectory() {
+		return DIRECTORY;
+	}
+	
+	/**
+	 * Decodes a slide image just large enough to render its thumbnail, turned upright
+	 * @param slide - The slide to decode
+	 * @return The decoded image, null if it could not be decoded
+	 */
+	private static BufferedImage decode(Slide slide) {
+		int size = SlideFile.THUMBNAIL_SIZE;
+		
+		if(slide.isLoaded() || (slide.getFile() == null && slide.getData() == null))
+			return slide.getImage();
+		
+		if(slide.getFile() != null)
+			return ImageUtils.orient(IO.load(slide.getFile(), size, size), slide.getOrientation());
+		
+		return ImageUtils.orient(IO.load(slide.getData(), size, size), slide.getOrientation());
+	}
+	
+	/**
+	 * Gets the cache entry for an image file in its current state. Images with an EXIF orientation get
+	 * their own entries, so thumbnails cached before orientation was applied are not reused
+	 * @param file - The image file
+	 * @param orientation - The EXIF orientation of the image
+	 * @return The cache entry, which may not exist yet, or null if the file does not exist
+	 */
+	private static File getEntry(File file, int orientation) {
+		long modified = file.lastModified();
+		
+		if(modified == 0)
+			return null;
+		
+		String key = file.getAbsolutePath() + '\n' + modified + '\n' + file.length();
+		
+		if(orientation != Metadata.NORMAL)
+			key += "\n" + orientation;
+		
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			
+			for(byte b: hash)
+				name.append(String.format("%02x", b));
+			
+			return new File(DIRECTORY, name.append(EXTENSION).toString());
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a thumbnail to the cache, replacing the entry atomically so concurrent readers never see
+	 * a partly written thumbnail
+	 * @param entry - The cache entry to write
+	 * @param thumbnail - The encoded thumbnail
+	 */
+	private static void store(File entry, ByteBuffer thumbnail) {
+		try {
+			Files.createDirectories(DIRECTORY.toPath());
+			Path temp = Files.createTempFile(DIRECTORY.toPath(), "thumb", EXTENSION + ".tmp");
+			
+			try {
+				byte[] bytes = new byte[thumbnail.remaining()];
+				thumbnail.get(bytes);
+				Files.write(temp, bytes);
+				Files.move(temp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A global cache of decoded tiles shared by every deep view.
+ *
+ * The total size of all tiles is kept within a memory budget by evicting the least recently used tiles
+ * first, which bounds the memory used to explore images of any size.
+ */
+public final class TileCache {
+	
+	private static final long DEFAULT_BUDGET = Long.getLong("slideshow.tileCache", 128) * 1024 * 1024;
+	
+	private static final LinkedHashMap<TilePyramid.Tile, BufferedImage> tiles = new LinkedHashMap<TilePyramid.Tile, BufferedImage>(16, 0.75f, true);
+	
+	private static long budget = DEFAULT_BUDGET;
+	private static long size;
+	private static long hits, misses;
+	
+	/**
+	 * Private Constructor
+	 */
+	private TileCache() {}
+	
+	/**
+	 * Gets a cached tile
+	 * @param tile - The tile
+	 * @return The decoded tile, null if it is not cached
+	 */
+	public static synchronized BufferedImage get(TilePyramid.Tile tile) {
+		BufferedImage image = tiles.get(tile);
+		
+		if(image != null)
+			hits++;
+		else
+			misses++;
+		
+		return image;
+	}
+	
+	/**
+	 * Checks whether a tile is cached without counting a lookup or changing its place in the eviction order
+	 * @param tile - The tile
+	 * @return True if the tile is cached
+	 */
+	public static synchronized boolean contains(TilePyramid.Tile tile) {
+		return tiles.containsKey(tile);
+	}
+	
+	/**
+	 * Caches a decoded tile
+	 * @param tile - The tile
+	 * @param image - The decoded tile
+	 */
+	public static synchronized void put(TilePyramid.Tile tile, BufferedImage image) {
+		BufferedImage previous = tiles.put(tile, image);
+		
+		if(previous != null)
+			size -= ImageUtils.getBytes(previous);
+		
+		size += ImageUtils.getBytes(image);
+		trim();
+	}
+	
+	/**
+	 * Drops every cached tile
+	 */
+	public static synchronized void clear() {
+		tiles.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Sets the memory budget, evicting tiles if the cache is now over budget
+	 * @param bytes - The maximum number of bytes all cached tiles may use
+	 */
+	public static synchronized void setBudget(long bytes) {
+		budget = bytes;
+		trim();
+	}
+	
+	/**
+	 * Gets the memory budget
+	 * @return The maximum number of bytes all cached tiles may use
+	 */
+	public static synchronized long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Gets the memory currently used by cached tiles
+	 * @return The number of bytes used by all cached tiles
+	 */
+	public static synchronized long getSize() {
+		return size;
+	}
+	
+	/**
+	 * Gets the number of lookups which found a tile
+	 * @return The cache hit count
+	 */
+	public static synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Gets the number of lookups which did not find a tile
+	 * @return The cache miss count
+	 */
+	public static synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Evicts the least recently used tiles until the cache is within budget.
+	 * The most recently used tile is always kept
+	 */
+	private static void trim() {
+		Iterator<Map.Entry<TilePyramid.Tile, BufferedImage>> it = tiles.entrySet().iterator();
+		
+		while(size > budget && tiles.size() > 1 && it.hasNext()) {
+			size -= ImageUtils.getBytes(it.next().getValue());
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package util;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a slide image into a pyramid of tiles which are decoded on their own.
+ *
+ * Level 0 holds the image at full resolution and every level above it halves the resolution, up to the
+ * level at which the whole image fits in a single tile. Each tile is decoded straight from the encoded
+ * image by decoding only its region of the image, keeping every nth pixel for the upper levels, so the
+ * memory needed to show any part of an image at any zoom depends on the size of the view rather than the
+ * size of the image.
+ *
+ * The pyramid covers the image turned upright. The tiles of an image with an EXIF orientation are decoded
+ * from the matching region of the stored image and then turned upright themselves.
+ */
+public class TilePyramid {
+	
+	/**
+	 * The size of a tile in the pixels of its level
+	 */
+	public static final int TILE_SIZE = 512;
+	
+	/**
+	 * A single tile of a pyramid
+	 */
+	public static class Tile {
+		
+		private final TilePyramid pyramid;
+		private final int level, column, row;
+		
+		/**
+		 * Constructor
+		 * @param pyramid - The pyramid the tile belongs to
+		 * @param level - The level of the tile
+		 * @param column - The column of the tile in its level
+		 * @param row - The row of the tile in its level
+		 */
+		private Tile(TilePyramid pyramid, int level, int column, int row) {
+			this.pyramid = pyramid;
+			this.level = level;
+			this.column = column;
+			this.row = row;
+		}
+		
+		/**
+		 * Gets the level of the tile
+		 * @return The level, 0 for full resolution
+		 */
+		public int getLevel() {
+			return level;
+		}
+		
+		/**
+		 * Gets the part of the full resolution image the tile covers
+		 * @return The region of the tile in full resolution pixels
+		 */
+		public Rectangle getRegion() {
+			int span = TILE_SIZE << level;
+			int x = column * span, y = row * span;
+			return new Rectangle(x, y, Math.min(span, pyramid.width - x), Math.min(span, pyramid.height - y));
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Tile))
+				return false;
+			
+			Tile other = (Tile) o;
+			return other.pyramid.slide == pyramid.slide && other.level == level && other.column == column && other.row == row;
+		}
+		
+		@Override
+		public int hashCode() {
+			return ((System.identityHashCode(pyramid.slide) * 31 + level) * 31 + column) * 31 + row;
+		}
+	}
+	
+	private final Slide slide;
+	private final int width, height, levels;
+	
+	/**
+	 * Constructor
+	 * @param slide - The slide to split into tiles
+	 * @param size - The dimensions of the full resolution upright image
+	 */
+	public TilePyramid(Slide slide, Dimension size) {
+		this.slide = slide;
+		this.width = size.width;
+		this.height = size.height;
+		
+		int top = 0;
+		
+		while((TILE_SIZE << top) < Math.max(width, height))
+			top++;
+		
+		this.levels = top + 1;
+	}
+	
+	/**
+	 * Gets the slide the pyramid is split from
+	 * @return The slide
+	 */
+	public Slide getSlide() {
+		return slide;
+	}
+	
+	/**
+	 * Gets the dimensions of the full resolution image
+	 * @return The image dimensions
+	 */
+	public Dimension getSize() {
+		return new Dimension(width, height);
+	}
+	
+	/**
+	 * Gets the number of levels
+	 * @return The number of levels, at least 1
+	 */
+	public int getLevels() {
+		return levels;
+	}
+	
+	/**
+	 * Gets the level to draw at a scale, the coarsest level which still has at least one pixel per screen pixel
+	 * @param scale - The number of screen pixels per full resolution pixel
+	 * @return The level
+	 */
+	public int getLevel(double scale) {
+		int level = 0;
+		
+		while(level < levels - 1 && (2 << level) * scale <= 1)
+			level++;
+		
+		return level;
+	}
+	
+	/**
+	 * Gets the tiles of a level which cover a part of the image
+	 * @param level - The level of the tiles
+	 * @param area - The part of the image to cover, in full resolution pixels
+	 * @return The tiles covering the area, in rows from the top left
+	 */
+	public List<Tile> getTiles(int level, Rectangle area) {
+		List<Tile> tiles = new ArrayList<Tile>();
+		Rectangle bounds = area.intersection(new Rectangle(width, height));
+		
+		if(bounds.isEmpty())
+			return tiles;
+		
+		int span = TILE_SIZE << level;
+		
+		for(int row = bounds.y / span; row <= (bounds.y + bounds.height - 1) / span; row++) {
+			for(int column = bounds.x / span; column <= (bounds.x + bounds.width - 1) / span; column++)
+				tiles.add(new Tile(this, level, column, row));
+		}
+		return tiles;
+	}
+	
+	/**
+	 * Gets the tile of a level holding a point of the image
+	 * @param level - The level of the tile
+	 * @param x - The x coordinate of the point in full resolution pixels
+	 * @param y - The y coordinate of the point in full resolution pixels
+	 * @return The tile
+	 */
+	public Tile getTile(int level, int x, int y) {
+		int span = TILE_SIZE << level;
+		return new Tile(this, level, x / span, y / span);
+	}
+	
+	/**
+	 * Decodes a tile from the encoded image. May be called from any thread
+	 * @param tile - The tile to decode
+	 * @return The decoded tile, null if the image could not be decoded
+	 */
+	public BufferedImage decode(Tile tile) {
+		Rectangle region = tile.getRegion();
+		int subsampling = 1 << tile.level;
+		File file = slide.getFile();
+		ByteBuffer data = slide.getData();
+		int orientation = slide.getOrientation();
+		
+		if(file != null)
+			return ImageUtils.orient(IO.load(file, toStored(region, orientation), subsampling), orientation);
+		
+		if(data != null)
+			return ImageUtils.orient(IO.load(data, toStored(region, orientation), subsampling), orientation);
+		
+		BufferedImage image = slide.getImage();
+		
+		if(image == null)
+			return null;
+		
+		region = region.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+		
+		if(region.isEmpty())
+			return null;
+		
+		return ImageUtils.force(image.getSubimage(region.x, region.y, region.width, region.height),
+				Math.max(1, region.width / subsampling), Math.max(1, region.height / subsampling));
+	}
+	
+	/**
+	 * Maps a region of the upright image to the region of the stored image it comes from
+	 * @param region - The region of the upright image
+	 * @param orientation - The EXIF orientation of the image
+	 * @return The region of the stored image
+	 */
+	private Rectangle toStored(Rectangle region, int orientation) {
+		if(orientation == Metadata.NORMAL)
+			return region;
+		
+		boolean transposed = ImageUtils.isTransposed(orientation);
+		AffineTransform transform = ImageUtils.getOrientation(orientation, transposed ? height : width, transposed ? width : height);
+		
+		try {
+			return transform.createInverse().createTransformedShape(region).getBounds();
+		} catch (NoninvertibleTransformException e) {
+			e.printStackTrace();
+			return region;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package util;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders one frame of a transition between two slides.
+ *
+ * Both slides are given as frames already scaled to fit the display area, so rendering a transition frame
+ * only composites them. Frames are drawn centered in the display area over a black background, the same
+ * way the slide show lays them out. Every frame is drawn into the caller's back buffer through a caller
+ * owned Graphics, and the alpha composites are created once up front, so rendering allocates nothing.
+ */
+public class Transition {
+	
+	/**
+	 * The ways of moving from one slide to the next
+	 */
+	public enum Effect {
+		
+		/**
+		 * The new slide replaces the old one at once
+		 */
+		NONE,
+		
+		/**
+		 * The new slide fades in over the old one
+		 */
+		CROSSFADE,
+		
+		/**
+		 * The new slide pushes the old one out sideways, in the direction of navigation
+		 */
+		SLIDE,
+		
+		/**
+		 * The new slide grows from the center while fading in
+		 */
+		ZOOM
+	}
+	
+	private static final int LEVELS = 256;
+	private static final Composite[] COMPOSITES = new Composite[LEVELS];
+	private static final double ZOOM_START = 0.6;
+	
+	static {
+		for(int i = 0; i < LEVELS; i++)
+			COMPOSITES[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, i / (float) (LEVELS - 1));
+	}
+	
+	private final Effect effect;
+	private final BufferedImage from, to;
+	private final int direction;
+	
+	/**
+	 * Constructor
+	 * @param effect - The transition effect
+	 * @param from - The frame of the slide being left, may be null
+	 * @param to - The frame of the slide being shown
+	 * @param direction - 1 if moving forward through the slide show, -1 if moving backward
+	 */
+	public Transition(Effect effect, BufferedImage from, BufferedImage to, int direction) {
+		this.effect = effect;
+		this.from = from;
+		this.to = to;
+		this.direction = direction < 0 ? -1 : 1;
+	}
+	
+	/**
+	 * Renders the transition at the given point
+	 * @param g - The Graphics of the back buffer
+	 * @param width - The width of the display area
+	 * @param height - The height of the display area
+	 * @param progress - How far the transition is, from 0 to 1
+	 */
+	public void render(Graphics2D g, int width, int height, double progress) {
+		double t = ease(Math.max(0, Math.min(1, progress)));
+		
+		g.setComposite(AlphaComposite.Src);
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, width, height);
+		
+		switch(effect) {
+		case CROSSFADE:
+			draw(g, from, width, height, 0, 1, 1);
+			draw(g, to, width, height, 0, 1, t);
+			break;
+		case SLIDE:
+			int offset = (int) Math.round(t * width) * direction;
+			draw(g, from, width, height, -offset, 1, 1);
+			draw(g, to, width, height, direction * width - offset, 1, 1);
+			break;
+		case ZOOM:
+			draw(g, from, width, height, 0, 1, 1 - t);
+			draw(g, to, width, height, 0, ZOOM_START + (1 - ZOOM_START) * t, t);
+			break;
+		default:
+			draw(g, to, width, height, 0, 1, 1);
+		}
+		
+		g.setComposite(AlphaComposite.SrcOver);
+	}
+	
+	/**
+	 * Gets the effect of the transition
+	 * @return The transition effect
+	 */
+	public Effect getEffect() {
+		return effect;
+	}
+	
+	/**
+	 * Draws a frame centered in the display area
+	 * @param g - The Graphics to draw with
+	 * @param frame - The frame to draw, may be null
+	 * @param width - The width of the display area
+	 * @param height - The height of the display area
+	 * @param offset - The horizontal offset from the centered position
+	 * @param scale - The scale to draw the frame at
+	 * @param alpha - The opacity to draw the frame with
+	 */
+	private static void draw(Graphics2D g, BufferedImage frame, int width, int height, int offset, double scale, double alpha) {
+		if(frame == null || alpha <= 0)
+			return;
+		
+		g.setComposite(COMPOSITES[(int) Math.round(alpha * (LEVELS - 1))]);
+		
+		if(scale == 1) {
+			g.drawImage(frame, (width - frame.getWidth()) / 2 + offset, (height - frame.getHeight()) / 2, null);
+			return;
+		}
+		
+		int w = Math.max(1, (int) Math.round(frame.getWidth() * scale));
+		int h = Math.max(1, (int) Math.round(frame.getHeight() * scale));
+		
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(frame, (width - w) / 2 + offset, (height - h) / 2, w, h, null);
+	}
+	
+	/**
+	 * Eases the transition in and out
+	 * @param t - The linear progress, from 0 to 1
+	 * @return The eased progress
+	 */
+	private static double ease(double t) {
+		return t * t * (3 - 2 * t);
+	}
+}
@@ -0,0 +1,382 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Fetches images from URLs, keeping the downloaded bytes in a cache on disk.
+ *
+ * Each cached download is stored as a data file next to a small properties file holding the URL and the
+ * ETag and Last-Modified validators the server sent. A cached download is revalidated with a conditional
+ * request, so an unchanged image costs a 304 response instead of a new download, and is used as is if the
+ * server cannot be reached or fails with a 5xx status. A 4xx status such as 404 Not Found is reported to
+ * the caller, so an image removed from the server is not shown from the cache forever. The cache is kept
+ * under a byte budget by deleting the least recently used downloads. The size of the cache is counted once
+ * and then kept up to date as downloads are stored, and eviction goes down to a little under the budget,
+ * so storing a download rarely has to list the cache directory. Cached data is memory mapped, so slides
+ * decode straight from the cache file.
+ *
+ * URLs which do not use HTTP, such as file URLs, are read directly without caching.
+ */
+public final class UrlCache {
+	
+	private static final String DATA = ".data";
+	private static final String META = ".properties";
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+	
+	private static final int TIMEOUT = 15000;
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final double LOW_WATER = 0.9;
+	
+	private static final File DIRECTORY = new File(System.getProperty("slideshow.downloads",
+			System.getProperty("user.home") + File.separator + ".slideshow" + File.separator + "downloads"));
+	
+	private static volatile long budget = Long.getLong("slideshow.downloadCache", 256) * MEGABYTE;
+	private static long size = -1;
+	
+	private UrlCache() {}
+	
+	/**
+	 * Fetches the bytes of a URL, from the cache if the server confirms the cached copy is current.
+	 * May be called from any thread
+	 * @param url - The URL to fetch
+	 * @return A buffer holding the fetched bytes
+	 * @throws IOException If the URL could not be fetched and no cached copy exists
+	 */
+	public static ByteBuffer fetch(URL url) throws IOException {
+		if(url.getProtocol().equals("file"))
+			return readFile(url);
+		
+		URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		
+		if(!(connection instanceof HttpURLConnection)) {
+			try (InputStream in = connection.getInputStream()) {
+				return ByteBuffer.wrap(readFully(in, connection.getContentLengthLong()));
+			}
+		}
+		
+		HttpURLConnection http = (HttpURLConnection) connection;
+		String key = getKey(url);
+		Path data = DIRECTORY.toPath().resolve(key + DATA);
+		Path meta = DIRECTORY.toPath().resolve(key + META);
+		Properties validators = readMeta(meta);
+		boolean cached = validators != null && Files.isRegularFile(data);
+		
+		if(cached) {
+			if(validators.getProperty(ETAG) != null)
+				http.setRequestProperty("If-None-Match", validators.getProperty(ETAG));
+			if(validators.getProperty(LAST_MODIFIED) != null)
+				http.setRequestProperty("If-Modified-Since", validators.getProperty(LAST_MODIFIED));
+		}
+		
+		int status = -1;
+		
+		try {
+			status = http.getResponseCode();
+			
+			if(cached && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				Metrics.hit(Metrics.Cache.DOWNLOAD);
+				return readCached(data);
+			}
+			
+			if(status != HttpURLConnection.HTTP_OK)
+				throw new IOException("HTTP " + status + " fetching " + url);
+			
+			byte[] bytes;
+			
+			try (InputStream in = http.getInputStream()) {
+				bytes = readFully(in, http.getContentLengthLong());
+			}
+			
+			Metrics.miss(Metrics.Cache.DOWNLOAD);
+			store(url, key, bytes, http.getHeaderField("ETag"), http.getHeaderField("Last-Modified"));
+			return ByteBuffer.wrap(bytes);
+		} catch (IOException e) {
+			if(cached && !isClientError(status))
+				return readCached(data);
+			throw e;
+		} finally {
+			http.disconnect();
+		}
+	}
+	
+	/**
+	 * Deletes every cached download
+	 */
+	public static synchronized void clear() {
+		for(File file: listEntries())
+			file.delete();
+		size = -1;
+	}
+	
+	/**
+	 * Sets the number of bytes the cached downloads may use on disk, evicting downloads if necessary
+	 * @param bytes - The new cache budget
+	 */
+	public static synchronized void setBudget(long bytes) {
+		budget = bytes;
+		evict();
+	}
+	
+	/**
+	 * Gets the number of bytes the cached downloads may use on disk
+	 * @return The cache budget
+	 */
+	public static long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Gets the number of bytes the cached downloads currently use on disk
+	 * @return The cache size in bytes
+	 */
+	public static synchronized long getSize() {
+		if(size < 0) {
+			size = 0;
+			
+			for(File file: listEntries())
+				size += file.length();
+		}
+		return size;
+	}
+	
+	/**
+	 * Gets the directory the downloads are cached in
+	 * @return The cache directory
+	 */
+	public static File getDirectory() {
+		return DIRECTORY;
+	}
+	
+	/**
+	 * Reads the file a file URL points to
+	 * @param url - The file URL
+	 * @return A buffer mapping the file
+	 * @throws IOException If the file could not be read
+	 */
+	private static ByteBuffer readFile(URL url) throws IOException {
+		try {
+			return map(Paths.get(url.toURI()));
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("Invalid file URL " + url, e);
+		}
+	}
+	
+	/**
+	 * Reads a cached download, marking it as recently used
+	 * @param data - The cached data file
+	 * @return A buffer mapping the cached data
+	 * @throws IOException If the cached data could not be read
+	 */
+	private static ByteBuffer readCached(Path data) throws IOException {
+		data.toFile().setLastModified(System.currentTimeMillis());
+		return map(data);
+	}
+	
+	/**
+	 * Maps a file into memory read only
+	 * @param path - The file to map
+	 * @return A buffer mapping the whole file
+	 * @throws IOException If the file could not be mapped
+	 */
+	private static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	
+	/**
+	 * Reads a stream to its end
+	 * @param in - The stream to read
+	 * @param length - The expected number of bytes, -1 if unknown
+	 * @return The bytes read
+	 * @throws IOException If the stream could not be read
+	 */
+	private static byte[] readFully(InputStream in, long length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE ? (int) length : 8192);
+		byte[] buffer = new byte[8192];
+		int read;
+		
+		while((read = in.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Adds a download to the cache, replacing any older copy, and evicts old downloads if over budget
+	 * @param url - The downloaded URL
+	 * @param key - The cache key of the URL
+	 * @param bytes - The downloaded bytes
+	 * @param etag - The ETag sent by the server, may be null
+	 * @param lastModified - The Last-Modified date sent by the server, may be null
+	 */
+	private static void store(URL url, String key, byte[] bytes, String etag, String lastModified) {
+		if(bytes.length > budget)
+			return;
+		
+		Properties meta = new Properties();
+		meta.setProperty("url", url.toString());
+		
+		if(etag != null)
+			meta.setProperty(ETAG, etag);
+		if(lastModified != null)
+			meta.setProperty(LAST_MODIFIED, lastModified);
+		
+		try {
+			Path directory = DIRECTORY.toPath();
+			Files.createDirectories(directory);
+			
+			Path data = Files.createTempFile(directory, key, DATA + ".tmp");
+			Path properties = Files.createTempFile(directory, key, META + ".tmp");
+			
+			try {
+				Files.write(data, bytes);
+				
+				try (OutputStream out = Files.newOutputStream(properties)) {
+					meta.store(out, null);
+				}
+				
+				synchronized(UrlCache.class) {
+					Path cachedData = directory.resolve(key + DATA), cachedMeta = directory.resolve(key + META);
+					long total = getSize() - cachedData.toFile().length() - cachedMeta.toFile().length() + Files.size(data) + Files.size(properties);
+					
+					Files.move(data, cachedData, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					Files.move(properties, cachedMeta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					size = total;
+					evict();
+				}
+			} finally {
+				Files.deleteIfExists(data);
+				Files.deleteIfExists(properties);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Reads the validators of a cached download
+	 * @param meta - The properties file of the download
+	 * @return The validators, null if the download is not cached
+	 */
+	private static Properties readMeta(Path meta) {
+		if(!Files.isRegularFile(meta))
+			return null;
+		
+		Properties properties = new Properties();
+		
+		try (InputStream in = Files.newInputStream(meta)) {
+			properties.load(in);
+			return properties;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Deletes the least recently used downloads if the cache is over its budget, until it is a little under
+	 * the budget, so the next few downloads fit without listing the cache again. Must be called while
+	 * holding the class lock
+	 */
+	private static void evict() {
+		if(getSize() <= budget)
+			return;
+		
+		List<File> data = new ArrayList<File>();
+		size = 0;
+		
+		for(File file: listEntries()) {
+			size += file.length();
+			
+			if(file.getName().endsWith(DATA))
+				data.add(file);
+		}
+		
+		data.sort(Comparator.comparingLong(File::lastModified));
+		
+		for(File file: data) {
+			if(size <= budget * LOW_WATER)
+				break;
+			
+			String name = file.getName();
+			File meta = new File(file.getParentFile(), name.substring(0, name.length() - DATA.length()) + META);
+			long length = file.length() + meta.length();
+			
+			if(file.delete()) {
+				meta.delete();
+				size -= length;
+			}
+		}
+	}
+	
+	/**
+	 * Lists the files of every cached download
+	 * @return The data and properties files in the cache directory
+	 */
+	private static List<File> listEntries() {
+		List<File> entries = new ArrayList<File>();
+		File[] files = DIRECTORY.listFiles();
+		
+		if(files != null) {
+			for(File file: files) {
+				if(file.getName().endsWith(DATA) || file.getName().endsWith(META))
+					entries.add(file);
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * Checks whether a response status says the URL itself is wrong, such as 404 Not Found or 410 Gone,
+	 * rather than that the server could not answer
+	 * @param status - The response status, -1 if no response was received
+	 * @return True for a 4xx status
+	 */
+	private static boolean isClientError(int status) {
+		return status >= 400 && status < 500;
+	}
+	
+	/**
+	 * Gets the cache key of a URL
+	 * @param url - The URL
+	 * @return The hexadecimal SHA-1 hash of the URL
+	 */
+	private static String getKey(URL url) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			
+			for(byte b: hash)
+				key.append(String.format("%02x", b));
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
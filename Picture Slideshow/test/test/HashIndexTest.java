@@ -0,0 +1,150 @@
+package test;
+
+import static test.Test.check;
+import static test.Test.checkEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import util.HashIndex;
+import util.PerceptualHash;
+
+/**
+ * Tests of the hash index against a brute force search which compares the query with every hash. The
+ * index may return any of several values at the same distance, so only the distance of the match is
+ * compared. The hashes include clusters of near duplicates, which are what the slide show searches for.
+ */
+public class HashIndexTest {
+	
+	private static final int VALUES = 4000;
+	private static final int QUERIES = 4000;
+	
+	/**
+	 * Runs the tests
+	 * @param test - The harness
+	 */
+	public void run(Test test) {
+		test.run("hashIndex.find", this::testFind);
+		test.run("hashIndex.remove", this::testRemove);
+	}
+	
+	/**
+	 * Searches at every distance find a match at the same distance as the brute force search, or none
+	 * when it finds none
+	 */
+	private void testFind() {
+		Random random = new Random(7);
+		HashIndex<Integer> index = new HashIndex<Integer>();
+		List<Long> hashes = createHashes(random);
+		
+		for(int i = 0; i < hashes.size(); i++)
+			index.add(hashes.get(i), i);
+		
+		checkEquals(hashes.size(), index.size(), "size");
+		
+		for(int i = 0; i < QUERIES; i++) {
+			long query = flip(random, hashes.get(random.nextInt(hashes.size())), random.nextInt(16));
+			
+			if(i % 4 == 0)
+				query = random.nextLong();
+			
+			checkFind(index, hashes, query, random.nextInt(20));
+		}
+	}
+	
+	/**
+	 * Removed values are no longer found, and searches still match the brute force search over the values
+	 * left
+	 */
+	private void testRemove() {
+		Random random = new Random(11);
+		HashIndex<Integer> index = new HashIndex<Integer>();
+		List<Long> hashes = createHashes(random);
+		
+		for(int i = 0; i < hashes.size(); i++)
+			index.add(hashes.get(i), i);
+		
+		List<Long> kept = new ArrayList<Long>(hashes);
+		
+		for(int i = 0; i < hashes.size(); i += 2) {
+			check(index.remove(hashes.get(i), i), "value " + i + " was removed");
+			kept.set(i, null);
+		}
+		
+		check(!index.remove(hashes.get(0), 0), "a value is only removed once");
+		check(!index.remove(hashes.get(1), -1), "a value not in the index is not removed");
+		checkEquals(hashes.size() / 2, index.size(), "size after removing half the values");
+		
+		for(int i = 0; i < QUERIES; i++) {
+			int target = random.nextInt(hashes.size());
+			long query = flip(random, hashes.get(target), random.nextInt(8));
+			Integer found = index.find(query, random.nextInt(12));
+			
+			check(found == null || found % 2 == 1, "removed value " + found + " was found");
+			checkFind(index, kept, query, random.nextInt(12));
+		}
+		
+		index.clear();
+		checkEquals(0, index.size(), "size after clearing");
+		checkEquals(null, index.find(hashes.get(1), 64), "match after clearing");
+	}
+	
+	/**
+	 * Checks one search against the brute force search
+	 * @param index - The index
+	 * @param hashes - The hash of each value by value, null for values not in the index
+	 * @param query - The hash to search for
+	 * @param maxDistance - The largest distance of a match
+	 */
+	private static void checkFind(HashIndex<Integer> index, List<Long> hashes, long query, int maxDistance) {
+		int expected = Integer.MAX_VALUE;
+		
+		for(Long hash: hashes) {
+			if(hash != null)
+				expected = Math.min(expected, PerceptualHash.distance(query, hash));
+		}
+		
+		Integer found = index.find(query, maxDistance);
+		
+		if(expected > maxDistance) {
+			checkEquals(null, found, "match for " + Long.toHexString(query) + " within " + maxDistance);
+		} else {
+			check(found != null, "no match for " + Long.toHexString(query) + " within " + maxDistance + ", the closest is at " + expected);
+			checkEquals(expected, PerceptualHash.distance(query, hashes.get(found)), "distance of the match for " + Long.toHexString(query)
+					+ " within " + maxDistance);
+		}
+	}
+	
+	/**
+	 * Creates random hashes, a third of which are near duplicates of earlier hashes, some of them exact
+	 * @param random - The source of the hashes
+	 * @return The hashes
+	 */
+	private static List<Long> createHashes(Random random) {
+		List<Long> hashes = new ArrayList<Long>(VALUES);
+		
+		for(int i = 0; i < VALUES; i++) {
+			if(i > 0 && i % 3 == 0)
+				hashes.add(flip(random, hashes.get(random.nextInt(i)), random.nextInt(6)));
+			else
+				hashes.add(random.nextLong());
+		}
+		return hashes;
+	}
+	
+	/**
+	 * Flips distinct random bits of a hash
+	 * @param random - The source of the bits
+	 * @param hash - The hash
+	 * @param bits - The number of bits to flip
+	 * @return The hash at that distance from the given hash
+	 */
+	private static long flip(Random random, long hash, int bits) {
+		long mask = 0;
+		
+		while(Long.bitCount(mask) < bits)
+			mask |= 1L << random.nextInt(64);
+		return hash ^ mask;
+	}
+}
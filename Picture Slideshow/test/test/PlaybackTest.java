@@ -0,0 +1,257 @@
+package test;
+
+import static test.Test.check;
+import static test.Test.checkEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import util.Playback;
+import util.Slide;
+
+/**
+ * Tests of the playback deadlines with a clock the test moves by hand. The scheduler records each switch
+ * instead of running it, and the test runs it at the time it was due, while the listener moves the clock
+ * on by the time the switch takes.
+ */
+public class PlaybackTest {
+	
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private volatile long now;
+	private volatile int current, advances;
+	private volatile long switchCost;
+	private final List<Slide> slides = new ArrayList<Slide>();
+	private Scheduler scheduler;
+	private Playback playback;
+	
+	/**
+	 * Runs the tests
+	 * @param test - The harness
+	 */
+	public void run(Test test) {
+		test.run("playback.cadence", this::testCadence);
+		test.run("playback.durations", this::testDurations);
+		test.run("playback.missed", this::testMissed);
+		test.run("playback.behind", this::testBehind);
+		test.run("playback.stop", this::testStop);
+	}
+	
+	/**
+	 * Switches stay on a whole second cadence from the start however long they take, and start early by
+	 * the learned switch cost so they finish on their deadline
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void testCadence() throws Exception {
+		setUp(4, 1000);
+		switchCost = 20 * MILLISECOND;
+		onEdt(() -> playback.start(0));
+		checkEquals(SECOND, scheduler.due, "first switch due after the first slide");
+		
+		for(int i = 1; i <= 40; i++) {
+			fire();
+			checkEquals(i % slides.size(), current, "slide after switch " + i);
+			checkEquals((double) (now - i * SECOND) / MILLISECOND, playback.getLateness(), "lateness of switch " + i);
+			check(scheduler.due < (i + 1) * SECOND, "switch " + (i + 1) + " starts before its deadline");
+		}
+		
+		check(Math.abs(playback.getLateness()) < 0.1, "the switch cost is learned, lateness " + playback.getLateness());
+		checkEquals(40, playback.getAdvances(), "switches");
+		checkEquals(0, playback.getMissed(), "missed deadlines");
+		checkEquals(20.0, playback.getMaxLateness(), "maximum lateness, of the first switch");
+		playback.shutdown();
+	}
+	
+	/**
+	 * Each slide is shown for its own duration, or the default duration set while playing
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void testDurations() throws Exception {
+		setUp(3, 1000);
+		slides.get(1).setDuration(300);
+		slides.get(2).setDuration(2500);
+		onEdt(() -> playback.start(0));
+		
+		long deadline = SECOND;
+		long[] durations = {300, 2500, 1000, 300, 2500, 700, 300};
+		
+		for(int i = 0; i < durations.length; i++) {
+			checkEquals(deadline, scheduler.due, "deadline of switch " + (i + 1));
+			
+			if(i == 4)
+				onEdt(() -> playback.setDefaultDuration(700));
+			
+			fire();
+			deadline += durations[i] * MILLISECOND;
+		}
+		playback.shutdown();
+	}
+	
+	/**
+	 * Switches finishing later than the tolerance count as missed, without moving later deadlines
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void testMissed() throws Exception {
+		setUp(2, 1000);
+		onEdt(() -> playback.start(0));
+		
+		fire();
+		switchCost = 200 * MILLISECOND;
+		fire();
+		checkEquals(1, playback.getMissed(), "missed deadlines");
+		checkEquals(200.0, playback.getLateness(), "lateness of the slow switch");
+		
+		switchCost = 0;
+		check(scheduler.due < 3 * SECOND, "the next switch starts early by the learned cost");
+		fire();
+		checkEquals(now - 3 * SECOND, (long) (playback.getLateness() * MILLISECOND), "the cadence is kept");
+		checkEquals(1, playback.getMissed(), "missed deadlines");
+		checkEquals(200.0, playback.getMaxLateness(), "maximum lateness");
+		
+		onEdt(playback::resetCounters);
+		checkEquals(0, playback.getAdvances(), "switches after a reset");
+		checkEquals(0, playback.getMissed(), "missed deadlines after a reset");
+		playback.shutdown();
+	}
+	
+	/**
+	 * After falling more than a slide behind the cadence restarts from the late switch, rather than
+	 * rushing through the missed slides
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void testBehind() throws Exception {
+		setUp(5, 1000);
+		onEdt(() -> playback.start(0));
+		fire();
+		
+		now = scheduler.due + 30 * SECOND;
+		fire(now);
+		checkEquals(1, playback.getMissed(), "missed deadlines");
+		checkEquals(2, advances, "switches, one per late tick");
+		checkEquals(now + SECOND, scheduler.due, "the next switch is a whole slide after the late one");
+		playback.shutdown();
+	}
+	
+	/**
+	 * A switch scheduled before playback stopped or restarted is ignored, and a restart shows the current
+	 * slide for its full duration
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void testStop() throws Exception {
+		setUp(3, 1000);
+		onEdt(() -> playback.start(0));
+		Runnable stale = scheduler.task;
+		
+		now = 400 * MILLISECOND;
+		onEdt(playback::stop);
+		check(!playback.isPlaying(), "stopped");
+		check(scheduler.future.isCancelled(), "the pending switch is cancelled");
+		fire(stale, SECOND);
+		checkEquals(0, advances, "switches after stopping");
+		
+		onEdt(() -> playback.start(2));
+		check(playback.isPlaying(), "restarted");
+		checkEquals(now + SECOND, scheduler.due, "first switch after the restart");
+		fire(stale, now + SECOND);
+		checkEquals(0, advances, "switches from before the restart");
+		fire();
+		checkEquals(1, advances, "switches after the restart");
+		
+		onEdt(playback::shutdown);
+		check(scheduler.isShutdown(), "the scheduler is shut down");
+	}
+	
+	/**
+	 * Creates the slides and the playback, at time zero
+	 * @param count - The number of slides
+	 * @param duration - The default duration in milliseconds
+	 */
+	private void setUp(int count, long duration) {
+		now = 0;
+		current = 0;
+		advances = 0;
+		switchCost = 0;
+		slides.clear();
+		
+		for(int i = 0; i < count; i++)
+			slides.add(new Slide(new byte[] {(byte) i}));
+		
+		scheduler = new Scheduler();
+		playback = new Playback(slides, () -> {
+			now += switchCost;
+			advances++;
+			return current = (current + 1) % slides.size();
+		}, () -> now, scheduler);
+		playback.setDefaultDuration(duration);
+	}
+	
+	/**
+	 * Runs the pending switch at the time it is due
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void fire() throws Exception {
+		fire(scheduler.due);
+	}
+	
+	/**
+	 * Runs the pending switch at a given time
+	 * @param time - The time in nanoseconds
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void fire(long time) throws Exception {
+		fire(scheduler.task, time);
+	}
+	
+	/**
+	 * Runs a scheduled switch at a given time, waiting for it to finish on the event dispatch thread
+	 * @param task - The task the playback scheduled
+	 * @param time - The time in nanoseconds
+	 * @throws Exception If the event dispatch thread failed
+	 */
+	private void fire(Runnable task, long time) throws Exception {
+		check(time >= now, "time does not go backwards");
+		now = time;
+		task.run();
+		onEdt(() -> {});
+	}
+	
+	/**
+	 * Runs code on the event dispatch thread and waits for it, as the playback expects
+	 * @param code - The code
+	 * @throws Exception If the code failed
+	 */
+	private static void onEdt(Runnable code) throws Exception {
+		SwingUtilities.invokeAndWait(code);
+	}
+	
+	/**
+	 * A scheduler which records the last task scheduled and the clock time it is due instead of running it
+	 */
+	private class Scheduler extends ScheduledThreadPoolExecutor {
+		
+		private volatile Runnable task;
+		private volatile long due;
+		private volatile ScheduledFuture<?> future;
+		
+		/**
+		 * Constructor
+		 */
+		private Scheduler() {
+			super(1);
+		}
+		
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			task = command;
+			due = now + unit.toNanos(delay);
+			future = super.schedule(() -> {}, 1, TimeUnit.DAYS);
+			return future;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package test;
+
+import static test.Test.check;
+import static test.Test.checkEquals;
+import static test.Test.checkThrows;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.Slide;
+import util.SlideFile;
+
+/**
+ * Tests of the slide show file format: writing, appending to and reading back a file, and reading files
+ * whose index is truncated or corrupt.
+ */
+public class SlideFileTest {
+	
+	private final File directory;
+	
+	/**
+	 * Constructor
+	 * @param directory - The temporary folder of the test run
+	 */
+	public SlideFileTest(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Runs the tests
+	 * @param test - The harness
+	 */
+	public void run(Test test) {
+		test.run("slideFile.roundTrip", this::testRoundTrip);
+		test.run("slideFile.append", this::testAppend);
+		test.run("slideFile.cancelledAppend", this::testCancelledAppend);
+		test.run("slideFile.truncated", this::testTruncated);
+		test.run("slideFile.corrupt", this::testCorrupt);
+	}
+	
+	/**
+	 * Slides read back from a new file have the images, dimensions, durations and hashes written
+	 * @throws IOException If the file could not be written or read
+	 */
+	private void testRoundTrip() throws IOException {
+		File file = new File(directory, "roundTrip.slider");
+		List<Slide> slides = createSlides(3);
+		slides.get(0).setDuration(2500);
+		slides.get(1).setHash(0x0123456789ABCDEFL);
+		
+		SlideFile.write(file, slides);
+		List<Slide> read = SlideFile.read(file);
+		
+		checkSame(slides, read);
+		checkEquals(SlideFile.HEADER_SIZE + encodedLength(read) + 3L * SlideFile.ENTRY_SIZE, file.length(), "file length");
+	}
+	
+	/**
+	 * Saving over the file the slides were read from appends only the new image and a new index, stores an
+	 * image added twice once, and reads back the same slides
+	 * @throws IOException If the file could not be written or read
+	 */
+	private void testAppend() throws IOException {
+		File file = new File(directory, "append.slider");
+		SlideFile.write(file, createSlides(3));
+		
+		List<Slide> slides = new ArrayList<Slide>(SlideFile.read(file));
+		Slide added = createSlides(4).get(3);
+		Slide again = new Slide(bytes(slides.get(0).getEncoded()), slides.get(0).getSize());
+		slides.add(added);
+		slides.add(again);
+		slides.get(2).setDuration(700);
+		
+		long before = file.length();
+		SlideFile.write(file, slides);
+		long grown = added.getEncoded().remaining() + added.getThumbnail().remaining() + 5L * SlideFile.ENTRY_SIZE;
+		
+		checkEquals(before + grown, file.length(), "file length after appending one new image and an index");
+		checkSame(slides, SlideFile.read(file));
+		
+		List<Slide> kept = new ArrayList<Slide>(SlideFile.read(file));
+		kept.remove(1);
+		before = file.length();
+		SlideFile.write(file, kept);
+		
+		checkEquals(before + 4L * SlideFile.ENTRY_SIZE, file.length(), "file length after removing a slide");
+		checkSame(kept, SlideFile.read(file));
+	}
+	
+	/**
+	 * An append interrupted part way through is cut off again, leaving the file as it was before the save
+	 * @throws IOException If the file could not be written or read
+	 */
+	private void testCancelledAppend() throws IOException {
+		File file = new File(directory, "cancelledAppend.slider");
+		SlideFile.write(file, createSlides(3));
+		
+		List<Slide> slides = new ArrayList<Slide>(SlideFile.read(file));
+		List<Slide> read = new ArrayList<Slide>(slides);
+		slides.addAll(createSlides(8).subList(3, 8));
+		long before = file.length();
+		
+		try {
+			checkThrows(IOException.class, () -> SlideFile.write(file, slides, (done, bytes) -> {
+				if(done == 5)
+					Thread.currentThread().interrupt();
+			}), "an interrupted append");
+		} finally {
+			Thread.interrupted();
+		}
+		
+		checkEquals(before, file.length(), "file length after the interrupted append");
+		checkSame(read, SlideFile.read(file));
+		
+		SlideFile.write(file, slides);
+		checkSame(slides, SlideFile.read(file));
+	}
+	
+	/**
+	 * A file cut short in its index or its header is reported as an IOException
+	 * @throws IOException If the file could not be written
+	 */
+	private void testTruncated() throws IOException {
+		File file = new File(directory, "truncated.slider");
+		SlideFile.write(file, createSlides(2));
+		
+		for(long length: new long[] {file.length() - 1, file.length() - SlideFile.ENTRY_SIZE - 7, SlideFile.HEADER_SIZE - 4}) {
+			File copy = copy(file, "truncated" + length + ".slider");
+			
+			try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+				raf.setLength(length);
+			}
+			checkThrows(IOException.class, () -> SlideFile.read(copy), "reading a file cut to " + length + " bytes");
+		}
+	}
+	
+	/**
+	 * Negative or out of range counts, offsets, lengths and dimensions in the header or index are reported
+	 * as an IOException rather than an unchecked exception
+	 * @throws IOException If the file could not be written
+	 */
+	private void testCorrupt() throws IOException {
+		File file = new File(directory, "corrupt.slider");
+		SlideFile.write(file, createSlides(2));
+		long index = file.length() - 2L * SlideFile.ENTRY_SIZE;
+		
+		corrupt(file, "count", 8, -1);
+		corrupt(file, "indexOffset", 12, -1);
+		corrupt(file, "indexOffset", 12, 0);
+		corrupt(file, "indexOffset", 12, file.length());
+		corrupt(file, "dataOffset", index, -5);
+		corrupt(file, "dataLength", index + 8, -1);
+		corrupt(file, "width", index + 12, -640);
+		corrupt(file, "thumbnailOffset", index + 20, Long.MIN_VALUE);
+		corrupt(file, "thumbnailLength", index + 28, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Checks that reading a copy of a file with one value overwritten throws an IOException
+	 * @param file - The valid file
+	 * @param name - The name of the value
+	 * @param offset - The offset of the value in the file
+	 * @param value - The value to write, as an int for the int fields and a long for the offsets
+	 * @throws IOException If the copy could not be written
+	 */
+	private void corrupt(File file, String name, long offset, long value) throws IOException {
+		File copy = copy(file, "corrupt-" + name + "-" + value + ".slider");
+		boolean wide = name.endsWith("Offset");
+		
+		try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+			raf.seek(offset);
+			
+			if(wide)
+				raf.writeLong(value);
+			else
+				raf.writeInt((int) value);
+		}
+		checkThrows(IOException.class, () -> SlideFile.read(copy), "reading a file with " + name + " " + value);
+	}
+	
+	/**
+	 * Checks that slides read from a file match the slides written
+	 * @param expected - The slides written
+	 * @param actual - The slides read
+	 * @throws IOException If an image could not be read
+	 */
+	private static void checkSame(List<Slide> expected, List<Slide> actual) throws IOException {
+		checkEquals(expected.size(), actual.size(), "slide count");
+		
+		for(int i = 0; i < expected.size(); i++) {
+			Slide written = expected.get(i), read = actual.get(i);
+			
+			checkEquals(written.getEncoded(), read.getEncoded(), "image of slide " + i);
+			checkEquals(written.getSize(), read.getSize(), "dimensions of slide " + i);
+			checkEquals(written.getDuration(), read.getDuration(), "duration of slide " + i);
+			checkEquals(written.hasHash(), read.hasHash(), "hashed flag of slide " + i);
+			check(!written.hasHash() || written.getHash() == read.getHash(), "hash of slide " + i);
+			check(Arrays.equals(written.getDigest(), read.getDigest()), "digest of slide " + i);
+			check(read.getThumbnail() != null && read.getThumbnail().remaining() > 0, "thumbnail of slide " + i);
+		}
+	}
+	
+	/**
+	 * Creates slides of differently coloured and sized images
+	 * @param count - The number of slides
+	 * @return The slides, holding encoded images
+	 */
+	static List<Slide> createSlides(int count) {
+		List<Slide> slides = new ArrayList<Slide>();
+		
+		for(int i = 0; i < count; i++) {
+			BufferedImage image = new BufferedImage(64 + 16 * i, 48 + 8 * i, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2 = image.createGraphics();
+			g2.setColor(Color.getHSBColor(i / (float) count, 0.8f, 0.9f));
+			g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g2.setColor(Color.WHITE);
+			g2.drawString(Integer.toString(i), 10, 20);
+			g2.dispose();
+			slides.add(Slide.encode(image));
+		}
+		return slides;
+	}
+	
+	/**
+	 * Adds up the lengths of the images and thumbnails of slides stored in a file
+	 * @param slides - The slides
+	 * @return The number of bytes
+	 * @throws IOException If an image could not be read
+	 */
+	private static long encodedLength(List<Slide> slides) throws IOException {
+		long length = 0;
+		
+		for(Slide slide: slides)
+			length += slide.getEncoded().remaining() + slide.getThumbnail().remaining();
+		return length;
+	}
+	
+	/**
+	 * Copies the bytes of a buffer
+	 * @param buffer - The buffer, read from its position to its limit
+	 * @return The bytes
+	 */
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Copies a file into the temporary folder, so a mapped file is never changed under its slides
+	 * @param file - The file to copy
+	 * @param name - The name of the copy
+	 * @return The copy
+	 * @throws IOException If the file could not be copied
+	 */
+	private File copy(File file, String name) throws IOException {
+		File copy = new File(directory, name);
+		Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+}
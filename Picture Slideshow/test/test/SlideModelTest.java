@@ -0,0 +1,277 @@
+package test;
+
+import static test.Test.check;
+import static test.Test.checkEquals;
+import static test.Test.checkThrows;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoManager;
+
+import util.Slide;
+import util.SlideModel;
+
+/**
+ * Tests of the slide model against a java.util.ArrayList doing the same changes. Random changes are made
+ * to both, and after each one the model, its indexes and a copy kept up to date from its listener events
+ * must match the list. Every change is then undone and redone through an UndoManager, checking the model
+ * against the list as it was at each step.
+ */
+public class SlideModelTest {
+	
+	private static final int CHANGES = 3000;
+	
+	private final Map<Slide, Integer> ids = new IdentityHashMap<Slide, Integer>();
+	
+	/**
+	 * Runs the tests
+	 * @param test - The harness
+	 */
+	public void run(Test test) {
+		test.run("slideModel.random", () -> testRandom(1));
+		test.run("slideModel.randomLarge", () -> testRandom(2));
+		test.run("slideModel.batch", this::testBatch);
+		test.run("slideModel.invalid", this::testInvalid);
+	}
+	
+	/**
+	 * Makes random changes to the model and a list, then undoes and redoes all of them
+	 * @param seed - The seed of the changes; even seeds grow the slide show larger
+	 */
+	private void testRandom(long seed) {
+		Random random = new Random(seed);
+		SlideModel model = new SlideModel();
+		List<Slide> expected = new ArrayList<Slide>();
+		List<Slide> mirror = mirror(model);
+		UndoManager undo = new UndoManager();
+		undo.setLimit(CHANGES);
+		model.addUndoableEditListener(undo);
+		
+		List<List<Slide>> history = new ArrayList<List<Slide>>();
+		history.add(new ArrayList<Slide>(expected));
+		
+		for(int i = 0; i < CHANGES; i++) {
+			boolean edited = change(random, model, expected, seed % 2 == 0 ? 0.65 : 0.5);
+			checkSame(expected, model, mirror, "after change " + i);
+			
+			if(edited)
+				history.add(new ArrayList<Slide>(expected));
+		}
+		
+		for(int i = history.size() - 2; i >= 0; i--) {
+			check(undo.canUndo(), "can undo to step " + i);
+			undo.undo();
+			checkSame(history.get(i), model, mirror, "after undoing to step " + i);
+		}
+		check(!undo.canUndo(), "every change was undone");
+		
+		for(int i = 1; i < history.size(); i++) {
+			undo.redo();
+			checkSame(history.get(i), model, mirror, "after redoing step " + i);
+		}
+		check(!undo.canRedo(), "every change was redone");
+	}
+	
+	/**
+	 * Changes made between beginEdit and endEdit are undone and redone as one edit, and sorting and removing
+	 * with a filter are single edits
+	 */
+	private void testBatch() {
+		SlideModel model = new SlideModel();
+		UndoManager undo = new UndoManager();
+		model.addUndoableEditListener(undo);
+		List<Slide> expected = new ArrayList<Slide>();
+		
+		for(int i = 0; i < 20; i++) {
+			Slide slide = slide();
+			model.add(slide);
+			expected.add(slide);
+		}
+		
+		List<Slide> before = new ArrayList<Slide>(expected);
+		CompoundEdit edit = model.beginEdit("Import");
+		check(model.beginEdit("Nested") == null, "a nested batch joins the open one");
+		
+		for(int i = 0; i < 5; i++)
+			model.add(slide());
+		
+		model.move(0, 10);
+		model.remove(3);
+		check(model.isEditing(), "the batch is open");
+		model.endEdit(edit);
+		
+		List<Slide> after = new ArrayList<Slide>(model);
+		undo.undo();
+		checkEquals(before, new ArrayList<Slide>(model), "slides after undoing the batch");
+		undo.redo();
+		checkEquals(after, new ArrayList<Slide>(model), "slides after redoing the batch");
+		
+		model.sort(Comparator.comparing(ids::get, Comparator.reverseOrder()));
+		List<Slide> sorted = new ArrayList<Slide>(after);
+		sorted.sort(Comparator.comparing(ids::get, Comparator.reverseOrder()));
+		checkEquals(sorted, new ArrayList<Slide>(model), "sorted slides");
+		
+		model.removeIf(slide -> ids.get(slide) % 3 == 0);
+		undo.undo();
+		checkEquals(sorted, new ArrayList<Slide>(model), "slides after undoing the removal");
+		undo.undo();
+		checkEquals(after, new ArrayList<Slide>(model), "slides after undoing the sort");
+	}
+	
+	/**
+	 * Invalid indexes and slides already in the model are refused without changing it
+	 */
+	private void testInvalid() {
+		SlideModel model = new SlideModel();
+		Slide slide = slide();
+		model.add(slide);
+		
+		checkThrows(IndexOutOfBoundsException.class, () -> model.get(1), "get past the end");
+		checkThrows(IndexOutOfBoundsException.class, () -> model.add(2, slide()), "add past the end");
+		checkThrows(IndexOutOfBoundsException.class, () -> model.remove(-1), "remove before the start");
+		checkThrows(IndexOutOfBoundsException.class, () -> model.move(0, 1), "move past the end");
+		checkThrows(IllegalArgumentException.class, () -> model.add(slide), "add a slide twice");
+		checkEquals(1, model.size(), "size");
+		checkEquals(-1, model.indexOf(slide()), "index of a slide not in the model");
+	}
+	
+	/**
+	 * Makes one random change to the model and the list
+	 * @param random - The source of the change
+	 * @param model - The model
+	 * @param expected - The list
+	 * @param grow - The chance of adding a slide rather than making another change
+	 * @return True if the change was reported as an edit
+	 */
+	private boolean change(Random random, SlideModel model, List<Slide> expected, double grow) {
+		int size = expected.size();
+		double choice = random.nextDouble();
+		
+		if(size == 0 || choice < grow * 0.8) {
+			int index = random.nextInt(size + 1);
+			Slide slide = slide();
+			model.add(index, slide);
+			expected.add(index, slide);
+			return true;
+		}
+		
+		if(choice < grow) {
+			int index = random.nextInt(size);
+			Slide slide = slide();
+			model.set(index, slide);
+			expected.set(index, slide);
+			return true;
+		}
+		
+		int kind = random.nextInt(20);
+		
+		if(kind < 10) {
+			int index = random.nextInt(size);
+			model.remove(index);
+			expected.remove(index);
+			return true;
+		}
+		
+		if(kind < 18) {
+			int from = random.nextInt(size), to = random.nextInt(size);
+			model.move(from, to);
+			expected.add(to, expected.remove(from));
+			return from != to;
+		}
+		
+		if(kind < 19) {
+			int salt = random.nextInt();
+			Comparator<Slide> order = Comparator.comparingInt(slide -> (ids.get(slide) * salt) >>> 28);
+			List<Slide> before = new ArrayList<Slide>(expected);
+			model.sort(order);
+			expected.sort(order);
+			return !before.equals(expected);
+		}
+		
+		int remainder = random.nextInt(5);
+		boolean removed = model.removeIf(slide -> ids.get(slide) % 5 == remainder);
+		expected.removeIf(slide -> ids.get(slide) % 5 == remainder);
+		return removed;
+	}
+	
+	/**
+	 * Checks that the model, its indexes and the copy kept from its events match a list
+	 * @param expected - The list
+	 * @param model - The model
+	 * @param mirror - The copy kept from the listener events
+	 * @param when - When the check is made
+	 */
+	private static void checkSame(List<Slide> expected, SlideModel model, List<Slide> mirror, String when) {
+		checkEquals(expected.size(), model.size(), "size " + when);
+		checkEquals(expected, new ArrayList<Slide>(model), "slides in iteration order " + when);
+		checkEquals(expected, mirror, "slides reported to the listener " + when);
+		
+		for(int i = 0; i < expected.size(); i++) {
+			Slide slide = expected.get(i);
+			
+			if(model.get(i) != slide || model.indexOf(slide) != i || !model.contains(slide))
+				throw new AssertionError("slide " + i + " " + when + " is at " + model.indexOf(slide));
+		}
+	}
+	
+	/**
+	 * Creates a list kept up to date from the change events of a model, checking that each event matches
+	 * the list
+	 * @param model - The model
+	 * @return The list
+	 */
+	private static List<Slide> mirror(SlideModel model) {
+		List<Slide> mirror = new ArrayList<Slide>(model);
+		
+		model.addListener(new SlideModel.Listener() {
+			
+			@Override
+			public void inserted(int index, Slide slide) {
+				mirror.add(index, slide);
+			}
+			
+			@Override
+			public void removed(int index, Slide slide) {
+				check(mirror.remove(index) == slide, "the removed slide was at index " + index);
+			}
+			
+			@Override
+			public void replaced(int index, Slide previous, Slide slide) {
+				check(mirror.set(index, slide) == previous, "the replaced slide was at index " + index);
+			}
+			
+			@Override
+			public void moved(int from, int to) {
+				mirror.add(to, mirror.remove(from));
+			}
+			
+			@Override
+			public void reordered() {
+				reset();
+			}
+			
+			@Override
+			public void reset() {
+				mirror.clear();
+				mirror.addAll(model);
+			}
+		});
+		return mirror;
+	}
+	
+	/**
+	 * Creates a slide with a number, which the sorts and filters use
+	 * @return The slide
+	 */
+	private Slide slide() {
+		Slide slide = new Slide(new byte[] {(byte) ids.size()});
+		ids.put(slide, ids.size());
+		return slide;
+	}
+}
@@ -0,0 +1,109 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A small test harness running named test cases and counting the failures.
+ *
+ * A case fails if it throws, so the checks below throw an AssertionError describing what was expected.
+ * Every case runs even if an earlier one failed, and the failed cases are listed at the end.
+ */
+public class Test {
+	
+	/**
+	 * The body of a test case
+	 */
+	public interface Case {
+		
+		/**
+		 * Runs the test case
+		 * @throws Exception If the test case failed
+		 */
+		void run() throws Exception;
+	}
+	
+	private final List<String> filters;
+	private final List<String> failures = new ArrayList<String>();
+	private int passed;
+	
+	/**
+	 * Constructor
+	 * @param filters - The test name filters, empty to run every test
+	 */
+	public Test(List<String> filters) {
+		this.filters = filters;
+	}
+	
+	/**
+	 * Runs a test case if its name matches the filters and records the outcome
+	 * @param name - The test name
+	 * @param body - The test case
+	 */
+	public void run(String name, Case body) {
+		if(!filters.isEmpty() && filters.stream().noneMatch(name::contains))
+			return;
+		
+		try {
+			body.run();
+			passed++;
+			System.out.println("PASS " + name);
+		} catch (Throwable e) {
+			failures.add(name);
+			System.out.println("FAIL " + name);
+			e.printStackTrace(System.out);
+		}
+	}
+	
+	/**
+	 * Prints how many test cases passed and which failed
+	 * @return True if no test case failed
+	 */
+	public boolean report() {
+		System.out.println(passed + " passed, " + failures.size() + " failed");
+		
+		for(String name: failures)
+			System.out.println("  " + name);
+		return failures.isEmpty();
+	}
+	
+	/**
+	 * Checks that a condition holds
+	 * @param condition - The condition
+	 * @param message - What was expected
+	 */
+	public static void check(boolean condition, String message) {
+		if(!condition)
+			throw new AssertionError(message);
+	}
+	
+	/**
+	 * Checks that a value is the one expected
+	 * @param expected - The expected value
+	 * @param actual - The actual value
+	 * @param message - What the value is
+	 */
+	public static void checkEquals(Object expected, Object actual, String message) {
+		if(!Objects.equals(expected, actual))
+			throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+	}
+	
+	/**
+	 * Checks that running some code throws an exception of a type
+	 * @param type - The expected exception type
+	 * @param body - The code to run
+	 * @param message - What was expected
+	 * @return The exception thrown
+	 */
+	public static <T extends Throwable> T checkThrows(Class<T> type, Case body, String message) {
+		try {
+			body.run();
+		} catch (Throwable e) {
+			if(type.isInstance(e))
+				return type.cast(e);
+			throw new AssertionError(message + ": expected " + type.getSimpleName() + " but was " + e, e);
+		}
+		throw new AssertionError(message + ": expected " + type.getSimpleName() + " but nothing was thrown");
+	}
+}
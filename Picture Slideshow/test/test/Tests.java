@@ -0,0 +1,38 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Runs the tests of the slide show.
+ *
+ * The tests need no input files or network; they work in a temporary folder and talk to a local HTTP
+ * server. The caches which live in the home directory are pointed into the temporary folder before any
+ * test runs. Run with the compiled slide show on the class path:
+ *
+ * <pre>
+ * java -cp bin test.Tests [filter...]
+ * </pre>
+ *
+ * Only tests whose name contains one of the filters are run. The exit status is 1 if a test failed.
+ */
+public class Tests {
+	
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		
+		File directory = Files.createTempDirectory("slideshow-test").toFile();
+		System.setProperty("slideshow.downloads", new File(directory, "downloads").getPath());
+		
+		Test test = new Test(Arrays.asList(args));
+		new HashIndexTest().run(test);
+		new SlideFileTest(directory).run(test);
+		new PlaybackTest().run(test);
+		new SlideModelTest().run(test);
+		new UrlCacheTest(directory).run(test);
+		
+		System.exit(test.report() ? 0 : 1);
+	}
+}
@@ -0,0 +1,239 @@
+package test;
+
+import static test.Test.check;
+import static test.Test.checkEquals;
+import static test.Test.checkThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import util.UrlCache;
+
+/**
+ * Tests of the download cache against a local HTTP server which serves its resources with an ETag and
+ * answers conditional requests, and can be made to fail with any status.
+ */
+public class UrlCacheTest {
+	
+	private final File directory;
+	private final Map<String, Resource> resources = new ConcurrentHashMap<String, Resource>();
+	private HttpServer server;
+	
+	/**
+	 * Constructor
+	 * @param directory - The temporary folder of the test run, holding the download cache
+	 */
+	public UrlCacheTest(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Runs the tests, with the server running
+	 * @param test - The harness
+	 * @throws IOException If the server could not be started
+	 */
+	public void run(Test test) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+		
+		try {
+			test.run("urlCache.directory", () -> checkEquals(new File(directory, "downloads"), UrlCache.getDirectory(), "cache directory"));
+			test.run("urlCache.ok", this::testOk);
+			test.run("urlCache.notModified", this::testNotModified);
+			test.run("urlCache.notFound", this::testNotFound);
+			test.run("urlCache.unavailable", this::testUnavailable);
+			test.run("urlCache.budget", this::testBudget);
+		} finally {
+			server.stop(0);
+		}
+	}
+	
+	/**
+	 * A 200 response is returned and cached with its ETag
+	 * @throws IOException If the fetch failed
+	 */
+	private void testOk() throws IOException {
+		Resource resource = serve("/ok.jpg", "first");
+		
+		checkEquals("first", read(UrlCache.fetch(url("/ok.jpg"))), "fetched bytes");
+		checkEquals(1, resource.ok, "200 responses");
+		checkEquals(null, resource.ifNoneMatch, "If-None-Match of the first request");
+		
+		File[] files = UrlCache.getDirectory().listFiles((dir, name) -> !name.endsWith(".tmp"));
+		check(files != null && files.length >= 2, "the download and its validators are cached");
+	}
+	
+	/**
+	 * A cached download is revalidated with its ETag and a 304 response serves the cached bytes
+	 * @throws IOException If a fetch failed
+	 */
+	private void testNotModified() throws IOException {
+		Resource resource = serve("/same.jpg", "unchanged");
+		
+		UrlCache.fetch(url("/same.jpg"));
+		checkEquals("unchanged", read(UrlCache.fetch(url("/same.jpg"))), "bytes served from the cache");
+		checkEquals(resource.etag, resource.ifNoneMatch, "If-None-Match of the second request");
+		checkEquals(1, resource.ok, "200 responses");
+		checkEquals(1, resource.notModified, "304 responses");
+		
+		resource.body = "changed".getBytes(StandardCharsets.UTF_8);
+		resource.etag = "\"2\"";
+		checkEquals("changed", read(UrlCache.fetch(url("/same.jpg"))), "bytes of a changed resource");
+	}
+	
+	/**
+	 * A 404 response for a cached download is reported instead of serving the stale copy
+	 * @throws IOException If the first fetch failed
+	 */
+	private void testNotFound() throws IOException {
+		Resource resource = serve("/removed.jpg", "removed");
+		
+		UrlCache.fetch(url("/removed.jpg"));
+		resource.status = 404;
+		
+		IOException e = checkThrows(IOException.class, () -> UrlCache.fetch(url("/removed.jpg")), "fetch of a removed resource");
+		check(e.getMessage().contains("404"), "the status is reported: " + e.getMessage());
+	}
+	
+	/**
+	 * A 503 response for a cached download serves the stale copy
+	 * @throws IOException If a fetch failed
+	 */
+	private void testUnavailable() throws IOException {
+		Resource resource = serve("/busy.jpg", "stale");
+		
+		UrlCache.fetch(url("/busy.jpg"));
+		resource.status = 503;
+		
+		checkEquals("stale", read(UrlCache.fetch(url("/busy.jpg"))), "bytes served from the cache");
+		checkThrows(IOException.class, () -> UrlCache.fetch(url("/busy-uncached.jpg")), "fetch of an unknown resource");
+	}
+	
+	/**
+	 * Storing downloads keeps the cache within its budget, evicting the least recently used downloads, and
+	 * keeps the size it counts equal to the size on disk
+	 * @throws IOException If a fetch failed
+	 */
+	private void testBudget() throws IOException {
+		long budget = UrlCache.getBudget();
+		char[] body = new char[1000];
+		
+		try {
+			UrlCache.setBudget(4000);
+			
+			for(int i = 0; i < 10; i++) {
+				Arrays.fill(body, (char) ('a' + i));
+				serve("/budget" + i + ".jpg", new String(body));
+				UrlCache.fetch(url("/budget" + i + ".jpg"));
+				
+				long size = 0;
+				
+				for(File file: UrlCache.getDirectory().listFiles())
+					size += file.length();
+				
+				check(size <= 4000, "cache size " + size + " is within the budget");
+				checkEquals(size, UrlCache.getSize(), "counted cache size");
+			}
+			
+			Resource last = resources.get("/budget9.jpg");
+			UrlCache.fetch(url("/budget9.jpg"));
+			checkEquals(1, last.notModified, "the last download is still cached");
+		} finally {
+			UrlCache.setBudget(budget);
+		}
+	}
+	
+	/**
+	 * Adds a resource to the server
+	 * @param path - The path of the resource
+	 * @param body - The content of the resource
+	 * @return The resource
+	 */
+	private Resource serve(String path, String body) {
+		Resource resource = new Resource();
+		resource.body = body.getBytes(StandardCharsets.UTF_8);
+		resource.etag = "\"" + Arrays.hashCode(resource.body) + "\"";
+		resources.put(path, resource);
+		return resource;
+	}
+	
+	/**
+	 * Gets the URL of a resource on the server
+	 * @param path - The path of the resource
+	 * @return The URL
+	 * @throws IOException If the URL is malformed
+	 */
+	private URL url(String path) throws IOException {
+		return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+	}
+	
+	/**
+	 * Answers a request like a web server with ETags would, or with the failure status of the resource
+	 * @param exchange - The request and response
+	 * @throws IOException If the response could not be sent
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			Resource resource = resources.get(exchange.getRequestURI().getPath());
+			
+			if(resource == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			resource.ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			
+			if(resource.status != 0) {
+				exchange.sendResponseHeaders(resource.status, -1);
+			} else if(resource.etag.equals(resource.ifNoneMatch)) {
+				resource.notModified++;
+				exchange.getResponseHeaders().set("ETag", resource.etag);
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				resource.ok++;
+				exchange.getResponseHeaders().set("ETag", resource.etag);
+				exchange.sendResponseHeaders(200, resource.body.length);
+				
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(resource.body);
+				}
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Reads the bytes of a buffer as text
+	 * @param buffer - The buffer, read from its position to its limit
+	 * @return The text
+	 */
+	private static String read(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * A resource on the server and the requests made for it
+	 */
+	private static class Resource {
+		
+		private volatile byte[] body;
+		private volatile String etag, ifNoneMatch;
+		private volatile int status, ok, notModified;
+	}
+}